@@ -0,0 +1,80 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fare calculation: one Ticket at a time, one stay in cents, and a batch of stays given as columns.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FareCalculatorBenchmark {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private final Ticket ticket = new Ticket();
+    private final long[] inTimes = new long[BATCH_SIZE];
+    private final long[] outTimes = new long[BATCH_SIZE];
+    private final ParkingType[] parkingTypes = new ParkingType[BATCH_SIZE];
+    private final boolean[] discounts = new boolean[BATCH_SIZE];
+    private final long[] fareCents = new long[BATCH_SIZE];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            inTimes[i] = 1_600_000_000_000L + random.nextInt(1_000_000_000);
+            outTimes[i] = inTimes[i] + random.nextInt(48 * 60 * 60 * 1000);
+            parkingTypes[i] = i % 4 == 0 ? ParkingType.BIKE : ParkingType.CAR;
+            discounts[i] = random.nextBoolean();
+        }
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setInTime(new Date());
+        ticket.setOutTime(new Date());
+    }
+
+    @Benchmark
+    public double calculateFare() {
+        int i = next++ & (BATCH_SIZE - 1);
+        ticket.getInTime().setTime(inTimes[i]);
+        ticket.getOutTime().setTime(outTimes[i]);
+        fareCalculatorService.calculateFare(ticket, discounts[i]);
+        return ticket.getPrice();
+    }
+
+    @Benchmark
+    public long calculateFareCents() {
+        int i = next++ & (BATCH_SIZE - 1);
+        return fareCalculatorService.calculateFareCents(inTimes[i], outTimes[i], parkingTypes[i], discounts[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long[] calculateFares() {
+        fareCalculatorService.calculateFares(inTimes, outTimes, parkingTypes, discounts, fareCents);
+        return fareCents;
+    }
+}
@@ -0,0 +1,72 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotRepository;
+import com.parkit.parkingsystem.dao.InMemoryTicketRepository;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end gate transaction against the in-memory storage: a car enters, then exits.
+ * Measures the service, unit of work, repositories and fare path without a database.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+@State(Scope.Thread)
+public class GateBenchmark {
+
+    private static final int VEHICLES = 10_000;
+
+    private final String[] plates = new String[VEHICLES];
+    private final ScriptedInputReader inputReader = new ScriptedInputReader();
+    private ParkingService parkingService;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        for (int i = 0; i < VEHICLES; i++) {
+            plates[i] = "AB-" + i;
+        }
+        parkingService = new ParkingService(inputReader, new InMemoryParkingSpotRepository(100, 10),
+                new InMemoryTicketRepository());
+    }
+
+    @Benchmark
+    public void enterAndExit() {
+        inputReader.plate = plates[next++ % VEHICLES];
+        parkingService.processIncomingVehicle();
+        parkingService.processExitingVehicle();
+    }
+
+    /**
+     * Always a car, with the plate set by the benchmark.
+     */
+    private static final class ScriptedInputReader extends InputReaderUtil {
+        private String plate;
+
+        @Override
+        public int readSelection() {
+            return 1;
+        }
+
+        @Override
+        public String readVehicleRegistrationNumber() {
+            return plate;
+        }
+    }
+}
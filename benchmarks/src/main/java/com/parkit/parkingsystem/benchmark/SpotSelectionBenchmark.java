@@ -0,0 +1,62 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.FreeSpotIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Free-spot selection with the {@link FreeSpotIndex}: claiming the lowest free spot and releasing it,
+ * in a parking whose lower spots are mostly taken.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpotSelectionBenchmark {
+
+    @Param({"100", "10000"})
+    public int spots;
+
+    private FreeSpotIndex freeSpotIndex;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        freeSpotIndex = new FreeSpotIndex();
+        for (int number = 1; number <= spots; number++) {
+            freeSpotIndex.addSpot(number, ParkingType.CAR, number > spots * 9 / 10);
+        }
+    }
+
+    @Benchmark
+    public int claimAndRelease() {
+        int number = freeSpotIndex.claim(ParkingType.CAR);
+        freeSpotIndex.setAvailable(number, true);
+        return number;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int claimAndReleaseContended() {
+        int number = freeSpotIndex.claim(ParkingType.CAR);
+        if (number > 0) {
+            freeSpotIndex.setAvailable(number, true);
+        }
+        return number;
+    }
+}
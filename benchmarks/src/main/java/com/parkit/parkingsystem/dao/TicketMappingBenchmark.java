@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping a GET_TICKET / GET_OPEN_TICKETS row to a Ticket or a CompactTicket, and copying tickets through
+ * the open ticket cache. The row comes from a stand-in ResultSet that, like the MySQL driver, builds a new
+ * Timestamp on every getTimestamp call. Lives in the dao package to reach TicketDAO's row mappers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TicketMappingBenchmark {
+
+    private ResultSet row;
+    private Ticket ticket;
+    private OpenTicketCache openTicketCache;
+
+    @Setup
+    public void setUp() throws SQLException {
+        long inTime = System.currentTimeMillis();
+        row = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getInt":
+                            return (Integer) args[0] == 1 ? 7 : 123_456;
+                        case "getDouble":
+                            return 0.0;
+                        case "getTimestamp":
+                            return (Integer) args[0] == 4 ? new Timestamp(inTime) : null;
+                        case "getString":
+                            return (Integer) args[0] == 6 ? "CAR" : "AB-123-CD";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        ticket = TicketDAO.mapTicket(row, "AB-123-CD");
+        openTicketCache = new OpenTicketCache(1024);
+        openTicketCache.update(ticket);
+    }
+
+    @Benchmark
+    public Ticket mapTicket() throws SQLException {
+        return TicketDAO.mapTicket(row, "AB-123-CD");
+    }
+
+    @Benchmark
+    public CompactTicket mapCompactTicket() throws SQLException {
+        return TicketDAO.mapCompactTicket(row, "AB-123-CD");
+    }
+
+    @Benchmark
+    public Ticket cacheRoundTrip() {
+        openTicketCache.update(ticket);
+        return openTicketCache.get("AB-123-CD");
+    }
+}
@@ -1,5 +1,7 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.service.GateHttpServer;
+import com.parkit.parkingsystem.service.GateSocketServer;
 import com.parkit.parkingsystem.service.InteractiveShell;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -8,6 +10,12 @@ public class App {
     private static final Logger logger = LogManager.getLogger("App");
     public static void main(String args[]){
         logger.info("Initializing Parking System");
-        InteractiveShell.loadInterface();
+        if (System.getProperty("parkit.socket.port") != null) {
+            GateSocketServer.serve();
+        } else if (System.getProperty("parkit.http.port") != null) {
+            GateHttpServer.serve();
+        } else {
+            InteractiveShell.loadInterface();
+        }
     }
 }
@@ -0,0 +1,335 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of physical JDBC connections.
+ * A connection is leased with {@link #borrow()} and handed back by closing it: the returned
+ * Connection is a proxy whose close() puts the physical connection back in the idle queue.
+ * The pool keeps between minIdle and maxSize physical connections, validates a connection
+ * before lending it, evicts connections idle for longer than the idle timeout and logs leases
+ * held longer than the leak threshold together with the stack trace of the borrower.
+ * Each physical connection keeps a {@link StatementCache}, so prepareStatement() on a leased
+ * connection reuses the statement prepared for the same SQL by an earlier borrower.
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minIdle;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> leased = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger physicalCount = new AtomicInteger();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Creates the pool and opens minIdle connections in the background.
+     *
+     * @param url JDBC url of the database.
+     * @param user database user.
+     * @param password database password.
+     * @param minIdle number of physical connections kept open even when unused.
+     * @param maxSize maximum number of connections leased at the same time.
+     * @param idleTimeoutMillis idle time after which a connection above minIdle is closed.
+     * @param leakThresholdMillis lease duration after which a leak is reported, 0 to disable.
+     * @param borrowTimeoutMillis maximum time borrow() waits for a free connection.
+     * @param statementCacheSize prepared statements cached per connection, 0 to disable.
+     */
+    public ConnectionPool(String url, String user, String password, int minIdle, int maxSize,
+                          long idleTimeoutMillis, long leakThresholdMillis, long borrowTimeoutMillis,
+                          int statementCacheSize) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size min=" + minIdle + " max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, 30_000) / 2);
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leases a validated connection, opening a new one if no idle connection is available.
+     * The caller must close the returned connection to give it back to the pool.
+     *
+     * @return a connection proxy bound to one physical connection until it is closed.
+     * @throws SQLException if the pool is closed, exhausted for longer than the borrow timeout,
+     *                      or a new connection cannot be opened.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a connection, " + maxSize + " already leased");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (pooled.isValid()) {
+                    break;
+                }
+                logger.info("Discarding invalid DB connection");
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.leasedAt = System.currentTimeMillis();
+            pooled.leaseTrace = leakThresholdMillis > 0 ? new Exception("Connection leased here") : null;
+            pooled.leakReported = false;
+            leased.add(pooled);
+            return pooled.newLease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes idle connections and stops the housekeeping thread. Leased connections are
+     * closed when their borrower hands them back.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getActiveCount() {
+        return leased.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return physicalCount.get();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    private PooledConnection open() throws SQLException {
+        logger.info("Create DB connection");
+        Connection physical = DriverManager.getConnection(url, user, password);
+        physicalCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pooled) {
+        leased.remove(pooled);
+        try {
+            if (closed || pooled.physical.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            if (pooled.statements != null) {
+                pooled.statements.reset();
+            }
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            logger.error("Error while resetting connection, discarding it", e);
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        physicalCount.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            logger.error("Error while closing connection", e);
+        }
+    }
+
+    /**
+     * Evicts expired idle connections, tops the pool back up to minIdle and reports leases
+     * held for longer than the leak threshold.
+     */
+    private void houseKeep() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+            while (oldestFirst.hasNext() && physicalCount.get() > minIdle) {
+                PooledConnection pooled = oldestFirst.next();
+                if (now - pooled.lastUsed > idleTimeoutMillis && idle.remove(pooled)) {
+                    logger.info("Evicting idle DB connection");
+                    discard(pooled);
+                }
+            }
+            while (!closed && physicalCount.get() < minIdle) {
+                PooledConnection pooled = open();
+                pooled.lastUsed = now;
+                idle.offerLast(pooled);
+            }
+            if (leakThresholdMillis > 0) {
+                for (PooledConnection pooled : leased) {
+                    if (!pooled.leakReported && now - pooled.leasedAt > leakThresholdMillis) {
+                        pooled.leakReported = true;
+                        logger.warn("Possible connection leak, leased for " + (now - pooled.leasedAt) + " ms",
+                                pooled.leaseTrace);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error during connection pool housekeeping", e);
+        }
+    }
+
+    /**
+     * One physical connection and its pool bookkeeping.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long leasedAt;
+        private volatile Exception leaseTrace;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = statementCacheSize > 0
+                    ? new StatementCache(physical, statementCacheSize, statementCacheHits, statementCacheMisses)
+                    : null;
+        }
+
+        private boolean isValid() {
+            try {
+                return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private Connection newLease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    /**
+     * Connection handle given to a borrower: close() returns the physical connection to the
+     * pool once, and any later call fails as it would on a closed connection.
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private volatile boolean returned;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close": {
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                }
+                case "isClosed": {
+                    return returned || pooled.physical.isClosed();
+                }
+                case "equals": {
+                    return proxy == args[0];
+                }
+                case "hashCode": {
+                    return System.identityHashCode(proxy);
+                }
+                case "prepareStatement": {
+                    boolean cacheable = args.length == 1 || (args.length == 2 && args[1] instanceof Integer);
+                    if (!returned && cacheable && pooled.statements != null) {
+                        return pooled.statements.prepare(method, args);
+                    }
+                    break;
+                }
+                case "toString": {
+                    return "Pooled" + pooled.physical;
+                }
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
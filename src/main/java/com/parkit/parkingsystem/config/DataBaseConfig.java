@@ -4,16 +4,86 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Database access settings shared by the DAOs.
+ * Connections are leased from a {@link ConnectionPool} created once per JDBC url, so DAOs keep
+ * calling getConnection() and closeConnection() per operation without paying a new MySQL
+ * handshake each time. Pool sizing can be tuned with the parkit.db.pool.* system properties.
+ * Inside a {@link UnitOfWork}, getConnection() returns the unit's connection instead.
+ */
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    private static final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    public DataBaseConfig() {
+        this("jdbc:mysql://localhost:3306/prod","root","rootroot");
+    }
+
+    protected DataBaseConfig(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod","root","rootroot");
+        Connection bound = UnitOfWork.getBoundConnection(this);
+        if (bound != null) {
+            return bound;
+        }
+        return getPool().borrow();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the pool serving this configuration's url, creating it on first use.
+     *
+     * @return the shared connection pool.
+     * @throws ClassNotFoundException if the MySQL driver is not on the classpath.
+     */
+    public ConnectionPool getPool() throws ClassNotFoundException {
+        ConnectionPool pool = pools.get(url);
+        if (pool == null) {
+            synchronized (pools) {
+                pool = pools.get(url);
+                if (pool == null) {
+                    Class.forName("com.mysql.cj.jdbc.Driver");
+                    pool = new ConnectionPool(url, user, password,
+                            Integer.getInteger("parkit.db.pool.minIdle", 2),
+                            Integer.getInteger("parkit.db.pool.maxSize", 10),
+                            Long.getLong("parkit.db.pool.idleTimeoutMs", 300_000L),
+                            Long.getLong("parkit.db.pool.leakThresholdMs", 60_000L),
+                            Long.getLong("parkit.db.pool.borrowTimeoutMs", 5_000L),
+                            Integer.getInteger("parkit.db.statementCacheSize", 32));
+                    pools.put(url, pool);
+                    logger.info("Created DB connection pool for " + url);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Closes every connection pool, typically on application shutdown.
+     */
+    public static void closePools() {
+        synchronized (pools) {
+            for (ConnectionPool pool : pools.values()) {
+                pool.close();
+            }
+            pools.clear();
+        }
     }
 
     public void closeConnection(Connection con){
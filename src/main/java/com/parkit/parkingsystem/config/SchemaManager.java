@@ -0,0 +1,235 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies versioned schema migrations at startup and checks the plans of the hot queries.
+ * Applied versions are recorded in the schema_version table; a MySQL named lock keeps two
+ * instances starting together from applying the same migration twice.
+ * A migration is recorded once all its statements ran, so every statement can safely run again
+ * after a crash half way through: tables are created if not exists, rows inserted where not exists,
+ * and an index or column that already exists is skipped.
+ */
+public class SchemaManager {
+
+    private static final Logger logger = LogManager.getLogger("SchemaManager");
+
+    private static final String LOCK_NAME = "parkit_schema";
+    private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+    private static final String CREATE_VERSION_TABLE = "create table if not exists schema_version("
+            + "VERSION int PRIMARY KEY, DESCRIPTION varchar(200) NOT NULL, APPLIED_ON DATETIME NOT NULL)";
+    private static final String GET_VERSIONS = "select VERSION from schema_version";
+    private static final String SAVE_VERSION = "insert into schema_version(VERSION, DESCRIPTION, APPLIED_ON) values(?,?,now())";
+
+    /**
+     * MySQL error code of a create index whose index name is already taken.
+     */
+    private static final int ER_DUP_KEYNAME = 1061;
+
+    /**
+     * MySQL error code of an add column whose column name is already taken.
+     */
+    private static final int ER_DUP_FIELDNAME = 1060;
+
+    /**
+     * Schema migrations in version order. Never edit an applied migration, add a new one instead.
+     * Each statement must be idempotent, see the class comment.
+     */
+    private static final Migration[] MIGRATIONS = {
+            new Migration(1, "Covering index for ticket lookups by vehicle",
+                    "create index TICKET_VEHICLE_IN_TIME on ticket(VEHICLE_REG_NUMBER, IN_TIME, OUT_TIME, PARKING_NUMBER, PRICE)"),
+            new Migration(2, "Index for free spot lookups by type",
+                    "create index PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE)"),
+            new Migration(3, "Index for open and closed ticket scans",
+                    "create index TICKET_OUT_TIME on ticket(OUT_TIME, IN_TIME)"),
+            new Migration(4, "Sequence for hi-lo ticket IDs",
+                    "create table if not exists ticket_id_sequence(NEXT_ID int NOT NULL)",
+                    "insert into ticket_id_sequence(NEXT_ID) select coalesce(max(ID), 0) + 1 from ticket "
+                            + "where not exists (select * from ticket_id_sequence)"),
+            new Migration(5, "Ticket counts of vehicles whose tickets were archived",
+                    "create table if not exists archived_visits(VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY, VISITS int NOT NULL)"),
+            new Migration(6, "Hourly revenue and occupancy aggregates",
+                    "create table if not exists parking_stats(HOUR_START DATETIME NOT NULL, TYPE varchar(10) NOT NULL, ENTRIES int NOT NULL, "
+                            + "EXITS int NOT NULL, REVENUE double NOT NULL, STAY_MILLIS bigint NOT NULL, "
+                            + "PEAK_OCCUPANCY int NOT NULL, PRIMARY KEY (HOUR_START, TYPE))"),
+            new Migration(7, "Hourly revenue in cents",
+                    "alter table parking_stats add column REVENUE_CENTS bigint NOT NULL DEFAULT 0",
+                    "update parking_stats set REVENUE_CENTS = round(REVENUE * 100) where REVENUE_CENTS = 0",
+                    "alter table parking_stats modify REVENUE double NOT NULL DEFAULT 0"),
+    };
+
+    private final DataBaseConfig dataBaseConfig;
+
+    public SchemaManager(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    /**
+     * Applies the migrations that are not recorded in schema_version yet.
+     *
+     * @return the number of migrations applied.
+     */
+    public int migrate() {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            try (Statement st = con.createStatement()) {
+                st.execute(CREATE_VERSION_TABLE);
+            }
+            if (!acquireLock(con)) {
+                throw new IllegalStateException("Could not get the schema lock within " + LOCK_TIMEOUT_SECONDS + " s");
+            }
+            try {
+                List<Integer> applied = getAppliedVersions(con);
+                int count = 0;
+                for (Migration migration : MIGRATIONS) {
+                    if (applied.contains(migration.version)) {
+                        continue;
+                    }
+                    logger.info("Applying schema migration " + migration.version + ": " + migration.description);
+                    try (Statement st = con.createStatement()) {
+                        for (String sql : migration.statements) {
+                            execute(st, sql);
+                        }
+                    }
+                    try (PreparedStatement ps = con.prepareStatement(SAVE_VERSION)) {
+                        ps.setInt(1, migration.version);
+                        ps.setString(2, migration.description);
+                        ps.executeUpdate();
+                    }
+                    count++;
+                }
+                logger.info("Schema is up to date, " + count + " migration(s) applied");
+                return count;
+            } finally {
+                releaseLock(con);
+            }
+        } catch (Exception ex) {
+            logger.error("Error migrating schema", ex);
+            throw new RuntimeException("Error migrating schema", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Runs EXPLAIN on every hot query and logs a warning for each one that still reads a whole table.
+     *
+     * @return the hot queries whose plan contains a full table scan.
+     */
+    public List<String> findTableScans() {
+        List<String> tableScans = new ArrayList<>();
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            for (Map.Entry<String, String[]> query : getHotQueries().entrySet()) {
+                try (PreparedStatement ps = con.prepareStatement("explain " + query.getKey())) {
+                    String[] parameters = query.getValue();
+                    for (int i = 0; i < parameters.length; i++) {
+                        ps.setString(i + 1, parameters[i]);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            if ("ALL".equalsIgnoreCase(rs.getString("type"))) {
+                                logger.warn("Full scan of table " + rs.getString("table") + " in hot query: " + query.getKey());
+                                tableScans.add(query.getKey());
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("Error explaining hot queries", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return tableScans;
+    }
+
+    /**
+     * The queries run on every vehicle entry or exit, with sample parameter values.
+     */
+    private static Map<String, String[]> getHotQueries() {
+        Map<String, String[]> queries = new LinkedHashMap<>();
+        queries.put(DBConstants.GET_NEXT_PARKING_SPOT, new String[]{"CAR"});
+        queries.put(DBConstants.LOCK_NEXT_PARKING_SPOT, new String[]{"CAR"});
+        queries.put(DBConstants.GET_TICKET, new String[]{"ABCDEF"});
+        queries.put(DBConstants.GET_NB_TICKET, new String[]{"ABCDEF", "ABCDEF"});
+        queries.put(DBConstants.GET_OPEN_TICKETS, new String[0]);
+        return queries;
+    }
+
+    /**
+     * Runs a migration statement, skipping a create index or add column whose index or column
+     * exists from an earlier, interrupted run.
+     */
+    private static void execute(Statement st, String sql) throws SQLException {
+        try {
+            st.execute(sql);
+        } catch (SQLException e) {
+            if (e.getErrorCode() != ER_DUP_KEYNAME && e.getErrorCode() != ER_DUP_FIELDNAME) {
+                throw e;
+            }
+            logger.info((e.getErrorCode() == ER_DUP_KEYNAME ? "Index" : "Column") + " already exists, skipping: " + sql);
+        }
+    }
+
+    private static List<Integer> getAppliedVersions(Connection con) throws SQLException {
+        List<Integer> versions = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(GET_VERSIONS);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    private static boolean acquireLock(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("select get_lock(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void releaseLock(Connection con) {
+        try (PreparedStatement ps = con.prepareStatement("select release_lock(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        } catch (SQLException e) {
+            logger.error("Error releasing schema lock", e);
+        }
+    }
+
+    /**
+     * One schema version: a description and the DDL statements that bring the schema to it.
+     */
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final String[] statements;
+
+        private Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+}
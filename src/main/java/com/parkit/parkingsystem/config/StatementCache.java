@@ -0,0 +1,201 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of prepared statements for one physical connection, keyed by SQL text.
+ * Each caller gets its own handle on the cached statement: closing the handle clears the statement's
+ * parameters and batch, closes the result set it opened and keeps the statement prepared for the next
+ * caller instead of releasing the server-side handle. A closed handle fails like a closed statement, so
+ * a stale reference cannot touch the statement once it is lent again. A statement is only closed for real
+ * when it falls out of the cache or its connection is discarded.
+ */
+class StatementCache {
+
+    private static final Logger logger = LogManager.getLogger("StatementCache");
+
+    private final Connection physical;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    StatementCache(Connection physical, final int capacity, LongAdder hits, LongAdder misses) {
+        this.physical = physical;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a handle on the cached statement for the given prepareStatement call, preparing it on a miss.
+     * If the cached statement is still lent to another caller on the same connection, a plain
+     * uncached statement is prepared instead.
+     *
+     * @param method the Connection.prepareStatement overload being called.
+     * @param args its arguments, the SQL text first.
+     * @return a statement whose close() hands it back to the cache.
+     */
+    synchronized PreparedStatement prepare(Method method, Object[] args) throws Throwable {
+        String key = args.length == 1 ? (String) args[0] : args[0] + "\u0000" + args[1];
+        CachedStatement cached = statements.get(key);
+        if (cached != null && cached.lease != null) {
+            misses.increment();
+            return (PreparedStatement) invoke(method, physical, args);
+        }
+        if (cached == null) {
+            misses.increment();
+            cached = new CachedStatement((PreparedStatement) invoke(method, physical, args));
+            statements.put(key, cached);
+        } else {
+            hits.increment();
+        }
+        return cached.lend();
+    }
+
+    /**
+     * Hands back statements the borrower forgot to close, so the next lease starts clean.
+     */
+    synchronized void reset() {
+        for (CachedStatement cached : statements.values()) {
+            if (cached.lease != null) {
+                cached.checkIn();
+            }
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A prepared statement owned by the cache, and the handle of the caller it is lent to, if any.
+     * Guarded by the cache.
+     */
+    private final class CachedStatement {
+        private final PreparedStatement statement;
+        private StatementLease lease;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private PreparedStatement lend() {
+            lease = new StatementLease(this);
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, lease);
+        }
+
+        /**
+         * Invalidates the current handle and resets the statement for the next caller.
+         */
+        private void checkIn() {
+            StatementLease returned = lease;
+            lease = null;
+            returned.closed = true;
+            if (returned.resultSet != null) {
+                try {
+                    returned.resultSet.close();
+                } catch (SQLException e) {
+                    logger.error("Error while closing result set of cached statement", e);
+                }
+            }
+            try {
+                statement.clearBatch();
+                statement.clearParameters();
+            } catch (SQLException e) {
+                logger.error("Error while resetting cached statement", e);
+            }
+        }
+
+        private void evict() {
+            evicted = true;
+            if (lease == null) {
+                closeStatement();
+            }
+        }
+
+        private void closeStatement() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.error("Error while closing cached statement", e);
+            }
+        }
+    }
+
+    /**
+     * Handle on a cached statement given to one caller, until that caller closes it.
+     */
+    private final class StatementLease implements InvocationHandler {
+        private final CachedStatement cached;
+        private volatile boolean closed;
+        private ResultSet resultSet;
+
+        private StatementLease(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close": {
+                    synchronized (StatementCache.this) {
+                        if (!closed) {
+                            cached.checkIn();
+                            if (cached.evicted) {
+                                cached.closeStatement();
+                            }
+                        }
+                    }
+                    return null;
+                }
+                case "isClosed": {
+                    return closed || cached.statement.isClosed();
+                }
+                case "equals": {
+                    return proxy == args[0];
+                }
+                case "hashCode": {
+                    return System.identityHashCode(proxy);
+                }
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement has already been closed");
+            }
+            Object result = StatementCache.invoke(method, cached.statement, args);
+            if (result instanceof ResultSet) {
+                resultSet = (ResultSet) result;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.SpotAllocationMode;
+import com.parkit.parkingsystem.constants.StorageType;
+import com.parkit.parkingsystem.dao.AsyncStorage;
+import com.parkit.parkingsystem.dao.GateEventLog;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotRepository;
+import com.parkit.parkingsystem.dao.InMemoryTicketRepository;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.ParkingStatsDAO;
+import com.parkit.parkingsystem.dao.TicketArchive;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketJournal;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.dao.WriteBehindTicketRepository;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ParkingStatistics;
+import com.parkit.parkingsystem.service.TicketArchiver;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selects the storage backend used by the application at startup.
+ * The backend is chosen with the parkit.storage system property (mysql or memory, mysql by default);
+ * the in-memory backend lets simulations and performance runs exercise the gate flow without a database.
+ * For MySQL, the schema is migrated and the DAO caches are loaded before the first vehicle is served.
+ * The open ticket cache and the visit counter are only used with the INDEX spot allocation, the single-instance
+ * mode: with the other modes, instances sharing the database open and close each other's tickets, so both would
+ * go stale, and the visit counts are read from the ticket table.
+ * Setting parkit.journal.file turns on write-behind ticket storage, see {@link WriteBehindTicketRepository},
+ * parkit.archive.dir the archival of old closed tickets, see {@link TicketArchiver}, and parkit.eventlog.dir
+ * the restoration of the DAO caches from a local {@link GateEventLog} instead of the ticket table.
+ * With MySQL, the {@link ParkingStatistics} are reloaded from and flushed to the parking_stats table.
+ */
+public class StorageConfig {
+
+    private static final Logger logger = LogManager.getLogger("StorageConfig");
+
+    private final StorageType storageType;
+    private final DataBaseConfig dataBaseConfig;
+    private final ParkingSpotRepository parkingSpotRepository;
+    private final TicketRepository ticketRepository;
+    private final UnitOfWork unitOfWork;
+    private final ParkingStatistics parkingStatistics;
+    private final ThreadPoolExecutor dbExecutor;
+    private final AsyncStorage asyncStorage;
+    private TicketArchiver ticketArchiver;
+    private GateEventLog gateEventLog;
+
+    public StorageConfig(StorageType storageType, DataBaseConfig dataBaseConfig) {
+        this.storageType = storageType;
+        this.dataBaseConfig = dataBaseConfig;
+        switch (storageType) {
+            case MEMORY: {
+                parkingSpotRepository = new InMemoryParkingSpotRepository(
+                        Integer.getInteger("parkit.memory.carSpots", 3),
+                        Integer.getInteger("parkit.memory.bikeSpots", 2));
+                ticketRepository = new InMemoryTicketRepository();
+                unitOfWork = new UnitOfWork(null);
+                parkingStatistics = new ParkingStatistics();
+                dbExecutor = null;
+                break;
+            }
+            case MYSQL: {
+                if (Boolean.parseBoolean(System.getProperty("parkit.schema.migrate", "true"))) {
+                    SchemaManager schemaManager = new SchemaManager(dataBaseConfig);
+                    schemaManager.migrate();
+                    schemaManager.findTableScans();
+                }
+                ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig);
+                parkingSpotRepository = parkingSpotDAO;
+                TicketDAO ticketDAO = newTicketDAO(dataBaseConfig, parkingSpotDAO.getAllocationMode());
+                String eventLogDirectory = System.getProperty("parkit.eventlog.dir");
+                if (eventLogDirectory != null) {
+                    gateEventLog = openEventLog(parkingSpotDAO, ticketDAO, eventLogDirectory);
+                } else {
+                    if (parkingSpotDAO.getAllocationMode() == SpotAllocationMode.INDEX) {
+                        parkingSpotDAO.loadFreeSpotIndex();
+                    }
+                    ticketDAO.warmOpenTicketCache();
+                    ticketDAO.loadVisitCounter();
+                }
+                String archiveDirectory = System.getProperty("parkit.archive.dir");
+                if (archiveDirectory != null) {
+                    ticketArchiver = startArchiver(ticketDAO, archiveDirectory);
+                }
+                String journalFile = System.getProperty("parkit.journal.file");
+                ticketRepository = journalFile == null ? ticketDAO : openWriteBehind(ticketDAO, journalFile);
+                unitOfWork = new UnitOfWork(dataBaseConfig);
+                parkingStatistics = startStatistics(dataBaseConfig);
+                int asyncThreads = Integer.getInteger("parkit.db.asyncThreads",
+                        Integer.getInteger("parkit.db.pool.maxSize", 10));
+                dbExecutor = asyncThreads > 0 ? AsyncStorage.newExecutor(asyncThreads, asyncThreads * 64) : null;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown storage type " + storageType);
+        }
+        asyncStorage = new AsyncStorage(parkingSpotRepository, ticketRepository,
+                dbExecutor != null ? dbExecutor : Runnable::run);
+        logger.info("Using " + storageType + " storage");
+    }
+
+    /**
+     * Creates the ticket DAO, without open ticket cache and visit counter unless this is the only instance
+     * on the database.
+     */
+    private static TicketDAO newTicketDAO(DataBaseConfig dataBaseConfig, SpotAllocationMode allocationMode) {
+        int openTicketCacheSize = 0;
+        int expectedVehicles = 0;
+        if (allocationMode == SpotAllocationMode.INDEX) {
+            openTicketCacheSize = Integer.getInteger("parkit.openTicketCache.size", 10_000);
+            expectedVehicles = Integer.getInteger("parkit.visitCounter.expectedVehicles", 1_000_000);
+        } else {
+            logger.info("Open ticket cache and visit counter disabled with " + allocationMode + " spot allocation");
+        }
+        return new TicketDAO(dataBaseConfig, openTicketCacheSize, expectedVehicles,
+                Integer.getInteger("parkit.ticketId.blockSize", 0));
+    }
+
+    /**
+     * Restores the free-spot index, open ticket cache and visit counter from the gate event log if its state
+     * matches the ticket table, and from the database otherwise; then snapshots the state every
+     * parkit.eventlog.snapshotIntervalMs.
+     */
+    private static GateEventLog openEventLog(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO, String directory) {
+        try {
+            long start = System.nanoTime();
+            GateEventLog eventLog = new GateEventLog(Paths.get(directory),
+                    Boolean.parseBoolean(System.getProperty("parkit.eventlog.force", "false")));
+            GateEventLog.Watermark watermark = ticketDAO.getWatermark();
+            boolean restored = eventLog.isRestored() && eventLog.getWatermark().equals(watermark);
+            if (!restored) {
+                if (eventLog.isRestored()) {
+                    logger.warn("Gate event log is behind the database (" + eventLog.getWatermark() + " instead of "
+                            + watermark + "), reloading from the database");
+                }
+                eventLog.reset(parkingSpotDAO.getParkingSpots(), ticketDAO.getOpenTickets(),
+                        ticketDAO.getVisitCounts(), watermark.getMaxTicketId());
+            }
+            if (parkingSpotDAO.getAllocationMode() == SpotAllocationMode.INDEX) {
+                parkingSpotDAO.useFreeSpotIndex(eventLog.newFreeSpotIndex());
+            }
+            ticketDAO.restoreCaches(eventLog.getOpenTickets(), eventLog.getVisitCounts());
+            eventLog.start(Long.getLong("parkit.eventlog.snapshotIntervalMs", 60_000L));
+            logger.info((restored ? "Restored" : "Loaded") + " gate state " + watermark + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, logging gate events to "
+                    + directory);
+            return eventLog;
+        } catch (IOException ex) {
+            throw new RuntimeException("Error opening gate event log " + directory, ex);
+        }
+    }
+
+    /**
+     * Puts a write-behind journal in front of the ticket DAO, replaying the writes a previous run
+     * left unapplied.
+     */
+    private static WriteBehindTicketRepository openWriteBehind(TicketDAO ticketDAO, String journalFile) {
+        try {
+            TicketJournal journal = new TicketJournal(journalFile,
+                    Integer.getInteger("parkit.journal.sizeMb", 64) * 1024 * 1024,
+                    Boolean.parseBoolean(System.getProperty("parkit.journal.force", "true")),
+                    Long.getLong("parkit.journal.appendTimeoutMs", 5_000L));
+            logger.info("Ticket writes are journaled to " + journalFile);
+            return new WriteBehindTicketRepository(ticketDAO, journal,
+                    Integer.getInteger("parkit.journal.batchSize", 500),
+                    Long.getLong("parkit.journal.flushIntervalMs", 100L));
+        } catch (IOException ex) {
+            throw new RuntimeException("Error opening ticket journal " + journalFile, ex);
+        }
+    }
+
+    /**
+     * Reloads the figures of the last parkit.stats.retentionDays and flushes new ones every
+     * parkit.stats.flushIntervalMs.
+     */
+    private static ParkingStatistics startStatistics(DataBaseConfig dataBaseConfig) {
+        long retentionMillis = TimeUnit.DAYS.toMillis(Integer.getInteger("parkit.stats.retentionDays", 400));
+        ParkingStatistics statistics = new ParkingStatistics(new ParkingStatsDAO(dataBaseConfig), ZoneId.systemDefault());
+        long now = System.currentTimeMillis();
+        statistics.load(new Date(now - retentionMillis), new Date(now + TimeUnit.HOURS.toMillis(1)));
+        statistics.start(Long.getLong("parkit.stats.flushIntervalMs", 60_000L), retentionMillis);
+        return statistics;
+    }
+
+    /**
+     * Starts the job moving closed tickets older than parkit.archive.maxAgeDays to the archive directory.
+     */
+    private static TicketArchiver startArchiver(TicketDAO ticketDAO, String archiveDirectory) {
+        try {
+            TicketArchiver archiver = new TicketArchiver(ticketDAO,
+                    new TicketArchive(Paths.get(archiveDirectory), ZoneId.systemDefault()),
+                    TimeUnit.DAYS.toMillis(Integer.getInteger("parkit.archive.maxAgeDays", 30)),
+                    Integer.getInteger("parkit.archive.batchSize", 1000));
+            archiver.start(TimeUnit.HOURS.toMillis(Integer.getInteger("parkit.archive.intervalHours", 24)));
+            logger.info("Closed tickets are archived to " + archiveDirectory);
+            return archiver;
+        } catch (Exception ex) {
+            throw new RuntimeException("Error starting ticket archival in " + archiveDirectory, ex);
+        }
+    }
+
+    /**
+     * Stops the archival job, applies the journaled ticket writes, if any, snapshots the gate event log,
+     * flushes the parking statistics, stops the database executor and closes the connection pools. Called on shutdown.
+     */
+    public void close() {
+        if (ticketArchiver != null) {
+            ticketArchiver.stop();
+        }
+        if (ticketRepository instanceof Closeable) {
+            try {
+                ((Closeable) ticketRepository).close();
+            } catch (IOException e) {
+                logger.error("Error closing ticket storage", e);
+            }
+        }
+        if (gateEventLog != null) {
+            try {
+                gateEventLog.close();
+            } catch (IOException e) {
+                logger.error("Error closing gate event log", e);
+            }
+        }
+        try {
+            parkingStatistics.stop();
+        } catch (RuntimeException e) {
+            logger.error("Error flushing parking stats", e);
+        }
+        if (dbExecutor != null) {
+            dbExecutor.shutdown();
+            try {
+                dbExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        DataBaseConfig.closePools();
+    }
+
+    /**
+     * Builds the storage configuration from the parkit.storage system property.
+     *
+     * @return the configured storage.
+     */
+    public static StorageConfig fromSystemProperties() {
+        String storage = System.getProperty("parkit.storage", StorageType.MYSQL.name());
+        return new StorageConfig(StorageType.valueOf(storage.trim().toUpperCase()), new DataBaseConfig());
+    }
+
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
+    public DataBaseConfig getDataBaseConfig() {
+        return dataBaseConfig;
+    }
+
+    public ParkingSpotRepository getParkingSpotRepository() {
+        return parkingSpotRepository;
+    }
+
+    public TicketRepository getTicketRepository() {
+        return ticketRepository;
+    }
+
+    /**
+     * @return the ticket archival job, or null if parkit.archive.dir is not set.
+     */
+    public TicketArchiver getTicketArchiver() {
+        return ticketArchiver;
+    }
+
+    /**
+     * @return the gate event log, or null if parkit.eventlog.dir is not set.
+     */
+    public GateEventLog getGateEventLog() {
+        return gateEventLog;
+    }
+
+    /**
+     * Returns the unit of work that makes each vehicle entry or exit atomic on this storage.
+     *
+     * @return the unit of work.
+     */
+    public UnitOfWork getUnitOfWork() {
+        return unitOfWork;
+    }
+
+    public ParkingStatistics getParkingStatistics() {
+        return parkingStatistics;
+    }
+
+    /**
+     * @return the executor of asynchronous database calls, sized by parkit.db.asyncThreads (the pool size by
+     * default), or null with the in-memory storage or parkit.db.asyncThreads=0.
+     */
+    public Executor getDbExecutor() {
+        return dbExecutor;
+    }
+
+    /**
+     * @return asynchronous variants of the repository calls, on the database executor; with the in-memory
+     * storage they run on the caller thread and return completed futures.
+     */
+    public AsyncStorage getAsyncStorage() {
+        return asyncStorage;
+    }
+
+    /**
+     * Creates a parking service over this storage, overlapping independent lookups on the database executor
+     * and recording its entries and exits in the gate event log, if any.
+     *
+     * @param inputReaderUtil shell input, null for the enter and exit API only.
+     * @param fareCalculatorService fare calculation with the tariff in force.
+     * @return the parking service.
+     */
+    public ParkingService newParkingService(InputReaderUtil inputReaderUtil, FareCalculatorService fareCalculatorService) {
+        return new ParkingService(inputReaderUtil, parkingSpotRepository, ticketRepository, unitOfWork,
+                parkingStatistics, fareCalculatorService, dbExecutor, gateEventLog);
+    }
+}
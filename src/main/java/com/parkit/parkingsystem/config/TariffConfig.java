@@ -0,0 +1,150 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.TariffTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the tariff in force and reloads it when its file changes.
+ * The tariff file is given with the parkit.tariff.file system property, see {@link TariffTable} for its format;
+ * without it the {@link com.parkit.parkingsystem.constants.Fare} constants apply.
+ * A new tariff is compiled off the pricing path and swapped in atomically, so fares are never priced
+ * with a lock or a half-loaded tariff. A file that does not compile is logged once and the current tariff
+ * is kept until the file changes again.
+ */
+public class TariffConfig {
+
+    private static final Logger logger = LogManager.getLogger("TariffConfig");
+
+    private final AtomicReference<TariffTable> tariff;
+    private final Path file;
+    private long loadedModifiedTime;
+    private long loadedSize;
+    private ScheduledExecutorService watcher;
+
+    /**
+     * Uses the default tariff, without a file.
+     */
+    public TariffConfig() {
+        this.tariff = new AtomicReference<>(TariffTable.DEFAULT);
+        this.file = null;
+    }
+
+    /**
+     * Loads a tariff file.
+     *
+     * @param file the tariff file.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the tariff is invalid.
+     */
+    public TariffConfig(Path file) throws IOException {
+        this.file = file;
+        this.loadedModifiedTime = Files.getLastModifiedTime(file).toMillis();
+        this.loadedSize = Files.size(file);
+        this.tariff = new AtomicReference<>(load());
+    }
+
+    /**
+     * Builds the tariff configuration from the parkit.tariff.file system property, and reloads the file
+     * every parkit.tariff.reloadIntervalMs (5000 by default) when it has changed.
+     *
+     * @return the tariff configuration.
+     */
+    public static TariffConfig fromSystemProperties() {
+        String tariffFile = System.getProperty("parkit.tariff.file");
+        if (tariffFile == null) {
+            return new TariffConfig();
+        }
+        try {
+            TariffConfig tariffConfig = new TariffConfig(Paths.get(tariffFile));
+            tariffConfig.watch(Long.getLong("parkit.tariff.reloadIntervalMs", 5_000L));
+            return tariffConfig;
+        } catch (IOException ex) {
+            throw new RuntimeException("Error loading tariff " + tariffFile, ex);
+        }
+    }
+
+    /**
+     * Reloads the tariff file if it changed since it was last loaded.
+     *
+     * @return true if a new tariff was swapped in.
+     */
+    public synchronized boolean reload() {
+        if (file == null) {
+            return false;
+        }
+        try {
+            long modifiedTime = Files.getLastModifiedTime(file).toMillis();
+            long size = Files.size(file);
+            if (modifiedTime == loadedModifiedTime && size == loadedSize) {
+                return false;
+            }
+            loadedModifiedTime = modifiedTime;
+            loadedSize = size;
+            tariff.set(load());
+            logger.info("Reloaded tariff " + file);
+            return true;
+        } catch (IOException | IllegalArgumentException ex) {
+            logger.error("Error reloading tariff " + file + ", keeping the current one", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Checks the tariff file for changes periodically in a background thread.
+     *
+     * @param periodMillis time between two checks.
+     */
+    public synchronized void watch(long periodMillis) {
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tariff-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(this::reload, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops watching the tariff file.
+     */
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * @return the tariff in force.
+     */
+    public TariffTable getTariff() {
+        return tariff.get();
+    }
+
+    /**
+     * @return a fare calculator pricing with the tariff in force at each call.
+     */
+    public FareCalculatorService newFareCalculatorService() {
+        return new FareCalculatorService(tariff::get);
+    }
+
+    private TariffTable load() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return TariffTable.compile(properties);
+    }
+}
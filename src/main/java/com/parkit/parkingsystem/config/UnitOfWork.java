@@ -0,0 +1,217 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a whole vehicle entry or exit as one database transaction on one connection.
+ * While {@link #execute(Callable)} runs, {@link DataBaseConfig#getConnection()} returns the unit's
+ * connection on that thread, so DAOs join the transaction without changing their call pattern:
+ * their closeConnection, commit and setAutoCommit calls are ignored until the unit commits.
+ * If the work throws, the transaction is rolled back and the in-memory state registered with
+ * {@link #afterRollback(Runnable)} is restored. A unit created without a DataBaseConfig only
+ * runs these callbacks, which is what the in-memory storage needs.
+ */
+public class UnitOfWork {
+
+    private static final Logger logger = LogManager.getLogger("UnitOfWork");
+
+    private static final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+    private final DataBaseConfig dataBaseConfig;
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+
+    /**
+     * @param dataBaseConfig database whose connections join the unit, or null for in-memory storage.
+     */
+    public UnitOfWork(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    /**
+     * Runs the work in a transaction, committing if it returns and rolling back if it throws.
+     * A unit started while another one runs on the same thread joins the outer one.
+     *
+     * @param work the DAO calls making up the unit.
+     * @param <T> result type.
+     * @return the work's result.
+     * @throws Exception the work's exception, after rollback.
+     */
+    public <T> T execute(Callable<T> work) throws Exception {
+        return execute(work, null);
+    }
+
+    /**
+     * Runs the work in a transaction like {@link #execute(Callable)}, with a compensating action
+     * registered before the unit borrows its connection: it also runs if no connection could be had.
+     *
+     * @param work the DAO calls making up the unit.
+     * @param compensation action undoing in-memory state taken before the unit, or null.
+     * @param <T> result type.
+     * @return the work's result.
+     * @throws Exception the work's exception, after rollback.
+     */
+    public <T> T execute(Callable<T> work, Runnable compensation) throws Exception {
+        if (current.get() != null) {
+            if (compensation != null) {
+                afterRollback(compensation);
+            }
+            return work.call();
+        }
+        Transaction transaction = new Transaction(dataBaseConfig);
+        if (compensation != null) {
+            transaction.afterRollback.add(compensation);
+        }
+        current.set(transaction);
+        try {
+            if (dataBaseConfig != null) {
+                transaction.connection = dataBaseConfig.getPool().borrow();
+                transaction.connection.setAutoCommit(false);
+            }
+            T result = work.call();
+            if (transaction.connection != null) {
+                transaction.connection.commit();
+            }
+            current.remove();
+            commits.increment();
+            transaction.run(transaction.afterCommit);
+            return result;
+        } catch (Exception e) {
+            current.remove();
+            rollbacks.increment();
+            if (transaction.connection != null) {
+                try {
+                    transaction.connection.rollback();
+                } catch (SQLException rollbackError) {
+                    logger.error("Error rolling back unit of work", rollbackError);
+                }
+            }
+            Collections.reverse(transaction.afterRollback);
+            transaction.run(transaction.afterRollback);
+            throw e;
+        } finally {
+            current.remove();
+            if (transaction.connection != null) {
+                try {
+                    transaction.connection.close();
+                } catch (SQLException e) {
+                    logger.error("Error while closing connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the action once the current unit of work commits, or right away outside a unit.
+     * Used to publish changes to in-memory caches only when the database accepted them.
+     *
+     * @param action the action to run.
+     */
+    public static void afterCommit(Runnable action) {
+        Transaction transaction = current.get();
+        if (transaction == null) {
+            action.run();
+        } else {
+            transaction.afterCommit.add(action);
+        }
+    }
+
+    /**
+     * Runs the action if the current unit of work rolls back; does nothing outside a unit.
+     * Used to undo in-memory changes made by the unit, such as a claimed parking spot.
+     *
+     * @param action the compensating action.
+     */
+    public static void afterRollback(Runnable action) {
+        Transaction transaction = current.get();
+        if (transaction != null) {
+            transaction.afterRollback.add(action);
+        }
+    }
+
+    public long getCommitCount() {
+        return commits.sum();
+    }
+
+    public long getRollbackCount() {
+        return rollbacks.sum();
+    }
+
+    /**
+     * Returns the connection of the unit of work running on this thread for that database.
+     *
+     * @param dataBaseConfig the database the caller wants a connection to.
+     * @return a handle on the unit's connection, or null outside a unit of work.
+     */
+    static Connection getBoundConnection(DataBaseConfig dataBaseConfig) {
+        Transaction transaction = current.get();
+        if (transaction == null || transaction.connection == null
+                || !transaction.dataBaseConfig.getUrl().equals(dataBaseConfig.getUrl())) {
+            return null;
+        }
+        if (transaction.handle == null) {
+            transaction.handle = newHandle(transaction.connection);
+        }
+        return transaction.handle;
+    }
+
+    /**
+     * Wraps the unit's connection so that the DAOs cannot end the transaction themselves.
+     */
+    private static Connection newHandle(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                        case "commit":
+                        case "setAutoCommit":
+                            return null;
+                        case "rollback": {
+                            throw new SQLException("Rollback inside a unit of work, throw to roll the unit back");
+                        }
+                        default:
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    /**
+     * State of the unit of work running on one thread.
+     */
+    private static final class Transaction {
+        private final DataBaseConfig dataBaseConfig;
+        private final List<Runnable> afterCommit = new ArrayList<>();
+        private final List<Runnable> afterRollback = new ArrayList<>();
+        private Connection connection;
+        private Connection handle;
+
+        private Transaction(DataBaseConfig dataBaseConfig) {
+            this.dataBaseConfig = dataBaseConfig;
+        }
+
+        private void run(List<Runnable> actions) {
+            for (Runnable action : actions) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    logger.error("Error in unit of work callback", e);
+                }
+            }
+        }
+    }
+}
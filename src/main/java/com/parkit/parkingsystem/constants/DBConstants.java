@@ -3,9 +3,40 @@ package com.parkit.parkingsystem.constants;
 public class DBConstants {
 
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String LOCK_NEXT_PARKING_SPOT = "select PARKING_NUMBER from parking where AVAILABLE = true and TYPE = ? order by PARKING_NUMBER limit 1 for update skip locked";
+    public static final String CLAIM_PARKING_SPOT = "update parking set available = false where PARKING_NUMBER = ? and AVAILABLE = true";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
-    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
-    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME  limit 1";
+    public static final String SAVE_TICKET_WITH_ID = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, ID) values(?,?,?,?,?,?)";
+    public static final String SAVE_TICKET_IF_ABSENT = SAVE_TICKET_WITH_ID + " on duplicate key update ID = ID";
+    public static final String DELETE_TICKET = "delete from ticket where ID = ?";
+    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? and OUT_TIME is null";
+    public static final String REPLAY_TICKET_UPDATE = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
+    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME desc limit 1";
+    public static final String GET_OPEN_TICKETS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, t.VEHICLE_REG_NUMBER from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME is null order by t.IN_TIME";
+    public static final String GET_NB_TICKET = "select (select count(*) from ticket where VEHICLE_REG_NUMBER = ?) + coalesce((select VISITS from archived_visits where VEHICLE_REG_NUMBER = ?), 0)";
+    public static final String GET_NB_TICKET_PER_VEHICLE = "select VEHICLE_REG_NUMBER, sum(VISITS) from (select VEHICLE_REG_NUMBER, count(*) VISITS from ticket group by VEHICLE_REG_NUMBER union all select VEHICLE_REG_NUMBER, VISITS from archived_visits) v group by VEHICLE_REG_NUMBER";
+    public static final String GET_TICKET_WATERMARK = "select coalesce(max(ID), 0), (select count(*) from ticket where OUT_TIME is null) from ticket";
+    public static final String GET_TICKET_BY_ID = "select PARKING_NUMBER, VEHICLE_REG_NUMBER, IN_TIME from ticket where ID = ?";
+    public static final String TICKET_EXISTS = "select count(*) from ticket where ID = ?";
+
+    public static final String GET_TICKETS_TO_ARCHIVE = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, t.VEHICLE_REG_NUMBER from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME < ? order by t.OUT_TIME limit ? for update";
+    public static final String EXPORT_TICKETS = "select t.ID, t.PARKING_NUMBER, p.TYPE, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME >= ? and t.OUT_TIME < ? order by t.OUT_TIME";
+    public static final String GET_TICKETS_TO_REPRICE = "select ID, TYPE, IN_TIME, OUT_TIME, PRICE, VISIT from (select t.ID, p.TYPE, t.IN_TIME, t.OUT_TIME, t.PRICE, "
+            + "coalesce(a.VISITS, 0) + row_number() over (partition by t.VEHICLE_REG_NUMBER order by t.IN_TIME, t.ID) VISIT "
+            + "from ticket t inner join parking p on p.parking_number = t.parking_number left join archived_visits a on a.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER "
+            + "where t.IN_TIME < ? and t.VEHICLE_REG_NUMBER in (select VEHICLE_REG_NUMBER from ticket where OUT_TIME >= ? and OUT_TIME < ?)) v "
+            + "where OUT_TIME >= ? and OUT_TIME < ? order by ID";
+    public static final String REPRICE_TICKET = "update ticket set PRICE=? where ID=? and PRICE=?";
+    public static final String ADD_PARKING_STATS = "insert into parking_stats(HOUR_START, TYPE, ENTRIES, EXITS, REVENUE_CENTS, STAY_MILLIS, PEAK_OCCUPANCY) values(?,?,?,?,?,?,?) "
+            + "on duplicate key update ENTRIES = ENTRIES + values(ENTRIES), EXITS = EXITS + values(EXITS), REVENUE_CENTS = REVENUE_CENTS + values(REVENUE_CENTS), "
+            + "STAY_MILLIS = STAY_MILLIS + values(STAY_MILLIS), PEAK_OCCUPANCY = greatest(PEAK_OCCUPANCY, values(PEAK_OCCUPANCY))";
+    public static final String GET_PARKING_STATS = "select HOUR_START, TYPE, ENTRIES, EXITS, REVENUE_CENTS, STAY_MILLIS, PEAK_OCCUPANCY from parking_stats where HOUR_START >= ? and HOUR_START < ? order by HOUR_START";
+    public static final String GET_OCCUPANCY = "select p.TYPE, count(*) from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME is null group by p.TYPE";
+    public static final String ADD_ARCHIVED_VISITS = "insert into archived_visits(VEHICLE_REG_NUMBER, VISITS) values(?,?) on duplicate key update VISITS = VISITS + values(VISITS)";
+
+    public static final String RESERVE_TICKET_ID_BLOCK = "update ticket_id_sequence set NEXT_ID = last_insert_id(greatest(NEXT_ID, (select coalesce(max(ID), 0) + 1 from ticket)) + ?)";
+    public static final String GET_LAST_INSERT_ID = "select last_insert_id()";
 }
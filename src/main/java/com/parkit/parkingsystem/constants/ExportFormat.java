@@ -0,0 +1,11 @@
+package com.parkit.parkingsystem.constants;
+
+/**
+ * Output format of a ticket export.
+ * CSV has a header line and one line per ticket.
+ * BINARY is a big-endian stream of fixed fields per ticket, read back with DataInputStream.
+ */
+public enum ExportFormat {
+    CSV,
+    BINARY
+}
@@ -0,0 +1,14 @@
+package com.parkit.parkingsystem.constants;
+
+/**
+ * How ParkingSpotDAO hands out parking spots.
+ * INDEX uses the in-process free-spot index and is only safe with a single application instance.
+ * QUERY reads the lowest free spot from the database without reserving it (legacy behaviour).
+ * SKIP_LOCKED and OPTIMISTIC reserve the spot in the database and are safe with several instances.
+ */
+public enum SpotAllocationMode {
+    INDEX,
+    QUERY,
+    SKIP_LOCKED,
+    OPTIMISTIC
+}
@@ -0,0 +1,65 @@
+package com.parkit.parkingsystem.dao;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the database spot allocation done by this application instance.
+ * Each instance reports its own figures, identified by the JVM name (pid@host).
+ */
+public class AllocationMetrics {
+
+    private final String node = ManagementFactory.getRuntimeMXBean().getName();
+    private final LongAdder claims = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    void recordClaim() {
+        claims.increment();
+    }
+
+    void recordConflict() {
+        conflicts.increment();
+    }
+
+    void recordRetry() {
+        retries.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public long getClaims() {
+        return claims.sum();
+    }
+
+    /**
+     * @return how many reservations found their spot already taken by another instance.
+     */
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return how many reservations found no free spot.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "node=" + node + " claims=" + getClaims() + " conflicts=" + getConflicts()
+                + " retries=" + getRetries() + " misses=" + getMisses();
+    }
+}
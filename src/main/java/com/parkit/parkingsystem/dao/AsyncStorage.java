@@ -0,0 +1,81 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous variants of the {@link ParkingSpotRepository} and {@link TicketRepository} calls, run on a
+ * bounded database executor, so that a caller can start independent lookups and wait for them together.
+ * The calls run on the executor's threads, outside any {@link com.parkit.parkingsystem.config.UnitOfWork}
+ * of the caller: each one borrows its own connection and a write is committed on its own.
+ */
+public class AsyncStorage {
+
+    private final ParkingSpotRepository parkingSpotRepository;
+    private final TicketRepository ticketRepository;
+    private final Executor executor;
+
+    public AsyncStorage(ParkingSpotRepository parkingSpotRepository, TicketRepository ticketRepository,
+                        Executor executor) {
+        this.parkingSpotRepository = parkingSpotRepository;
+        this.ticketRepository = ticketRepository;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates an executor for database calls: at most threadCount calls run at once, about the size of the
+     * connection pool, and up to queueCapacity wait. When the queue is full the caller runs the call itself,
+     * which slows callers down instead of queueing without bound.
+     *
+     * @param threadCount number of threads, idle ones stop after a minute.
+     * @param queueCapacity number of calls waiting for a thread.
+     * @return the executor; shut it down on close.
+     */
+    public static ThreadPoolExecutor newExecutor(int threadCount, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "db-async-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public CompletableFuture<Integer> getNextAvailableSlotAsync(ParkingType parkingType) {
+        return CompletableFuture.supplyAsync(() -> parkingSpotRepository.getNextAvailableSlot(parkingType), executor);
+    }
+
+    public CompletableFuture<Integer> claimNextAvailableSlotAsync(ParkingType parkingType) {
+        return CompletableFuture.supplyAsync(() -> parkingSpotRepository.claimNextAvailableSlot(parkingType), executor);
+    }
+
+    public CompletableFuture<Boolean> updateParkingAsync(ParkingSpot parkingSpot) {
+        return CompletableFuture.supplyAsync(() -> parkingSpotRepository.updateParking(parkingSpot), executor);
+    }
+
+    public CompletableFuture<Integer> saveTicketAsync(Ticket ticket) {
+        return CompletableFuture.supplyAsync(() -> ticketRepository.saveTicket(ticket), executor);
+    }
+
+    public CompletableFuture<Ticket> getTicketAsync(String vehicleRegNumber) {
+        return CompletableFuture.supplyAsync(() -> ticketRepository.getTicket(vehicleRegNumber), executor);
+    }
+
+    public CompletableFuture<Boolean> updateTicketAsync(Ticket ticket) {
+        return CompletableFuture.supplyAsync(() -> ticketRepository.updateTicket(ticket), executor);
+    }
+
+    public CompletableFuture<Integer> getNbTicketAsync(String vehicleRegNumber) {
+        return CompletableFuture.supplyAsync(() -> ticketRepository.getNbTicket(vehicleRegNumber), executor);
+    }
+}
@@ -0,0 +1,215 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory index of free parking spots, one bitmap per ParkingType where bit n is set when
+ * spot number n is free. The lowest free spot of a type is found with a word scan instead
+ * of a MIN() query over the parking table.
+ * Bitmap words are updated with compare-and-set, so {@link #claim(ParkingType)} hands out each
+ * free spot exactly once to concurrent gates without taking a lock. Spots are registered with
+ * {@link #addSpot(int, ParkingType, boolean)} before the index is shared between threads.
+ */
+public class FreeSpotIndex {
+
+    private static final int BITS_PER_WORD = 64;
+
+    private final AtomicLongArray[] freeSpots = new AtomicLongArray[ParkingType.values().length];
+    private final LongAdder[] claims = newCounters();
+    private final LongAdder[] claimRetries = newCounters();
+    private final LongAdder[] claimMisses = newCounters();
+    private volatile ParkingType[] spotTypes = new ParkingType[BITS_PER_WORD];
+
+    public FreeSpotIndex() {
+        for (ParkingType parkingType : ParkingType.values()) {
+            freeSpots[parkingType.ordinal()] = new AtomicLongArray(1);
+        }
+    }
+
+    /**
+     * Registers a spot, replacing any spot previously registered with the same number.
+     *
+     * @param number spot number, strictly positive.
+     * @param parkingType type of vehicle the spot accepts.
+     * @param available whether the spot is free.
+     */
+    public synchronized void addSpot(int number, ParkingType parkingType, boolean available) {
+        if (number < 1) {
+            throw new IllegalArgumentException("Invalid parking number " + number);
+        }
+        ParkingType[] types = spotTypes;
+        if (number >= types.length) {
+            types = Arrays.copyOf(types, Math.max(number + 1, types.length * 2));
+            for (int i = 0; i < freeSpots.length; i++) {
+                freeSpots[i] = grow(freeSpots[i], types.length);
+            }
+        }
+        ParkingType previous = types[number];
+        if (previous != null) {
+            setBit(freeSpots[previous.ordinal()], number, false);
+        }
+        types[number] = parkingType;
+        spotTypes = types;
+        setBit(freeSpots[parkingType.ordinal()], number, available);
+    }
+
+    /**
+     * Atomically takes the lowest free spot of a parking type. Concurrent callers never
+     * get the same spot; a lost compare-and-set is counted as a claim retry.
+     *
+     * @param parkingType type of vehicle.
+     * @return the claimed spot number, or -1 if every spot of that type is taken.
+     */
+    public int claim(ParkingType parkingType) {
+        int type = parkingType.ordinal();
+        AtomicLongArray words = freeSpots[type];
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            while (word != 0) {
+                long bit = Long.lowestOneBit(word);
+                if (words.compareAndSet(i, word, word & ~bit)) {
+                    claims[type].increment();
+                    return i * BITS_PER_WORD + Long.numberOfTrailingZeros(bit);
+                }
+                claimRetries[type].increment();
+                word = words.get(i);
+            }
+        }
+        claimMisses[type].increment();
+        return -1;
+    }
+
+    /**
+     * Gives back a spot taken by {@link #claim(ParkingType)} whose allotment did not go through.
+     *
+     * @param number spot number.
+     * @return false if the spot is not registered in the index.
+     */
+    public boolean release(int number) {
+        return setAvailable(number, true);
+    }
+
+    /**
+     * Returns the lowest free spot number for a parking type without taking it.
+     *
+     * @param parkingType type of vehicle.
+     * @return the spot number, or -1 if every spot of that type is taken.
+     */
+    public int lowestFree(ParkingType parkingType) {
+        AtomicLongArray words = freeSpots[parkingType.ordinal()];
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            if (word != 0) {
+                return i * BITS_PER_WORD + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks a registered spot as free or taken.
+     *
+     * @param number spot number.
+     * @param available whether the spot is now free.
+     * @return false if the spot is not registered in the index.
+     */
+    public boolean setAvailable(int number, boolean available) {
+        ParkingType parkingType = getParkingType(number);
+        if (parkingType == null) {
+            return false;
+        }
+        setBit(freeSpots[parkingType.ordinal()], number, available);
+        return true;
+    }
+
+    /**
+     * Tells whether a registered spot is free.
+     *
+     * @param number spot number.
+     * @return true if the spot is registered and free.
+     */
+    public boolean isAvailable(int number) {
+        ParkingType parkingType = getParkingType(number);
+        if (parkingType == null) {
+            return false;
+        }
+        AtomicLongArray words = freeSpots[parkingType.ordinal()];
+        return (words.get(number / BITS_PER_WORD) & (1L << (number % BITS_PER_WORD))) != 0;
+    }
+
+    /**
+     * Returns the number of free spots of a parking type.
+     *
+     * @param parkingType type of vehicle.
+     * @return the free spot count.
+     */
+    public int countFree(ParkingType parkingType) {
+        AtomicLongArray words = freeSpots[parkingType.ordinal()];
+        int count = 0;
+        for (int i = 0; i < words.length(); i++) {
+            count += Long.bitCount(words.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * Returns the type of a registered spot.
+     *
+     * @param number spot number.
+     * @return the spot's type, or null if the spot is not registered.
+     */
+    public ParkingType getParkingType(int number) {
+        ParkingType[] types = spotTypes;
+        return number > 0 && number < types.length ? types[number] : null;
+    }
+
+    public long getClaimCount(ParkingType parkingType) {
+        return claims[parkingType.ordinal()].sum();
+    }
+
+    /**
+     * @param parkingType type of vehicle.
+     * @return how many times a claim lost a compare-and-set race and had to retry.
+     */
+    public long getClaimRetryCount(ParkingType parkingType) {
+        return claimRetries[parkingType.ordinal()].sum();
+    }
+
+    /**
+     * @param parkingType type of vehicle.
+     * @return how many claims found no free spot.
+     */
+    public long getClaimMissCount(ParkingType parkingType) {
+        return claimMisses[parkingType.ordinal()].sum();
+    }
+
+    private static void setBit(AtomicLongArray words, int number, boolean value) {
+        int i = number / BITS_PER_WORD;
+        long bit = 1L << (number % BITS_PER_WORD);
+        if (value) {
+            words.getAndAccumulate(i, bit, (word, mask) -> word | mask);
+        } else {
+            words.getAndAccumulate(i, bit, (word, mask) -> word & ~mask);
+        }
+    }
+
+    private static AtomicLongArray grow(AtomicLongArray words, int bits) {
+        AtomicLongArray grown = new AtomicLongArray((bits + BITS_PER_WORD - 1) / BITS_PER_WORD);
+        for (int i = 0; i < words.length(); i++) {
+            grown.set(i, words.get(i));
+        }
+        return grown;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[ParkingType.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,523 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.SpotRef;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Local event-sourced copy of the gate state: the state of every spot, the open tickets and the visit
+ * count of every vehicle. Each entry and exit committed by the parking service is applied to the state
+ * and appended to a log file; a compact binary snapshot of the state is written periodically, after which
+ * the older log files are deleted. At startup the latest snapshot is loaded and the log written after it
+ * is replayed, which rebuilds the free-spot index, open ticket cache and visit counter without querying
+ * the ticket table.
+ * <p>
+ * The database stays the reference. Events are logged after the commit, so a crash can lose the last
+ * ones; the restored state is therefore only used if its highest ticket ID and number of open tickets
+ * match the database, and is rebuilt from the database otherwise. The log sees only the gates of this
+ * instance, so several instances sharing a database always rebuild from it.
+ * <p>
+ * Log record: int payload length, int CRC32 of the payload, then long sequence, byte kind, int ticket ID,
+ * int spot number, byte parking type, long time millis, short plate length and the plate in UTF-8.
+ * Log files are named after the sequence of their first record.
+ */
+public class GateEventLog implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("GateEventLog");
+
+    private static final int SNAPSHOT_MAGIC = 0x504B4753;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "gate.snapshot";
+    private static final String LOG_PREFIX = "events-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final byte ENTRY = 1;
+    private static final byte EXIT = 2;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_PAYLOAD_SIZE = 8 + 1 + 4 + 4 + 1 + 8 + 2 + 1024;
+    private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+    /**
+     * Highest ticket ID and number of open tickets, compared between the restored state and the database.
+     */
+    public static final class Watermark {
+        private final int maxTicketId;
+        private final int openTickets;
+
+        public Watermark(int maxTicketId, int openTickets) {
+            this.maxTicketId = maxTicketId;
+            this.openTickets = openTickets;
+        }
+
+        public int getMaxTicketId() {
+            return maxTicketId;
+        }
+
+        public int getOpenTickets() {
+            return openTickets;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Watermark)) {
+                return false;
+            }
+            Watermark other = (Watermark) o;
+            return maxTicketId == other.maxTicketId && openTickets == other.openTickets;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * maxTicketId + openTickets;
+        }
+
+        @Override
+        public String toString() {
+            return "max ticket " + maxTicketId + ", " + openTickets + " open";
+        }
+    }
+
+    private final Path directory;
+    private final boolean forceOnAppend;
+    private final Object snapshotLock = new Object();
+    // state, guarded by this
+    private final Map<Integer, ParkingType> spotTypes = new HashMap<>();
+    private final BitSet freeSpots = new BitSet();
+    private final Map<String, CompactTicket> openTickets = new HashMap<>();
+    private final Map<String, Integer> visitCounts = new HashMap<>();
+    private int maxTicketId;
+    private long lastSequence;
+    private long snapshotSequence = -1;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + MAX_PAYLOAD_SIZE);
+    private FileChannel log;
+    private final boolean restored;
+    private ScheduledExecutorService snapshotter;
+
+    /**
+     * Loads the latest snapshot of the directory and replays the log written after it.
+     * Events are appended once {@link #start(long)} is called.
+     *
+     * @param directory directory of the snapshot and log files, created if needed.
+     * @param forceOnAppend whether each event is forced to disk before the gate opens.
+     * @throws IOException if the directory cannot be read.
+     */
+    public GateEventLog(Path directory, boolean forceOnAppend) throws IOException {
+        this.directory = directory;
+        this.forceOnAppend = forceOnAppend;
+        Files.createDirectories(directory);
+        this.restored = load();
+    }
+
+    /**
+     * @return true if the state was restored from a snapshot and a complete log.
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * Replaces the state, e.g. with the state read from the database when the restored one is stale.
+     * The next snapshot makes it durable.
+     */
+    public synchronized void reset(Collection<ParkingSpot> parkingSpots, Collection<CompactTicket> tickets,
+                                   Map<String, Integer> visits, int maxTicketId) {
+        spotTypes.clear();
+        freeSpots.clear();
+        openTickets.clear();
+        visitCounts.clear();
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            spotTypes.put(parkingSpot.getId(), parkingSpot.getParkingType());
+            freeSpots.set(parkingSpot.getId(), parkingSpot.isAvailable());
+        }
+        for (CompactTicket ticket : tickets) {
+            openTickets.put(ticket.getVehicleRegNumber(), ticket.copy());
+        }
+        visitCounts.putAll(visits);
+        this.maxTicketId = maxTicketId;
+        snapshotSequence = -1;
+    }
+
+    /**
+     * Writes a snapshot, then keeps appending events and writes a snapshot every period.
+     *
+     * @param snapshotIntervalMillis time between two snapshots.
+     * @throws IOException if the first snapshot cannot be written.
+     */
+    public void start(long snapshotIntervalMillis) throws IOException {
+        snapshot();
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gate-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (Exception e) {
+                logger.error("Error writing gate snapshot", e);
+            }
+        }, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic snapshots and writes a last one, so the next start replays nothing.
+     */
+    @Override
+    public void close() throws IOException {
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+        }
+        snapshot();
+        synchronized (this) {
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        }
+    }
+
+    /**
+     * Records the entry of a vehicle, once its ticket is committed.
+     *
+     * @param ticket the saved ticket, with its ID.
+     */
+    public synchronized void recordEntry(Ticket ticket) {
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        append(ENTRY, ticket.getId(), parkingSpot.getId(), parkingSpot.getParkingType(),
+                ticket.getInTime().getTime(), ticket.getVehicleRegNumber());
+    }
+
+    /**
+     * Records the exit of a vehicle, once its ticket is closed.
+     *
+     * @param ticket the closed ticket.
+     */
+    public synchronized void recordExit(Ticket ticket) {
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        append(EXIT, ticket.getId(), parkingSpot.getId(), parkingSpot.getParkingType(),
+                ticket.getOutTime().getTime(), ticket.getVehicleRegNumber());
+    }
+
+    /**
+     * Writes the state to a new snapshot file, switches to a new log file and deletes the log files the
+     * snapshot covers. Does nothing if no event was recorded since the last snapshot.
+     *
+     * @throws IOException if the snapshot cannot be written; the log files are then kept.
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            byte[] snapshot;
+            long sequence;
+            synchronized (this) {
+                if (log != null && lastSequence == snapshotSequence) {
+                    return;
+                }
+                snapshot = encodeSnapshot();
+                sequence = lastSequence;
+                if (log != null) {
+                    log.close();
+                }
+                log = FileChannel.open(logFile(sequence + 1), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer bytes = ByteBuffer.wrap(snapshot);
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+                out.force(true);
+            }
+            Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                snapshotSequence = sequence;
+            }
+            for (Map.Entry<Long, Path> logFile : logFiles().entrySet()) {
+                if (logFile.getKey() <= sequence) {
+                    Files.delete(logFile.getValue());
+                }
+            }
+            logger.info("Wrote gate snapshot at event " + sequence + ", " + snapshot.length + " bytes");
+        }
+    }
+
+    /**
+     * @return the highest ticket ID and number of open tickets of the state.
+     */
+    public synchronized Watermark getWatermark() {
+        return new Watermark(maxTicketId, openTickets.size());
+    }
+
+    /**
+     * @return a free-spot index of every spot of the state.
+     */
+    public synchronized FreeSpotIndex newFreeSpotIndex() {
+        FreeSpotIndex index = new FreeSpotIndex();
+        for (Map.Entry<Integer, ParkingType> spot : spotTypes.entrySet()) {
+            index.addSpot(spot.getKey(), spot.getValue(), freeSpots.get(spot.getKey()));
+        }
+        return index;
+    }
+
+    /**
+     * @return copies of the open tickets of the state.
+     */
+    public synchronized List<CompactTicket> getOpenTickets() {
+        List<CompactTicket> tickets = new ArrayList<>(openTickets.size());
+        for (CompactTicket ticket : openTickets.values()) {
+            tickets.add(ticket.copy());
+        }
+        return tickets;
+    }
+
+    /**
+     * @return the number of tickets per vehicle of the state.
+     */
+    public synchronized Map<String, Integer> getVisitCounts() {
+        return new HashMap<>(visitCounts);
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    private void append(byte kind, int ticketId, int spot, ParkingType parkingType, long time, String vehicleRegNumber) {
+        if (kind == ENTRY) {
+            applyEntry(ticketId, spot, parkingType, time, vehicleRegNumber);
+        } else {
+            applyExit(spot, parkingType, vehicleRegNumber);
+        }
+        lastSequence++;
+        if (log == null) {
+            return;
+        }
+        byte[] plate = vehicleRegNumber.getBytes(StandardCharsets.UTF_8);
+        record.clear();
+        record.position(RECORD_HEADER_SIZE);
+        record.putLong(lastSequence).put(kind).putInt(ticketId).putInt(spot).put((byte) parkingType.ordinal())
+                .putLong(time).putShort((short) plate.length).put(plate);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, record.position() - RECORD_HEADER_SIZE);
+        record.putInt(0, record.position() - RECORD_HEADER_SIZE).putInt(4, (int) crc.getValue());
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                log.write(record);
+            }
+            if (forceOnAppend) {
+                log.force(false);
+            }
+        } catch (IOException e) {
+            // The state stays up to date; the next snapshot saves it and opens a new log file.
+            logger.error("Error appending to the gate event log, events are kept until the next snapshot", e);
+            try {
+                log.close();
+            } catch (IOException closeError) {
+                logger.error("Error closing the gate event log", closeError);
+            }
+            log = null;
+            snapshotSequence = -1;
+        }
+    }
+
+    private void applyEntry(int ticketId, int spot, ParkingType parkingType, long inTime, String vehicleRegNumber) {
+        spotTypes.put(spot, parkingType);
+        freeSpots.clear(spot);
+        openTickets.put(vehicleRegNumber, new CompactTicket(ticketId, SpotRef.of(spot, parkingType), vehicleRegNumber,
+                0, inTime, CompactTicket.OPEN));
+        visitCounts.merge(vehicleRegNumber, 1, Integer::sum);
+        maxTicketId = Math.max(maxTicketId, ticketId);
+    }
+
+    private void applyExit(int spot, ParkingType parkingType, String vehicleRegNumber) {
+        spotTypes.put(spot, parkingType);
+        freeSpots.set(spot);
+        openTickets.remove(vehicleRegNumber);
+    }
+
+    /**
+     * Loads the snapshot and replays the log files after it.
+     *
+     * @return true if the state is complete.
+     */
+    private synchronized boolean load() throws IOException {
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshotFile)) {
+            return false;
+        }
+        try {
+            decodeSnapshot(Files.readAllBytes(snapshotFile));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unreadable gate snapshot " + snapshotFile, e);
+            reset(new ArrayList<>(), new ArrayList<>(), new HashMap<>(), 0);
+            return false;
+        }
+        long snapshotAt = lastSequence;
+        int replayed = 0;
+        List<Path> files = new ArrayList<>(logFiles().values());
+        for (int i = 0; i < files.size(); i++) {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(files.get(i)));
+            while (bytes.remaining() >= RECORD_HEADER_SIZE) {
+                int length = bytes.getInt(bytes.position());
+                int checksum = bytes.getInt(bytes.position() + 4);
+                if (length <= 0 || length > MAX_PAYLOAD_SIZE || bytes.remaining() < RECORD_HEADER_SIZE + length) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes.array(), bytes.position() + RECORD_HEADER_SIZE, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                bytes.position(bytes.position() + RECORD_HEADER_SIZE);
+                long sequence = bytes.getLong();
+                byte kind = bytes.get();
+                int ticketId = bytes.getInt();
+                int spot = bytes.getInt();
+                ParkingType parkingType = PARKING_TYPES[bytes.get()];
+                long time = bytes.getLong();
+                byte[] plate = new byte[bytes.getShort()];
+                bytes.get(plate);
+                if (sequence <= lastSequence) {
+                    continue;
+                }
+                if (sequence != lastSequence + 1) {
+                    logger.error("Gate event log has a gap before event " + sequence);
+                    return false;
+                }
+                String vehicleRegNumber = new String(plate, StandardCharsets.UTF_8);
+                if (kind == ENTRY) {
+                    applyEntry(ticketId, spot, parkingType, time, vehicleRegNumber);
+                } else {
+                    applyExit(spot, parkingType, vehicleRegNumber);
+                }
+                lastSequence = sequence;
+                replayed++;
+            }
+            if (bytes.hasRemaining()) {
+                if (i < files.size() - 1) {
+                    logger.error("Gate event log " + files.get(i) + " is damaged");
+                    return false;
+                }
+                // record torn by a crash while appending
+                try (FileChannel torn = FileChannel.open(files.get(i), StandardOpenOption.WRITE)) {
+                    torn.truncate(bytes.position());
+                }
+            }
+        }
+        logger.info("Loaded gate snapshot at event " + snapshotAt + " and replayed " + replayed + " events");
+        return true;
+    }
+
+    private byte[] encodeSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + spotTypes.size() * 6 + openTickets.size() * 32
+                + visitCounts.size() * 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeLong(lastSequence);
+        out.writeInt(maxTicketId);
+        out.writeInt(spotTypes.size());
+        for (Map.Entry<Integer, ParkingType> spot : spotTypes.entrySet()) {
+            out.writeInt(spot.getKey());
+            out.writeByte(spot.getValue().ordinal());
+            out.writeBoolean(freeSpots.get(spot.getKey()));
+        }
+        out.writeInt(openTickets.size());
+        for (CompactTicket ticket : openTickets.values()) {
+            out.writeInt(ticket.getId());
+            out.writeInt(ticket.getSpot().getNumber());
+            out.writeByte(ticket.getSpot().getParkingType().ordinal());
+            out.writeLong(ticket.getInTimeMillis());
+            out.writeUTF(ticket.getVehicleRegNumber());
+        }
+        out.writeInt(visitCounts.size());
+        for (Map.Entry<String, Integer> visits : visitCounts.entrySet()) {
+            out.writeUTF(visits.getKey());
+            out.writeInt(visits.getValue());
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    private void decodeSnapshot(byte[] snapshot) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(snapshot, 0, snapshot.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(snapshot).getInt(snapshot.length - 4)) {
+            throw new IOException("Checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot, 0, snapshot.length - 4));
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Not a gate snapshot");
+        }
+        lastSequence = in.readLong();
+        snapshotSequence = lastSequence;
+        maxTicketId = in.readInt();
+        for (int i = in.readInt(); i > 0; i--) {
+            int number = in.readInt();
+            spotTypes.put(number, PARKING_TYPES[in.readByte()]);
+            freeSpots.set(number, in.readBoolean());
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            int id = in.readInt();
+            SpotRef spot = SpotRef.of(in.readInt(), PARKING_TYPES[in.readByte()]);
+            long inTime = in.readLong();
+            String vehicleRegNumber = in.readUTF();
+            openTickets.put(vehicleRegNumber, new CompactTicket(id, spot, vehicleRegNumber, 0, inTime, CompactTicket.OPEN));
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            visitCounts.put(in.readUTF(), in.readInt());
+        }
+    }
+
+    /**
+     * @return the log files by sequence of their first record.
+     */
+    private TreeMap<Long, Path> logFiles() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                files.put(Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())), file);
+            }
+        }
+        return files;
+    }
+
+    private Path logFile(long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", LOG_PREFIX, firstSequence, LOG_SUFFIX));
+    }
+}
@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+/**
+ * Thread-safe in-memory parking spot storage backed by a {@link FreeSpotIndex}.
+ * Used instead of {@link ParkingSpotDAO} to run the gate flow without a database,
+ * e.g. for simulations and CI performance runs.
+ */
+public class InMemoryParkingSpotRepository implements ParkingSpotRepository {
+
+    private final FreeSpotIndex freeSpotIndex = new FreeSpotIndex();
+
+    /**
+     * Creates a parking with the layout of resources/Data.sql: spots 1 to 3 for cars, 4 and 5 for bikes.
+     */
+    public InMemoryParkingSpotRepository() {
+        this(3, 2);
+    }
+
+    /**
+     * Creates a parking whose car spots are numbered first, followed by the bike spots.
+     *
+     * @param carSpots number of car spots.
+     * @param bikeSpots number of bike spots.
+     */
+    public InMemoryParkingSpotRepository(int carSpots, int bikeSpots) {
+        for (int number = 1; number <= carSpots + bikeSpots; number++) {
+            addSpot(number, number <= carSpots ? ParkingType.CAR : ParkingType.BIKE, true);
+        }
+    }
+
+    /**
+     * Adds a spot to the parking, or replaces the spot with the same number.
+     *
+     * @param number spot number.
+     * @param parkingType type of vehicle the spot accepts.
+     * @param available whether the spot is free.
+     */
+    public final void addSpot(int number, ParkingType parkingType, boolean available) {
+        freeSpotIndex.addSpot(number, parkingType, available);
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        return freeSpotIndex.lowestFree(parkingType);
+    }
+
+    @Override
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        return freeSpotIndex.claim(parkingType);
+    }
+
+    @Override
+    public void releaseClaim(ParkingSpot parkingSpot) {
+        freeSpotIndex.release(parkingSpot.getId());
+    }
+
+    public FreeSpotIndex getFreeSpotIndex() {
+        return freeSpotIndex;
+    }
+
+    /**
+     * Marks the spot free or taken right away; if the current {@link UnitOfWork} rolls back,
+     * the spot gets its previous state back.
+     */
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        int number = parkingSpot.getId();
+        boolean previous = freeSpotIndex.isAvailable(number);
+        if (!freeSpotIndex.setAvailable(number, parkingSpot.isAvailable())) {
+            return false;
+        }
+        UnitOfWork.afterRollback(() -> freeSpotIndex.setAvailable(number, previous));
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe in-memory ticket storage.
+ * Tickets are copied on the way in and out so that callers see the same isolation
+ * as with {@link TicketDAO}, where every read builds a new object; they are stored as
+ * {@link CompactTicket}s, so prices are kept to the cent.
+ * Writes made inside a {@link UnitOfWork} are undone if the unit rolls back.
+ */
+public class InMemoryTicketRepository implements TicketRepository {
+
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Map<Integer, CompactTicket> ticketsById = new ConcurrentHashMap<>();
+    private final Map<String, List<CompactTicket>> ticketsByVehicle = new ConcurrentHashMap<>();
+
+    @Override
+    public int saveTicket(Ticket ticket) {
+        ticket.setId(nextId.getAndIncrement());
+        CompactTicket stored = CompactTicket.of(ticket);
+        ticketsById.put(stored.getId(), stored);
+        List<CompactTicket> history = ticketsByVehicle.computeIfAbsent(ticket.getVehicleRegNumber(), k -> new ArrayList<>());
+        synchronized (history) {
+            history.add(stored);
+        }
+        UnitOfWork.afterRollback(() -> {
+            ticketsById.remove(stored.getId());
+            synchronized (history) {
+                history.remove(stored);
+            }
+        });
+        return stored.getId();
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        List<CompactTicket> history = ticketsByVehicle.get(vehicleRegNumber);
+        if (history == null) {
+            return null;
+        }
+        CompactTicket latest = null;
+        synchronized (history) {
+            for (CompactTicket ticket : history) {
+                if (latest == null || ticket.getInTimeMillis() >= latest.getInTimeMillis()) {
+                    latest = ticket;
+                }
+            }
+            return latest == null ? null : latest.toTicket();
+        }
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        CompactTicket stored = ticketsById.get(ticket.getId());
+        if (stored == null) {
+            return false;
+        }
+        List<CompactTicket> history = ticketsByVehicle.get(stored.getVehicleRegNumber());
+        synchronized (history) {
+            long previousPriceCents = stored.getPriceCents();
+            long previousOutTime = stored.getOutTimeMillis();
+            stored.setPriceCents(CompactTicket.toCents(ticket.getPrice()));
+            stored.setOutTimeMillis(ticket.getOutTime() == null ? CompactTicket.OPEN : ticket.getOutTime().getTime());
+            UnitOfWork.afterRollback(() -> {
+                synchronized (history) {
+                    stored.setPriceCents(previousPriceCents);
+                    stored.setOutTimeMillis(previousOutTime);
+                }
+            });
+        }
+        return true;
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        List<CompactTicket> history = ticketsByVehicle.get(vehicleRegNumber);
+        if (history == null) {
+            return 0;
+        }
+        synchronized (history) {
+            return history.size();
+        }
+    }
+}
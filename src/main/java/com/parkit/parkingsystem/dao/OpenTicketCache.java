@@ -0,0 +1,107 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of open tickets (no out time yet) keyed by vehicle registration number.
+ * Tickets are copied in and out, so callers can modify what they get without touching the cache;
+ * they are held as {@link CompactTicket}s to keep a large cache light on the heap.
+ * The cache only knows about tickets written through this process: with several application
+ * instances, a vehicle exiting through another instance stays cached here until it is evicted
+ * or re-enters through this one.
+ */
+public class OpenTicketCache {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LinkedHashMap<String, CompactTicket> tickets;
+
+    /**
+     * @param capacity maximum number of open tickets kept, least recently used first out.
+     */
+    public OpenTicketCache(final int capacity) {
+        this.tickets = new LinkedHashMap<String, CompactTicket>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompactTicket> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the open ticket of a vehicle.
+     *
+     * @param vehicleRegNumber The vehicle registration number.
+     * @return the ticket, or null on a cache miss.
+     */
+    public Ticket get(String vehicleRegNumber) {
+        CompactTicket ticket;
+        synchronized (tickets) {
+            ticket = tickets.get(vehicleRegNumber);
+        }
+        if (ticket == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return ticket.toTicket();
+    }
+
+    /**
+     * Caches a ticket if it is still open, or forgets the vehicle's ticket once it is closed.
+     *
+     * @param ticket the ticket just written or read.
+     */
+    public void update(Ticket ticket) {
+        if (ticket.getOutTime() != null) {
+            evict(ticket.getVehicleRegNumber());
+            return;
+        }
+        put(CompactTicket.of(ticket));
+    }
+
+    /**
+     * Caches an open ticket already in compact form, as read at startup.
+     *
+     * @param ticket the open ticket, which the cache keeps.
+     */
+    void put(CompactTicket ticket) {
+        synchronized (tickets) {
+            tickets.put(ticket.getVehicleRegNumber(), ticket);
+        }
+    }
+
+    public void evict(String vehicleRegNumber) {
+        synchronized (tickets) {
+            tickets.remove(vehicleRegNumber);
+        }
+    }
+
+    public int size() {
+        synchronized (tickets) {
+            return tickets.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of lookups answered from the cache, 0 when nothing was looked up yet.
+     */
+    public double getHitRatio() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
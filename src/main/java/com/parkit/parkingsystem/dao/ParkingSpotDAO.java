@@ -1,8 +1,10 @@
 package com.parkit.parkingsystem.dao;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SpotAllocationMode;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,21 +12,51 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
 /**
  * Data Access Object (DAO) class for managing parking spot data in the database.
  * Provides methods to retrieve the next available parking slot and update parking spot availability.
+ * By default the free spots are tracked in a {@link FreeSpotIndex} loaded once from the parking table
+ * and kept in sync by updateParking, so finding the next available slot needs no database round trip.
+ * When several application instances share the database, -Dparkit.spotAllocation=skip_locked or
+ * optimistic reserves spots in the database instead, see {@link SpotAllocationMode}.
+ * Inside a {@link UnitOfWork}, the index only sees an update once the unit commits.
  */
-public class ParkingSpotDAO {
+public class ParkingSpotDAO implements ParkingSpotRepository {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
-    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    public DataBaseConfig dataBaseConfig;
+
+    private static final int MAX_CLAIM_ATTEMPTS = 10;
+
+    private final SpotAllocationMode allocationMode;
+    private final AllocationMetrics allocationMetrics = new AllocationMetrics();
+    private volatile FreeSpotIndex freeSpotIndex;
+
+    public ParkingSpotDAO() {
+        this(new DataBaseConfig());
+    }
+
+    public ParkingSpotDAO(DataBaseConfig dataBaseConfig) {
+        this(dataBaseConfig, SpotAllocationMode.valueOf(
+                System.getProperty("parkit.spotAllocation", SpotAllocationMode.INDEX.name()).trim().toUpperCase()));
+    }
+
+    public ParkingSpotDAO(DataBaseConfig dataBaseConfig, SpotAllocationMode allocationMode) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.allocationMode = allocationMode;
+    }
 /**
      * Retrieves the next available parking slot for the specified parking type.
      *
      * @param parkingType The type of parking (e.g., CAR, BIKE).
-     * @return The ID of the next available parking slot, or -1 if none are available.
+     * @return The ID of the next available parking slot, or a value lower than 1 if none are available.
      */
     public int getNextAvailableSlot(ParkingType parkingType){
+        if (allocationMode == SpotAllocationMode.INDEX) {
+            return getFreeSpotIndex().lowestFree(parkingType);
+        }
         Connection con = null;
         int result=-1;
         try {
@@ -46,6 +78,124 @@ public class ParkingSpotDAO {
         }
         return result;
     }
+/**
+     * Atomically reserves the lowest available parking slot, according to the allocation mode.
+     * In QUERY mode this falls back to getNextAvailableSlot, which does not protect
+     * concurrent gates from getting the same slot.
+     *
+     * @param parkingType The type of parking (e.g., CAR, BIKE).
+     * @return The ID of the reserved parking slot, or a value lower than 1 if none are available.
+     */
+    public int claimNextAvailableSlot(ParkingType parkingType){
+        switch (allocationMode) {
+            case INDEX:
+                return getFreeSpotIndex().claim(parkingType);
+            case SKIP_LOCKED:
+                return claimSkipLocked(parkingType);
+            case OPTIMISTIC:
+                return claimOptimistic(parkingType);
+            default:
+                return getNextAvailableSlot(parkingType);
+        }
+    }
+
+    /**
+     * Locks the lowest free spot no other transaction holds, and marks it taken in the same
+     * transaction. Instances skip each other's locked rows instead of queueing on them.
+     */
+    private int claimSkipLocked(ParkingType parkingType) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            ps = con.prepareStatement(DBConstants.LOCK_NEXT_PARKING_SPOT);
+            ps.setString(1, parkingType.toString());
+            rs = ps.executeQuery();
+            int result = rs.next() ? rs.getInt(1) : 0;
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            rs = null;
+            ps = null;
+            if (result > 0) {
+                ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+                ps.setInt(1, result);
+                if (ps.executeUpdate() == 1) {
+                    allocationMetrics.recordClaim();
+                } else {
+                    allocationMetrics.recordConflict();
+                    result = 0;
+                }
+            } else {
+                allocationMetrics.recordMiss();
+            }
+            con.commit();
+            return result;
+        } catch (Exception ex) {
+            logger.error("Error claiming next available slot", ex);
+            throw new RuntimeException("Error claiming next available slot", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Reads the lowest free spot, then takes it with an update guarded by AVAILABLE = true,
+     * which acts as the row version: if another instance took the spot in between, nothing
+     * is updated and the next free spot is tried.
+     */
+    private int claimOptimistic(ParkingType parkingType) {
+        for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                allocationMetrics.recordRetry();
+            }
+            int candidate = getNextAvailableSlot(parkingType);
+            if (candidate < 1) {
+                allocationMetrics.recordMiss();
+                return 0;
+            }
+            Connection con = null;
+            PreparedStatement ps = null;
+            try {
+                con = dataBaseConfig.getConnection();
+                ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+                ps.setInt(1, candidate);
+                if (ps.executeUpdate() == 1) {
+                    allocationMetrics.recordClaim();
+                    return candidate;
+                }
+                allocationMetrics.recordConflict();
+            } catch (Exception ex) {
+                logger.error("Error claiming next available slot", ex);
+                throw new RuntimeException("Error claiming next available slot", ex);
+            } finally {
+                dataBaseConfig.closePreparedStatement(ps);
+                dataBaseConfig.closeConnection(con);
+            }
+        }
+        logger.error("Gave up claiming a " + parkingType + " spot after " + MAX_CLAIM_ATTEMPTS + " conflicts");
+        return 0;
+    }
+    /**
+     * Gives back a reserved slot. In INDEX mode the reservation only exists in the free-spot index,
+     * so the bit is returned there without touching the database, even if the database is down.
+     * The other modes reserved the slot in the parking table and mark it available again there.
+     *
+     * @param parkingSpot The reserved parking spot.
+     */
+    public void releaseClaim(ParkingSpot parkingSpot) {
+        if (allocationMode == SpotAllocationMode.INDEX) {
+            getFreeSpotIndex().release(parkingSpot.getId());
+            return;
+        }
+        parkingSpot.setAvailable(true);
+        if (!updateParking(parkingSpot)) {
+            logger.error("Unable to release parking spot " + parkingSpot.getId());
+        }
+    }
 /**
      * Updates the availability status of a parking spot in the database.
      *
@@ -62,6 +212,12 @@ public class ParkingSpotDAO {
             ps.setInt(2, parkingSpot.getId());
             int updateRowCount = ps.executeUpdate();
             dataBaseConfig.closePreparedStatement(ps);
+            FreeSpotIndex index = freeSpotIndex;
+            if (updateRowCount == 1 && index != null) {
+                int number = parkingSpot.getId();
+                boolean available = parkingSpot.isAvailable();
+                UnitOfWork.afterCommit(() -> index.setAvailable(number, available));
+            }
             return (updateRowCount == 1);
         }catch (Exception ex){
             logger.error("Error updating parking info",ex);
@@ -71,4 +227,88 @@ public class ParkingSpotDAO {
         }
     }
 
+    /**
+     * (Re)loads the free-spot index from the parking table. Called at startup, and whenever
+     * the parking table was changed behind this DAO's back.
+     *
+     * @return the freshly loaded index.
+     */
+    public FreeSpotIndex loadFreeSpotIndex() {
+        FreeSpotIndex index = new FreeSpotIndex();
+        for (ParkingSpot parkingSpot : getParkingSpots()) {
+            index.addSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable());
+        }
+        freeSpotIndex = index;
+        logger.info("Loaded free spot index");
+        return index;
+    }
+
+    /**
+     * Uses a free-spot index rebuilt without querying the parking table, e.g. from the gate event log.
+     *
+     * @param index the index of every spot.
+     */
+    public void useFreeSpotIndex(FreeSpotIndex index) {
+        freeSpotIndex = index;
+    }
+
+    /**
+     * Reads every spot of the parking table.
+     *
+     * @return the spots with their availability.
+     */
+    public List<ParkingSpot> getParkingSpots() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+            rs = ps.executeQuery();
+            List<ParkingSpot> parkingSpots = new ArrayList<>();
+            while (rs.next()) {
+                parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
+            }
+            return parkingSpots;
+        } catch (Exception ex) {
+            logger.error("Error loading parking spots", ex);
+            throw new RuntimeException("Error loading parking spots", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public SpotAllocationMode getAllocationMode() {
+        return allocationMode;
+    }
+
+    /**
+     * Returns this instance's reservation counters for the SKIP_LOCKED and OPTIMISTIC modes.
+     *
+     * @return the allocation metrics.
+     */
+    public AllocationMetrics getAllocationMetrics() {
+        return allocationMetrics;
+    }
+
+    /**
+     * Returns the free-spot index, loading it on first use. Its claim counters show
+     * how much concurrent gates contend for spots.
+     *
+     * @return the free-spot index.
+     */
+    public FreeSpotIndex getFreeSpotIndex() {
+        FreeSpotIndex index = freeSpotIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = freeSpotIndex;
+                if (index == null) {
+                    index = loadFreeSpotIndex();
+                }
+            }
+        }
+        return index;
+    }
 }
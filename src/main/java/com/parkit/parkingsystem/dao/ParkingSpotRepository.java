@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+/**
+ * Storage operations on parking spots used by the parking service.
+ * Implemented by {@link ParkingSpotDAO} for MySQL and {@link InMemoryParkingSpotRepository}
+ * for simulations and performance runs.
+ */
+public interface ParkingSpotRepository {
+
+    /**
+     * Retrieves the next available parking slot for the specified parking type.
+     *
+     * @param parkingType The type of parking (e.g., CAR, BIKE).
+     * @return The ID of the lowest available parking slot, or a value lower than 1 if none is available.
+     */
+    int getNextAvailableSlot(ParkingType parkingType);
+
+    /**
+     * Atomically reserves the lowest available parking slot for the specified parking type,
+     * so that concurrent gates never get the same slot. The reservation is then persisted
+     * by {@link #updateParking(ParkingSpot)}, or undone by {@link #releaseClaim(ParkingSpot)}.
+     *
+     * @param parkingType The type of parking (e.g., CAR, BIKE).
+     * @return The ID of the reserved parking slot, or a value lower than 1 if none is available.
+     */
+    int claimNextAvailableSlot(ParkingType parkingType);
+
+    /**
+     * Gives back a slot reserved by {@link #claimNextAvailableSlot(ParkingType)} when the entry
+     * cannot go on, whether or not its allotment reached the storage.
+     *
+     * @param parkingSpot The reserved parking spot.
+     */
+    void releaseClaim(ParkingSpot parkingSpot);
+
+    /**
+     * Updates the availability status of a parking spot.
+     *
+     * @param parkingSpot The ParkingSpot object containing the updated availability status.
+     * @return true if the update was successful, false otherwise.
+     */
+    boolean updateParking(ParkingSpot parkingSpot);
+}
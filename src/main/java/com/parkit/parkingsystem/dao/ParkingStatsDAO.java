@@ -0,0 +1,128 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object (DAO) class for the hourly aggregates of the parking_stats table.
+ * Rows are only ever incremented, so several application instances can add their figures to the same hour.
+ */
+public class ParkingStatsDAO {
+
+    private static final Logger logger = LogManager.getLogger("ParkingStatsDAO");
+
+    public DataBaseConfig dataBaseConfig;
+
+    public ParkingStatsDAO(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    /**
+     * Adds hourly figures to the stored ones; peak occupancies are merged with max().
+     *
+     * @param deltas figures gathered since the last call, one per hour and parking type.
+     */
+    public void addHourlyStats(List<ParkingStats> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.ADD_PARKING_STATS);
+            for (ParkingStats delta : deltas) {
+                ps.setTimestamp(1, new Timestamp(delta.getStart().getTime()));
+                ps.setString(2, delta.getParkingType().toString());
+                ps.setLong(3, delta.getEntries());
+                ps.setLong(4, delta.getExits());
+                ps.setLong(5, delta.getRevenueCents());
+                ps.setLong(6, delta.getStayMillis());
+                ps.setInt(7, delta.getPeakOccupancy());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (Exception ex) {
+            logger.error("Error saving parking stats", ex);
+            throw new RuntimeException("Error saving parking stats", ex);
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Reads the hourly figures of a period, for dashboards and to reload them at startup.
+     *
+     * @param from start of the period, inclusive.
+     * @param to end of the period, exclusive.
+     * @return the figures, oldest hour first.
+     */
+    public List<ParkingStats> getHourlyStats(Date from, Date to) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_PARKING_STATS);
+            ps.setTimestamp(1, new Timestamp(from.getTime()));
+            ps.setTimestamp(2, new Timestamp(to.getTime()));
+            rs = ps.executeQuery();
+            List<ParkingStats> stats = new ArrayList<>();
+            while (rs.next()) {
+                stats.add(new ParkingStats(new Date(rs.getTimestamp(1).getTime()), ParkingType.valueOf(rs.getString(2)),
+                        rs.getLong(3), rs.getLong(4), rs.getLong(5), rs.getLong(6), rs.getInt(7)));
+            }
+            return stats;
+        } catch (Exception ex) {
+            logger.error("Error fetching parking stats", ex);
+            throw new RuntimeException("Error fetching parking stats", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Counts the parked vehicles of each type, from the open tickets. Used once at startup.
+     *
+     * @return the number of open tickets per parking type.
+     */
+    public Map<ParkingType, Integer> getOccupancy() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_OCCUPANCY);
+            rs = ps.executeQuery();
+            Map<ParkingType, Integer> occupancy = new EnumMap<>(ParkingType.class);
+            while (rs.next()) {
+                occupancy.put(ParkingType.valueOf(rs.getString(1)), rs.getInt(2));
+            }
+            return occupancy;
+        } catch (Exception ex) {
+            logger.error("Error fetching occupancy", ex);
+            throw new RuntimeException("Error fetching occupancy", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+}
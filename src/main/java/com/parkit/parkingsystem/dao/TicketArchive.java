@@ -0,0 +1,404 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local history of closed tickets moved out of MySQL, stored column by column in gzip files.
+ * Tickets are partitioned by the day of their out time: each archival batch writes one segment
+ * file per day into that day's directory. Inside a segment every column is stored contiguously,
+ * plates as a dictionary and times as deltas, which compresses well and makes a scan a sequential read.
+ * Segments are first written to a staging directory and only moved into their day directory once
+ * the tickets are deleted from MySQL, so a crash never leaves a ticket both archived and in the table.
+ */
+public class TicketArchive {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchive");
+
+    private static final int MAGIC = 0x504B5441;
+    private static final int VERSION = 1;
+    private static final String SEGMENT_SUFFIX = ".tickets.gz";
+
+    private final Path directory;
+    private final Path staging;
+    private final ZoneId zone;
+
+    /**
+     * @param directory root directory of the archive, created if needed.
+     * @param zone time zone in which out times are split into days.
+     * @throws IOException if the directories cannot be created.
+     */
+    public TicketArchive(Path directory, ZoneId zone) throws IOException {
+        this.directory = directory;
+        this.staging = directory.resolve("staging");
+        this.zone = zone;
+        Files.createDirectories(staging);
+    }
+
+    /**
+     * Writes the tickets to staging segments, one per day of out time, and forces them to disk.
+     *
+     * @param tickets closed tickets.
+     * @return the staged segment files, to publish or discard.
+     * @throws IOException if a segment cannot be written.
+     */
+    public List<Path> stage(List<Ticket> tickets) throws IOException {
+        Map<LocalDate, List<Ticket>> byDay = new TreeMap<>();
+        for (Ticket ticket : tickets) {
+            byDay.computeIfAbsent(dayOf(ticket.getOutTime()), k -> new ArrayList<>()).add(ticket);
+        }
+        String batch = Long.toString(System.currentTimeMillis(), 36) + "-" + Long.toString(System.nanoTime() & 0xffffff, 36);
+        List<Path> staged = new ArrayList<>();
+        try {
+            for (Map.Entry<LocalDate, List<Ticket>> day : byDay.entrySet()) {
+                Path segment = staging.resolve(day.getKey() + "." + batch + SEGMENT_SUFFIX);
+                writeSegment(segment, day.getValue());
+                staged.add(segment);
+            }
+        } catch (IOException e) {
+            discard(staged);
+            throw e;
+        }
+        return staged;
+    }
+
+    /**
+     * Moves staged segments into their day directories, making them visible to scans.
+     *
+     * @param staged segments returned by stage().
+     */
+    public void publish(List<Path> staged) {
+        for (Path segment : staged) {
+            String name = segment.getFileName().toString();
+            String day = name.substring(0, name.indexOf('.'));
+            try {
+                Path dayDirectory = Files.createDirectories(directory.resolve(day));
+                Files.move(segment, dayDirectory.resolve(name.substring(day.length() + 1)), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error publishing archive segment " + segment, e);
+            }
+        }
+    }
+
+    /**
+     * Deletes staged segments whose tickets stayed in MySQL.
+     *
+     * @param staged segments returned by stage().
+     */
+    public void discard(List<Path> staged) {
+        for (Path segment : staged) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                logger.error("Error deleting staged archive segment " + segment, e);
+            }
+        }
+    }
+
+    /**
+     * Settles segments left in staging by a crash: a segment whose tickets are gone from MySQL
+     * was committed and is published, one whose tickets are still there is discarded.
+     *
+     * @param ticketDAO DAO used to check whether the archived tickets are still in the table.
+     * @return the number of segments published.
+     * @throws IOException if the staging directory cannot be read.
+     */
+    public int recover(TicketDAO ticketDAO) throws IOException {
+        int published = 0;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(staging, "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : segments) {
+                Segment content;
+                try {
+                    content = readSegment(segment, null);
+                } catch (IOException e) {
+                    logger.warn("Discarding torn staged archive segment " + segment);
+                    content = null;
+                }
+                List<Path> one = Collections.singletonList(segment);
+                if (content == null || content.size() == 0 || ticketDAO.ticketExists(content.getIds()[0])) {
+                    discard(one);
+                } else {
+                    publish(one);
+                    published++;
+                }
+            }
+        }
+        if (published > 0) {
+            logger.info("Published " + published + " archive segments left in staging");
+        }
+        return published;
+    }
+
+    /**
+     * Reads the segments of every day in a range, oldest day first.
+     *
+     * @param from first day, inclusive.
+     * @param to last day, inclusive.
+     * @param consumer receives each segment.
+     * @throws IOException if a segment cannot be read.
+     */
+    public void scan(LocalDate from, LocalDate to, Consumer<Segment> consumer) throws IOException {
+        List<LocalDate> days = new ArrayList<>();
+        try (DirectoryStream<Path> dayDirectories = Files.newDirectoryStream(directory)) {
+            for (Path dayDirectory : dayDirectories) {
+                LocalDate day = parseDay(dayDirectory.getFileName().toString());
+                if (day != null && !day.isBefore(from) && !day.isAfter(to)) {
+                    days.add(day);
+                }
+            }
+        }
+        Collections.sort(days);
+        for (LocalDate day : days) {
+            List<Path> segments = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.resolve(day.toString()), "*" + SEGMENT_SUFFIX)) {
+                for (Path segment : files) {
+                    segments.add(segment);
+                }
+            }
+            Collections.sort(segments);
+            for (Path segment : segments) {
+                consumer.accept(readSegment(segment, day));
+            }
+        }
+    }
+
+    /**
+     * Reads the archived tickets of every day in a range, oldest day first.
+     *
+     * @param from first day, inclusive.
+     * @param to last day, inclusive.
+     * @param consumer receives each ticket.
+     * @throws IOException if a segment cannot be read.
+     */
+    public void scanTickets(LocalDate from, LocalDate to, Consumer<Ticket> consumer) throws IOException {
+        scan(from, to, segment -> {
+            for (int i = 0; i < segment.size(); i++) {
+                consumer.accept(segment.getTicket(i));
+            }
+        });
+    }
+
+    private LocalDate dayOf(Date time) {
+        return Instant.ofEpochMilli(time.getTime()).atZone(zone).toLocalDate();
+    }
+
+    private static LocalDate parseDay(String name) {
+        try {
+            return LocalDate.parse(name);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void writeSegment(Path segment, List<Ticket> tickets) throws IOException {
+        int count = tickets.size();
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> plates = new ArrayList<>();
+        for (Ticket ticket : tickets) {
+            if (!dictionary.containsKey(ticket.getVehicleRegNumber())) {
+                dictionary.put(ticket.getVehicleRegNumber(), plates.size());
+                plates.add(ticket.getVehicleRegNumber());
+            }
+        }
+        try (FileOutputStream file = new FileOutputStream(segment.toFile())) {
+            GZIPOutputStream gzip = new GZIPOutputStream(file, 64 * 1024);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            for (Ticket ticket : tickets) {
+                out.writeInt(ticket.getId());
+            }
+            for (Ticket ticket : tickets) {
+                out.writeInt(ticket.getParkingSpot().getId());
+            }
+            for (Ticket ticket : tickets) {
+                out.writeByte(ticket.getParkingSpot().getParkingType().ordinal());
+            }
+            out.writeInt(plates.size());
+            for (String plate : plates) {
+                out.writeUTF(plate);
+            }
+            for (Ticket ticket : tickets) {
+                out.writeInt(dictionary.get(ticket.getVehicleRegNumber()));
+            }
+            for (Ticket ticket : tickets) {
+                out.writeDouble(ticket.getPrice());
+            }
+            long previous = 0;
+            for (Ticket ticket : tickets) {
+                long inTime = ticket.getInTime().getTime();
+                out.writeLong(inTime - previous);
+                previous = inTime;
+            }
+            for (Ticket ticket : tickets) {
+                out.writeLong(ticket.getOutTime().getTime() - ticket.getInTime().getTime());
+            }
+            out.flush();
+            gzip.finish();
+            file.getFD().sync();
+        }
+    }
+
+    private static Segment readSegment(Path segment, LocalDate day) throws IOException {
+        try (InputStream file = Files.newInputStream(segment)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(file, 64 * 1024)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(segment + " is not a ticket archive segment");
+            }
+            int count = in.readInt();
+            int[] ids = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readInt();
+            }
+            int[] parkingNumbers = new int[count];
+            for (int i = 0; i < count; i++) {
+                parkingNumbers[i] = in.readInt();
+            }
+            ParkingType[] parkingTypes = new ParkingType[count];
+            for (int i = 0; i < count; i++) {
+                parkingTypes[i] = ParkingType.values()[in.readByte()];
+            }
+            String[] dictionary = new String[in.readInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = in.readUTF();
+            }
+            String[] vehicleRegNumbers = new String[count];
+            for (int i = 0; i < count; i++) {
+                vehicleRegNumbers[i] = dictionary[in.readInt()];
+            }
+            double[] prices = new double[count];
+            for (int i = 0; i < count; i++) {
+                prices[i] = in.readDouble();
+            }
+            long[] inTimes = new long[count];
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += in.readLong();
+                inTimes[i] = previous;
+            }
+            long[] outTimes = new long[count];
+            for (int i = 0; i < count; i++) {
+                outTimes[i] = inTimes[i] + in.readLong();
+            }
+            return new Segment(day, ids, parkingNumbers, parkingTypes, vehicleRegNumbers, prices, inTimes, outTimes);
+        }
+    }
+
+    /**
+     * The archived tickets of one segment file, column by column.
+     */
+    public static final class Segment {
+        private final LocalDate day;
+        private final int[] ids;
+        private final int[] parkingNumbers;
+        private final ParkingType[] parkingTypes;
+        private final String[] vehicleRegNumbers;
+        private final double[] prices;
+        private final long[] inTimes;
+        private final long[] outTimes;
+
+        private Segment(LocalDate day, int[] ids, int[] parkingNumbers, ParkingType[] parkingTypes,
+                        String[] vehicleRegNumbers, double[] prices, long[] inTimes, long[] outTimes) {
+            this.day = day;
+            this.ids = ids;
+            this.parkingNumbers = parkingNumbers;
+            this.parkingTypes = parkingTypes;
+            this.vehicleRegNumbers = vehicleRegNumbers;
+            this.prices = prices;
+            this.inTimes = inTimes;
+            this.outTimes = outTimes;
+        }
+
+        /**
+         * @return the day of the out times of the segment's tickets.
+         */
+        public LocalDate getDay() {
+            return day;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public int[] getIds() {
+            return ids;
+        }
+
+        public int[] getParkingNumbers() {
+            return parkingNumbers;
+        }
+
+        public ParkingType[] getParkingTypes() {
+            return parkingTypes;
+        }
+
+        public String[] getVehicleRegNumbers() {
+            return vehicleRegNumbers;
+        }
+
+        public double[] getPrices() {
+            return prices;
+        }
+
+        /**
+         * @return the in times, in milliseconds since the epoch.
+         */
+        public long[] getInTimes() {
+            return inTimes;
+        }
+
+        /**
+         * @return the out times, in milliseconds since the epoch.
+         */
+        public long[] getOutTimes() {
+            return outTimes;
+        }
+
+        /**
+         * Rebuilds one archived ticket.
+         *
+         * @param i row of the ticket in the segment.
+         * @return the ticket.
+         */
+        public Ticket getTicket(int i) {
+            Ticket ticket = new Ticket();
+            ticket.setId(ids[i]);
+            ticket.setParkingSpot(new ParkingSpot(parkingNumbers[i], parkingTypes[i], false));
+            ticket.setVehicleRegNumber(vehicleRegNumbers[i]);
+            ticket.setPrice(prices[i]);
+            ticket.setInTime(new Date(inTimes[i]));
+            ticket.setOutTime(new Date(outTimes[i]));
+            return ticket;
+        }
+    }
+}
@@ -1,60 +1,519 @@
 package com.parkit.parkingsystem.dao;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.CompactTicket;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.SpotRef;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketBatch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 /**
  * Data Access Object (DAO) class for managing ticket data in the database.
  * Provides methods to save, retrieve, and update ticket information.
+ * Open tickets are kept in an {@link OpenTicketCache} filled by saveTicket and warmed at startup,
+ * so the exit path finds the vehicle's ticket without querying the database. The cache size is
+ * set with -Dparkit.openTicketCache.size, 0 disables it. The cache only sees this instance's writes, so it must be
+ * disabled when several instances share the database; an update that finds the ticket already closed evicts it.
+ * Ticket counts per vehicle are kept in a {@link VisitCounter} loaded once and incremented by saveTicket,
+ * so the recurrent-customer check needs no COUNT(*) query. -Dparkit.visitCounter.expectedVehicles sizes it,
+ * 0 disables it. It only counts this instance's tickets, so it must be disabled too when several instances
+ * share the database.
+ * saveTicket returns the ticket's ID. With -Dparkit.ticketId.blockSize=n, IDs come from a {@link TicketIdAllocator}
+ * reserving n IDs per round trip instead of AUTO_INCREMENT, so they are known before the insert.
  */
-public class TicketDAO {
+public class TicketDAO implements TicketRepository {
 
     private static final Logger logger = LogManager.getLogger("TicketDAO");
 
-    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    public DataBaseConfig dataBaseConfig;
+
+    private final OpenTicketCache openTicketCache;
+    private final VisitCounter visitCounter;
+    private volatile boolean visitCounterLoaded;
+    private final TicketIdAllocator idAllocator;
+
+    public TicketDAO() {
+        this(new DataBaseConfig());
+    }
+
+    public TicketDAO(DataBaseConfig dataBaseConfig) {
+        this(dataBaseConfig, Integer.getInteger("parkit.openTicketCache.size", 10_000),
+                Integer.getInteger("parkit.visitCounter.expectedVehicles", 1_000_000),
+                Integer.getInteger("parkit.ticketId.blockSize", 0));
+    }
+
+    public TicketDAO(DataBaseConfig dataBaseConfig, int openTicketCacheSize, int expectedVehicles) {
+        this(dataBaseConfig, openTicketCacheSize, expectedVehicles, 0);
+    }
+
+    /**
+     * @param dataBaseConfig database configuration.
+     * @param openTicketCacheSize maximum number of cached open tickets, 0 to disable the cache.
+     * @param expectedVehicles distinct vehicles the visit counter is sized for, 0 to disable it.
+     * @param ticketIdBlockSize IDs reserved per round trip by the hi-lo allocator, 0 to let MySQL
+     *                          generate them with AUTO_INCREMENT.
+     */
+    public TicketDAO(DataBaseConfig dataBaseConfig, int openTicketCacheSize, int expectedVehicles, int ticketIdBlockSize) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.openTicketCache = openTicketCacheSize > 0 ? new OpenTicketCache(openTicketCacheSize) : null;
+        this.visitCounter = expectedVehicles > 0 ? new VisitCounter(expectedVehicles) : null;
+        this.idAllocator = ticketIdBlockSize > 0 ? new TicketIdAllocator(dataBaseConfig, ticketIdBlockSize) : null;
+    }
 /**
-     * Saves a ticket to the database.
+     * Saves a ticket to the database and sets its ID on the ticket: the next ID of the hi-lo
+     * allocator when there is one, the AUTO_INCREMENT value generated by MySQL otherwise.
      *
      * @param ticket The Ticket object to be saved.
-     * @return true if the ticket was saved successfully, false otherwise.
+     * @return the ID of the saved ticket, or 0 if it was not saved.
      */
-    public boolean saveTicket(Ticket ticket){
+    public int saveTicket(Ticket ticket){
         Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
-            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-            //ps.setInt(1,ticket.getId());
-            ps.setInt(1,ticket.getParkingSpot().getId());
-            ps.setString(2, ticket.getVehicleRegNumber());
-            ps.setDouble(3, ticket.getPrice());
-            ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
-            ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
-            return ps.execute();
+            int updateRowCount;
+            if (idAllocator != null) {
+                ticket.setId(idAllocator.nextId());
+                ps = con.prepareStatement(DBConstants.SAVE_TICKET_WITH_ID);
+                ps.setInt(6, ticket.getId());
+                setTicketParameters(ps, ticket);
+                updateRowCount = ps.executeUpdate();
+            } else {
+                ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+                setTicketParameters(ps, ticket);
+                updateRowCount = ps.executeUpdate();
+                rs = ps.getGeneratedKeys();
+                if (rs.next()) {
+                    ticket.setId(rs.getInt(1));
+                }
+            }
+            if (updateRowCount != 1) {
+                return 0;
+            }
+            onTicketSaved(ticket);
+            return ticket.getId();
         }catch (Exception ex){
             logger.error("Error saving ticket",ex);
             throw new RuntimeException("Error saving ticket",ex);
         }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+
+        }
+    }
+
+    /**
+     * Saves several tickets with one JDBC batch and sets their IDs. With the hi-lo allocator the
+     * IDs are assigned before the batch is sent; otherwise they are read from the generated keys.
+     *
+     * @param tickets the tickets to save.
+     * @return the number of tickets saved.
+     */
+    public int saveTickets(List<Ticket> tickets) {
+        if (tickets.isEmpty()) {
+            return 0;
+        }
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            if (idAllocator != null) {
+                ps = con.prepareStatement(DBConstants.SAVE_TICKET_WITH_ID);
+            } else {
+                ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+            }
+            for (Ticket ticket : tickets) {
+                if (idAllocator != null) {
+                    ticket.setId(idAllocator.nextId());
+                    ps.setInt(6, ticket.getId());
+                }
+                setTicketParameters(ps, ticket);
+                ps.addBatch();
+            }
+            int[] updateRowCounts = ps.executeBatch();
+            if (idAllocator == null) {
+                rs = ps.getGeneratedKeys();
+                for (Ticket ticket : tickets) {
+                    if (rs.next()) {
+                        ticket.setId(rs.getInt(1));
+                    }
+                }
+            }
+            int count = 0;
+            for (int i = 0; i < tickets.size(); i++) {
+                if (updateRowCounts[i] == 1 || updateRowCounts[i] == Statement.SUCCESS_NO_INFO) {
+                    onTicketSaved(tickets.get(i));
+                    count++;
+                }
+            }
+            return count;
+        } catch (Exception ex) {
+            logger.error("Error saving tickets", ex);
+            throw new RuntimeException("Error saving tickets", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Applies ticket writes taken from a {@link TicketJournal} with one JDBC batch per kind of write,
+     * on the caller's connection so that the caller's unit of work makes them atomic.
+     * Saves of tickets already in the table are skipped, so a journal can be replayed safely; a save whose
+     * ID is taken by another ticket fails the whole call, so that the writes stay in the journal.
+     *
+     * @param saves tickets to insert, with their IDs set.
+     * @param updates tickets whose price and out time changed.
+     * @param cancels tickets to delete.
+     */
+    void applyJournal(List<Ticket> saves, List<Ticket> updates, List<Ticket> cancels) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            if (!saves.isEmpty()) {
+                ps = con.prepareStatement(DBConstants.SAVE_TICKET_IF_ABSENT);
+                for (Ticket ticket : saves) {
+                    ps.setInt(6, ticket.getId());
+                    setTicketParameters(ps, ticket);
+                    ps.addBatch();
+                }
+                int[] updateRowCounts = ps.executeBatch();
+                List<Ticket> skipped = new ArrayList<>();
+                for (int i = 0; i < saves.size(); i++) {
+                    if (updateRowCounts[i] == 1 || updateRowCounts[i] == Statement.SUCCESS_NO_INFO) {
+                        onTicketSaved(saves.get(i));
+                    }
+                    if (updateRowCounts[i] != 1) {
+                        skipped.add(saves.get(i));
+                    }
+                }
+                dataBaseConfig.closePreparedStatement(ps);
+                ps = null;
+                checkAlreadySaved(con, skipped);
+            }
+            if (!updates.isEmpty()) {
+                // Not guarded by OUT_TIME: the update journaled when an exit rolls back reopens the ticket
+                ps = con.prepareStatement(DBConstants.REPLAY_TICKET_UPDATE);
+                for (Ticket ticket : updates) {
+                    ps.setDouble(1, ticket.getPrice());
+                    ps.setTimestamp(2, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
+                    ps.setInt(3,ticket.getId());
+                    ps.addBatch();
+                    if (openTicketCache != null) {
+                        UnitOfWork.afterCommit(() -> openTicketCache.update(ticket));
+                    }
+                }
+                ps.executeBatch();
+                dataBaseConfig.closePreparedStatement(ps);
+                ps = null;
+            }
+            if (!cancels.isEmpty()) {
+                ps = con.prepareStatement(DBConstants.DELETE_TICKET);
+                for (Ticket ticket : cancels) {
+                    ps.setInt(1, ticket.getId());
+                    ps.addBatch();
+                    String vehicleRegNumber = ticket.getVehicleRegNumber();
+                    if (openTicketCache != null) {
+                        UnitOfWork.afterCommit(() -> openTicketCache.evict(vehicleRegNumber));
+                    }
+                    if (visitCounter != null) {
+                        UnitOfWork.afterCommit(() -> visitCounter.forgetVisit(vehicleRegNumber));
+                    }
+                }
+                ps.executeBatch();
+            }
+        } catch (Exception ex) {
+            logger.error("Error applying ticket journal", ex);
+            throw new RuntimeException("Error applying ticket journal", ex);
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Streams the tickets closed in a period, with the visit number each had when it was priced,
+     * filling the batch and handing it to the consumer each time it is full, then once more with the rest.
+     * Rows are read with MySQL's streaming fetch on a connection of its own, so the consumer may write
+     * through the unit of work meanwhile.
+     *
+     * @param from start of the period, inclusive, on the out time.
+     * @param to end of the period, exclusive.
+     * @param batch batch reused for every call of the consumer.
+     * @param consumer receives the batch; its content is replaced after the call returns.
+     * @return the number of tickets read.
+     */
+    public long scanTicketsToReprice(Date from, Date to, TicketBatch batch, Consumer<TicketBatch> consumer) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        long count = 0;
+        try {
+            con = dataBaseConfig.getPool().borrow();
+            ps = con.prepareStatement(DBConstants.GET_TICKETS_TO_REPRICE, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            // The visit numbers are ranked among the earlier tickets of the vehicles closing a ticket in the period only
+            ps.setTimestamp(1, new Timestamp(to.getTime()));
+            ps.setTimestamp(2, new Timestamp(from.getTime()));
+            ps.setTimestamp(3, new Timestamp(to.getTime()));
+            ps.setTimestamp(4, new Timestamp(from.getTime()));
+            ps.setTimestamp(5, new Timestamp(to.getTime()));
+            rs = ps.executeQuery();
+            batch.clear();
+            while (rs.next()) {
+                count++;
+                if (batch.add(rs.getInt(1), ParkingType.valueOf(rs.getString(2)), rs.getTimestamp(3).getTime(),
+                        rs.getTimestamp(4).getTime(), rs.getDouble(5), rs.getInt(6))) {
+                    consumer.accept(batch);
+                    batch.clear();
+                }
+            }
+            if (batch.size() > 0) {
+                consumer.accept(batch);
+                batch.clear();
+            }
+            return count;
+        } catch (SQLException | ClassNotFoundException ex) {
+            logger.error("Error reading tickets to reprice after " + count + " rows", ex);
+            throw new RuntimeException("Error reading tickets to reprice", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Writes new prices in JDBC batches. A ticket whose price changed since it was read is left alone.
+     *
+     * @param batch the tickets, with the prices they were read with.
+     * @param indexes positions in the batch of the tickets to update.
+     * @param fareCents new price of each ticket of the batch, in cents.
+     * @param count number of indexes to use.
+     * @param jdbcBatchSize maximum number of updates sent at once.
+     * @return the number of tickets updated.
+     */
+    public int updatePrices(TicketBatch batch, int[] indexes, long[] fareCents, int count, int jdbcBatchSize) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        int updated = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.REPRICE_TICKET);
+            for (int i = 0; i < count; i++) {
+                int index = indexes[i];
+                ps.setDouble(1, fareCents[index] / 100.0);
+                ps.setInt(2, batch.getId(index));
+                ps.setDouble(3, batch.getPrice(index));
+                ps.addBatch();
+                if ((i + 1) % jdbcBatchSize == 0 || i == count - 1) {
+                    for (int rows : ps.executeBatch()) {
+                        updated += rows == Statement.SUCCESS_NO_INFO ? 1 : rows;
+                    }
+                }
+            }
+            return updated;
+        } catch (Exception ex) {
+            logger.error("Error updating ticket prices", ex);
+            throw new RuntimeException("Error updating ticket prices", ex);
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Locks the oldest closed tickets whose out time is before the cutoff, to be archived and deleted
+     * in the same unit of work.
+     *
+     * @param closedBefore tickets closed at or after this time are kept.
+     * @param limit maximum number of tickets returned.
+     * @return the tickets, oldest out time first.
+     */
+    public List<Ticket> getTicketsToArchive(Date closedBefore, int limit) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_TICKETS_TO_ARCHIVE);
+            ps.setTimestamp(1, new Timestamp(closedBefore.getTime()));
+            ps.setInt(2, limit);
+            rs = ps.executeQuery();
+            List<Ticket> tickets = new ArrayList<>();
+            while (rs.next()) {
+                tickets.add(mapTicket(rs, rs.getString(7)));
+            }
+            return tickets;
+        } catch (Exception ex) {
+            logger.error("Error fetching tickets to archive", ex);
+            throw new RuntimeException("Error fetching tickets to archive", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Deletes archived tickets and adds them to the archived visit counts, so that getNbTicket
+     * still counts them.
+     *
+     * @param tickets tickets returned by getTicketsToArchive.
+     */
+    public void deleteArchivedTickets(List<Ticket> tickets) {
+        Map<String, Integer> visits = new HashMap<>();
+        for (Ticket ticket : tickets) {
+            visits.merge(ticket.getVehicleRegNumber(), 1, Integer::sum);
+        }
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.DELETE_TICKET);
+            for (Ticket ticket : tickets) {
+                ps.setInt(1, ticket.getId());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = con.prepareStatement(DBConstants.ADD_ARCHIVED_VISITS);
+            for (Map.Entry<String, Integer> vehicle : visits.entrySet()) {
+                ps.setString(1, vehicle.getKey());
+                ps.setInt(2, vehicle.getValue());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (Exception ex) {
+            logger.error("Error deleting archived tickets", ex);
+            throw new RuntimeException("Error deleting archived tickets", ex);
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Tells whether a ticket is still in the ticket table.
+     *
+     * @param id ticket ID.
+     * @return true if the ticket exists.
+     */
+    public boolean ticketExists(int id) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.TICKET_EXISTS);
+            ps.setInt(1, id);
+            rs = ps.executeQuery();
+            return rs.next() && rs.getInt(1) > 0;
+        } catch (Exception ex) {
+            logger.error("Error checking ticket " + id, ex);
+            throw new RuntimeException("Error checking ticket " + id, ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
 
+    /**
+     * Checks that the journaled saves the insert skipped, or did not report on, are in the table: a row with
+     * the same ID but another spot, vehicle or in time belongs to another ticket, and the journaled ticket
+     * would be lost.
+     *
+     * @throws IllegalStateException if a ticket's ID is taken by another ticket.
+     */
+    private void checkAlreadySaved(Connection con, List<Ticket> tickets) throws SQLException {
+        if (tickets.isEmpty()) {
+            return;
+        }
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(DBConstants.GET_TICKET_BY_ID);
+            for (Ticket ticket : tickets) {
+                ps.setInt(1, ticket.getId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new IllegalStateException("Journaled ticket " + ticket.getId() + " of vehicle "
+                                + ticket.getVehicleRegNumber() + " was not saved");
+                    }
+                    // DATETIME keeps whole seconds
+                    long inTimeDifference = Math.abs(rs.getTimestamp(3).getTime() - ticket.getInTime().getTime());
+                    if (rs.getInt(1) != ticket.getParkingSpot().getId()
+                            || !ticket.getVehicleRegNumber().equals(rs.getString(2)) || inTimeDifference >= 1000) {
+                        throw new IllegalStateException("Ticket ID " + ticket.getId() + " of vehicle "
+                                + ticket.getVehicleRegNumber() + " is already used by a ticket of vehicle "
+                                + rs.getString(2) + " on spot " + rs.getInt(1));
+                    }
+                }
+            }
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    /**
+     * Sets PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME and OUT_TIME, the first five
+     * parameters of SAVE_TICKET and SAVE_TICKET_WITH_ID.
+     */
+    private static void setTicketParameters(PreparedStatement ps, Ticket ticket) throws SQLException {
+        ps.setInt(1,ticket.getParkingSpot().getId());
+        ps.setString(2, ticket.getVehicleRegNumber());
+        ps.setDouble(3, ticket.getPrice());
+        ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+        ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
+    }
+
+    /**
+     * Publishes a saved ticket to the open ticket cache and the visit counter once it is committed.
+     */
+    private void onTicketSaved(Ticket ticket) {
+        if (openTicketCache != null) {
+            UnitOfWork.afterCommit(() -> openTicketCache.update(ticket));
+        }
+        if (visitCounter != null) {
+            UnitOfWork.afterCommit(() -> visitCounter.recordVisit(ticket.getVehicleRegNumber()));
         }
     }
 /**
-     * Retrieves a ticket from the database based on the vehicle registration number.
+     * Retrieves the most recent ticket from the database based on the vehicle registration number.
      *
      * @param vehicleRegNumber The vehicle registration number.
      * @return The Ticket object if found, null otherwise.
      */
     public Ticket getTicket(String vehicleRegNumber) {
+        if (openTicketCache != null) {
+            Ticket cached = openTicketCache.get(vehicleRegNumber);
+            if (cached != null) {
+                return cached;
+            }
+        }
         Connection con = null;
         Ticket ticket = null;
         try {
@@ -64,14 +523,10 @@ public class TicketDAO {
             ps.setString(1,vehicleRegNumber);
             ResultSet rs = ps.executeQuery();
             if(rs.next()){
-                ticket = new Ticket();
-                ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setId(rs.getInt(2));
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(rs.getDouble(3));
-                ticket.setInTime(rs.getTimestamp(4));
-                ticket.setOutTime(rs.getTimestamp(5));
+                ticket = mapTicket(rs, vehicleRegNumber);
+                if (openTicketCache != null && ticket.getOutTime() == null) {
+                    openTicketCache.update(ticket);
+                }
             }
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
@@ -85,25 +540,37 @@ public class TicketDAO {
         return ticket;
     }
 /**
-     * Updates an existing ticket in the database.
+     * Closes an open ticket in the database with its price and out time.
+     * A ticket that is already closed, e.g. by another instance, is left alone and evicted from the
+     * open ticket cache, so that the next getTicket reads the vehicle's latest ticket from the database.
      *
      * @param ticket The Ticket object with updated information.
-     * @return true if the ticket was updated successfully, false otherwise.
+     * @return true if the ticket was updated, false if it was already closed.
      */
     public boolean updateTicket(Ticket ticket) {
         Connection con = null;
+        PreparedStatement ps = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+            ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
             ps.setDouble(1, ticket.getPrice());
             ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
             ps.setInt(3,ticket.getId());
-            ps.execute();
+            if (ps.executeUpdate() != 1) {
+                if (openTicketCache != null) {
+                    openTicketCache.evict(ticket.getVehicleRegNumber());
+                }
+                return false;
+            }
+            if (openTicketCache != null) {
+                UnitOfWork.afterCommit(() -> openTicketCache.update(ticket));
+            }
             return true;
         }catch (Exception ex){
             logger.error("Error saving ticket info",ex);
             throw new RuntimeException("Error saving ticket info",ex);
         }finally {
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
         }
     }
@@ -114,32 +581,221 @@ public class TicketDAO {
      * @return The count of tickets for the given vehicle registration number.
      */
     public int getNbTicket(String vehicleRegNumber ){
+        if (visitCounter != null) {
+            if (!visitCounterLoaded) {
+                loadVisitCounter();
+            }
+            return visitCounter.getVisits(vehicleRegNumber);
+        }
         Connection con = null;
-
+        PreparedStatement ps = null;
+        ResultSet rs = null;
         int count = 0;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement("SELECT COUNT(*) FROM ticket WHERE VEHICLE_REG_NUMBER = ?");
+            ps = con.prepareStatement(DBConstants.GET_NB_TICKET);
             ps.setString(1,vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
+            ps.setString(2,vehicleRegNumber);
+            rs = ps.executeQuery();
 
             if(rs.next()){
                 count=rs.getInt(1);
             }
-
-
-
         }
         catch (Exception ex){
             logger.error("Error fetching query",ex);
             throw new RuntimeException("Error fetching query",ex);
         }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
-
         }
         return count;
 
 
 
     }
+
+    /**
+     * Fills the open ticket cache with the tickets that have no out time yet. Called at startup
+     * so that vehicles already parked exit without a query.
+     *
+     * @return the number of open tickets loaded.
+     */
+    public int warmOpenTicketCache() {
+        if (openTicketCache == null) {
+            return 0;
+        }
+        List<CompactTicket> openTickets = getOpenTickets();
+        for (CompactTicket ticket : openTickets) {
+            openTicketCache.put(ticket);
+        }
+        logger.info("Loaded " + openTickets.size() + " open tickets in cache");
+        return openTickets.size();
+    }
+
+    /**
+     * Reads the tickets that have no out time yet, oldest first.
+     *
+     * @return the open tickets.
+     */
+    public List<CompactTicket> getOpenTickets() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+            rs = ps.executeQuery();
+            List<CompactTicket> openTickets = new ArrayList<>();
+            while (rs.next()) {
+                openTickets.add(mapCompactTicket(rs, rs.getString(7)));
+            }
+            return openTickets;
+        } catch (Exception ex) {
+            logger.error("Error loading open tickets", ex);
+            throw new RuntimeException("Error loading open tickets", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Loads the ticket count of every vehicle into the visit counter. Called at startup, or on the
+     * first getNbTicket call otherwise.
+     */
+    public synchronized void loadVisitCounter() {
+        if (visitCounter == null || visitCounterLoaded) {
+            return;
+        }
+        for (Map.Entry<String, Integer> visits : getVisitCounts().entrySet()) {
+            visitCounter.setVisits(visits.getKey(), visits.getValue());
+        }
+        visitCounterLoaded = true;
+        logger.info("Loaded visit counts of " + visitCounter.getVehicleCount() + " vehicles");
+    }
+
+    /**
+     * Reads the ticket count of every vehicle, archived tickets included.
+     *
+     * @return the number of tickets per vehicle registration number.
+     */
+    public Map<String, Integer> getVisitCounts() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_NB_TICKET_PER_VEHICLE);
+            rs = ps.executeQuery();
+            Map<String, Integer> visitCounts = new HashMap<>();
+            while (rs.next()) {
+                visitCounts.put(rs.getString(1), rs.getInt(2));
+            }
+            return visitCounts;
+        } catch (Exception ex) {
+            logger.error("Error loading visit counts", ex);
+            throw new RuntimeException("Error loading visit counts", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Fills the open ticket cache and the visit counter from state kept outside the database,
+     * e.g. the gate event log, instead of querying the ticket table.
+     *
+     * @param openTickets the open tickets.
+     * @param visitCounts the number of tickets per vehicle.
+     */
+    public synchronized void restoreCaches(Collection<CompactTicket> openTickets, Map<String, Integer> visitCounts) {
+        if (openTicketCache != null) {
+            for (CompactTicket ticket : openTickets) {
+                openTicketCache.put(ticket);
+            }
+        }
+        if (visitCounter != null) {
+            for (Map.Entry<String, Integer> visits : visitCounts.entrySet()) {
+                visitCounter.setVisits(visits.getKey(), visits.getValue());
+            }
+            visitCounterLoaded = true;
+        }
+    }
+
+    /**
+     * Reads the highest ticket ID and the number of open tickets, which tell whether state kept
+     * outside the database is still up to date.
+     *
+     * @return the watermark of the ticket table.
+     */
+    public GateEventLog.Watermark getWatermark() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_TICKET_WATERMARK);
+            rs = ps.executeQuery();
+            rs.next();
+            return new GateEventLog.Watermark(rs.getInt(1), rs.getInt(2));
+        } catch (Exception ex) {
+            logger.error("Error reading the ticket watermark", ex);
+            throw new RuntimeException("Error reading the ticket watermark", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * @return the hi-lo ticket ID allocator, or null if MySQL generates the IDs.
+     */
+    public TicketIdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    /**
+     * @return the visit counter, or null if it is disabled.
+     */
+    public VisitCounter getVisitCounter() {
+        return visitCounter;
+    }
+
+    /**
+     * @return the open ticket cache, with its hit ratio, or null if it is disabled.
+     */
+    public OpenTicketCache getOpenTicketCache() {
+        return openTicketCache;
+    }
+
+    /**
+     * Maps a row of GET_TICKET or GET_OPEN_TICKETS: PARKING_NUMBER, ID, PRICE, IN_TIME, OUT_TIME, TYPE.
+     * Package-private for the mapping benchmark.
+     */
+    static Ticket mapTicket(ResultSet rs, String vehicleRegNumber) throws SQLException {
+        Ticket ticket = new Ticket();
+        ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setId(rs.getInt(2));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(rs.getDouble(3));
+        ticket.setInTime(rs.getTimestamp(4));
+        ticket.setOutTime(rs.getTimestamp(5));
+        return ticket;
+    }
+
+    /**
+     * Maps a row of GET_OPEN_TICKETS straight to its compact form, without a Ticket or ParkingSpot.
+     */
+    static CompactTicket mapCompactTicket(ResultSet rs, String vehicleRegNumber) throws SQLException {
+        Timestamp outTime = rs.getTimestamp(5);
+        return new CompactTicket(rs.getInt(2), SpotRef.of(rs.getInt(1), ParkingType.valueOf(rs.getString(6))),
+                vehicleRegNumber, CompactTicket.toCents(rs.getDouble(3)), rs.getTimestamp(4).getTime(),
+                outTime == null ? CompactTicket.OPEN : outTime.getTime());
+    }
 }
@@ -0,0 +1,202 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ExportFormat;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+/**
+ * Streams the tickets closed in a period to a CSV or binary output, for month-end dumps.
+ * The query is run with MySQL's streaming fetch (fetch size Integer.MIN_VALUE), so rows are read
+ * from the socket one at a time and written out straight away: memory use does not depend on the
+ * number of tickets. The connection is busy until the export ends, so it is not taken from a unit of work.
+ * Archived tickets are not in the table any more; read them with {@link TicketArchive#scan}.
+ */
+public class TicketExporter {
+
+    private static final Logger logger = LogManager.getLogger("TicketExporter");
+
+    private static final int BINARY_MAGIC = 0x504B5445;
+    private static final int BINARY_VERSION = 1;
+    private static final int PROGRESS_INTERVAL = 1_000_000;
+    private static final DateTimeFormatter CSV_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final DataBaseConfig dataBaseConfig;
+
+    public TicketExporter(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    /**
+     * Writes every ticket whose out time is in [from, to), in out time order. The output is flushed
+     * but not closed.
+     *
+     * @param from start of the period, inclusive.
+     * @param to end of the period, exclusive.
+     * @param format output format.
+     * @param out destination of the export.
+     * @return the number of rows exported and the throughput.
+     */
+    public Result export(Date from, Date to, ExportFormat format, OutputStream out) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        long start = System.nanoTime();
+        long rows = 0;
+        try {
+            con = dataBaseConfig.getPool().borrow();
+            ps = con.prepareStatement(DBConstants.EXPORT_TICKETS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setTimestamp(1, new Timestamp(from.getTime()));
+            ps.setTimestamp(2, new Timestamp(to.getTime()));
+            rs = ps.executeQuery();
+            RowWriter writer = format == ExportFormat.CSV ? new CsvRowWriter(out) : new BinaryRowWriter(out);
+            while (rs.next()) {
+                writer.write(rs);
+                rows++;
+                if (rows % PROGRESS_INTERVAL == 0) {
+                    logger.info("Exported " + rows + " tickets, " + new Result(rows, System.nanoTime() - start).getRowsPerSecond() + " rows/s");
+                }
+            }
+            writer.finish(rows);
+            Result result = new Result(rows, System.nanoTime() - start);
+            logger.info("Exported " + rows + " tickets closed between " + from + " and " + to
+                    + " in " + result.getElapsedMillis() + " ms, " + result.getRowsPerSecond() + " rows/s");
+            return result;
+        } catch (Exception ex) {
+            logger.error("Error exporting tickets after " + rows + " rows", ex);
+            throw new RuntimeException("Error exporting tickets", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Outcome of an export.
+     */
+    public static final class Result {
+        private final long rows;
+        private final long elapsedNanos;
+
+        private Result(long rows, long elapsedNanos) {
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        public long getRowsPerSecond() {
+            return elapsedNanos == 0 ? rows : rows * 1_000_000_000L / elapsedNanos;
+        }
+    }
+
+    /**
+     * Writes rows of EXPORT_TICKETS: ID, PARKING_NUMBER, TYPE, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME.
+     */
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException, IOException;
+
+        void finish(long rows) throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer out;
+
+        private CsvRowWriter(OutputStream out) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            this.out.write("ID,PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME\n");
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            out.write(Integer.toString(rs.getInt(1)));
+            out.write(',');
+            out.write(Integer.toString(rs.getInt(2)));
+            out.write(',');
+            out.write(rs.getString(3));
+            out.write(',');
+            writeText(rs.getString(4));
+            out.write(',');
+            out.write(Double.toString(rs.getDouble(5)));
+            out.write(',');
+            out.write(CSV_TIME.format(rs.getTimestamp(6).toLocalDateTime()));
+            out.write(',');
+            out.write(CSV_TIME.format(rs.getTimestamp(7).toLocalDateTime()));
+            out.write('\n');
+        }
+
+        private void writeText(String value) throws IOException {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                out.write(value);
+            } else {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            }
+        }
+
+        @Override
+        public void finish(long rows) throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes a header, then per ticket: int ID, int parking number, byte ParkingType ordinal, UTF plate,
+     * double price, long in time and long out time in epoch millis. A row with ID -1 ends the stream,
+     * followed by the long row count.
+     */
+    private static final class BinaryRowWriter implements RowWriter {
+        private final DataOutputStream out;
+
+        private BinaryRowWriter(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+            this.out.writeInt(BINARY_MAGIC);
+            this.out.writeInt(BINARY_VERSION);
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            out.writeInt(rs.getInt(1));
+            out.writeInt(rs.getInt(2));
+            out.writeByte(ParkingType.valueOf(rs.getString(3)).ordinal());
+            out.writeUTF(rs.getString(4));
+            out.writeDouble(rs.getDouble(5));
+            out.writeLong(rs.getTimestamp(6).getTime());
+            out.writeLong(rs.getTimestamp(7).getTime());
+        }
+
+        @Override
+        public void finish(long rows) throws IOException {
+            out.writeInt(-1);
+            out.writeLong(rows);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hi-lo allocator of ticket IDs. Each instance reserves a block of consecutive IDs from the
+ * ticket_id_sequence table in one round trip and hands them out from memory, so a ticket knows
+ * its ID before it is inserted and tickets can be saved in batches.
+ * The reservation is a single atomic update, so instances sharing the database never get
+ * overlapping blocks. IDs left unused when an instance stops are skipped, not reused.
+ * A block always starts above the highest ticket ID, so the allocator can be turned on after
+ * tickets were saved with AUTO_INCREMENT. While it is on, every instance writing to the same
+ * database must allocate IDs this way: an AUTO_INCREMENT insert could take an ID of a block
+ * another instance reserved.
+ */
+public class TicketIdAllocator {
+
+    private static final Logger logger = LogManager.getLogger("TicketIdAllocator");
+
+    private final DataBaseConfig dataBaseConfig;
+    private final int blockSize;
+    private final LongAdder blocksReserved = new LongAdder();
+    private int nextId;
+    private int limit;
+
+    /**
+     * @param dataBaseConfig database holding the ticket_id_sequence table.
+     * @param blockSize number of IDs reserved per round trip.
+     */
+    public TicketIdAllocator(DataBaseConfig dataBaseConfig, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Invalid ticket ID block size " + blockSize);
+        }
+        this.dataBaseConfig = dataBaseConfig;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns an ID no other caller, in this instance or another one, will get.
+     *
+     * @return the next ticket ID.
+     */
+    public synchronized int nextId() {
+        if (nextId >= limit) {
+            reserveBlock();
+        }
+        return nextId++;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getBlocksReserved() {
+        return blocksReserved.sum();
+    }
+
+    /**
+     * Moves the sequence forward by one block, starting past the highest ticket ID if tickets were
+     * inserted without the allocator since the last reservation. The connection is taken from the pool directly,
+     * so the reservation commits at once even when called from inside a unit of work.
+     */
+    private void reserveBlock() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getPool().borrow();
+            ps = con.prepareStatement(DBConstants.RESERVE_TICKET_ID_BLOCK);
+            ps.setInt(1, blockSize);
+            if (ps.executeUpdate() != 1) {
+                throw new IllegalStateException("The ticket_id_sequence table must hold exactly one row");
+            }
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = con.prepareStatement(DBConstants.GET_LAST_INSERT_ID);
+            rs = ps.executeQuery();
+            rs.next();
+            limit = rs.getInt(1);
+            nextId = limit - blockSize;
+            blocksReserved.increment();
+            logger.info("Reserved ticket IDs " + nextId + " to " + (limit - 1));
+        } catch (Exception ex) {
+            logger.error("Error reserving ticket IDs", ex);
+            throw new RuntimeException("Error reserving ticket IDs", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+}
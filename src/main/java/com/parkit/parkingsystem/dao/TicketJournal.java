@@ -0,0 +1,327 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of ticket writes in a memory-mapped file.
+ * A record is written to the mapping, and optionally forced to disk, before append() returns,
+ * so it survives a crash of the application. The header keeps the offset up to which records
+ * were applied to the database; records after it are replayed on the next start.
+ * Each record is checksummed, so a record torn by a crash ends the log instead of being replayed.
+ * The records form a ring: a record that does not fit before the end of the mapping is written at
+ * its start, behind the applied records, with a wrap marker left in its place. The file never grows,
+ * and append() only waits when the records not applied yet fill the whole mapping.
+ */
+public class TicketJournal implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("TicketJournal");
+
+    /**
+     * Kinds of ticket write recorded in the journal.
+     */
+    public enum Operation {
+        SAVE, UPDATE, CANCEL
+    }
+
+    private static final int MAGIC = 0x504B544A;
+    private static final int HEADER_SIZE = 64;
+    private static final int APPLIED_OFFSET_POSITION = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int WRAP_MARKER = -1;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final boolean forceOnAppend;
+    private final long appendTimeoutMillis;
+    private int writePosition;
+    private int appliedPosition;
+    private int pendingRecords;
+
+    /**
+     * Opens the journal, creating it if needed, and finds the end of its valid records.
+     *
+     * @param path journal file.
+     * @param capacity size of the mapping in bytes.
+     * @param forceOnAppend whether append() forces the record to disk before returning.
+     * @param appendTimeoutMillis how long append() waits for space when the journal is full.
+     * @throws IOException if the file cannot be mapped or is not a ticket journal.
+     */
+    public TicketJournal(String path, int capacity, boolean forceOnAppend, long appendTimeoutMillis) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        boolean created = file.length() == 0;
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, file.length()));
+        this.forceOnAppend = forceOnAppend;
+        this.appendTimeoutMillis = appendTimeoutMillis;
+        if (created) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(APPLIED_OFFSET_POSITION, HEADER_SIZE);
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.force();
+        } else if (buffer.getInt(0) != MAGIC) {
+            file.close();
+            throw new IOException(path + " is not a ticket journal");
+        }
+        appliedPosition = buffer.getInt(APPLIED_OFFSET_POSITION);
+        writePosition = appliedPosition;
+        for (Entry entry : read(appliedPosition, -1, Integer.MAX_VALUE)) {
+            writePosition = entry.end;
+            pendingRecords++;
+        }
+        if (pendingRecords > 0) {
+            logger.info("Journal " + path + " has " + pendingRecords + " ticket writes to replay");
+        }
+    }
+
+    /**
+     * Appends a ticket write after the last one, wrapping to the start of the mapping when the end
+     * is reached, and waiting for the flusher to make room if the journal is full.
+     *
+     * @param operation kind of write.
+     * @param ticket the ticket as written.
+     * @return the journal entry, whose end offset is passed to markApplied() once it reached the database.
+     * @throws IOException if the journal stays full for longer than the append timeout.
+     */
+    public synchronized Entry append(Operation operation, Ticket ticket) throws IOException {
+        byte[] payload = encode(operation, System.currentTimeMillis(), ticket);
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        long deadline = System.currentTimeMillis() + appendTimeoutMillis;
+        int start;
+        while ((start = startOf(recordSize)) < 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new IOException("Ticket journal full, " + pendingRecords + " writes not applied yet");
+            }
+            try {
+                TimeUnit.MILLISECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for journal space", e);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer out = buffer.duplicate();
+        out.position(start + 4);
+        out.putInt((int) crc.getValue());
+        out.put(payload);
+        out.putInt(0);
+        buffer.putInt(start, payload.length);
+        if (start != writePosition) {
+            buffer.putInt(writePosition, WRAP_MARKER);
+        }
+        if (forceOnAppend) {
+            buffer.force();
+        }
+        writePosition = start + recordSize;
+        pendingRecords++;
+        return decode(start, writePosition, payload);
+    }
+
+    /**
+     * Returns the records not applied to the database yet, oldest first.
+     *
+     * @param maxRecords maximum number of records returned.
+     * @return the pending entries.
+     */
+    public List<Entry> readPending(int maxRecords) {
+        int from;
+        int to;
+        synchronized (this) {
+            from = appliedPosition;
+            to = writePosition;
+        }
+        return read(from, to, maxRecords);
+    }
+
+    /**
+     * Records that every entry up to the given offset reached the database. When nothing is left
+     * to apply, the journal rewinds to its start, so that the next records are written in one piece.
+     *
+     * @param end end offset of the last applied entry.
+     * @param count number of entries applied.
+     */
+    public synchronized void markApplied(int end, int count) {
+        pendingRecords -= count;
+        if (end == writePosition) {
+            writePosition = HEADER_SIZE;
+            buffer.putInt(HEADER_SIZE, 0);
+            end = HEADER_SIZE;
+        } else if (buffer.getInt(end) == WRAP_MARKER) {
+            end = HEADER_SIZE;
+        }
+        appliedPosition = end;
+        buffer.putInt(APPLIED_OFFSET_POSITION, end);
+        buffer.force();
+        notifyAll();
+    }
+
+    /**
+     * @return the number of records appended but not applied to the database.
+     */
+    public synchronized int getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+     * @return the number of bytes of records appended but not applied to the database.
+     */
+    public synchronized int getPendingBytes() {
+        if (writePosition >= appliedPosition) {
+            return writePosition - appliedPosition;
+        }
+        return buffer.capacity() - appliedPosition + writePosition - HEADER_SIZE;
+    }
+
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    /**
+     * Finds where a record of the given size goes: after the last record, or at the start of the mapping
+     * if it does not fit before the end. A gap of 4 bytes is always left before the oldest pending record,
+     * for the zero length that ends the log.
+     *
+     * @return the offset of the record, or -1 if the journal is full.
+     */
+    private int startOf(int recordSize) {
+        if (writePosition >= appliedPosition) {
+            if (writePosition + recordSize + 4 <= buffer.capacity()) {
+                return writePosition;
+            }
+            return HEADER_SIZE + recordSize + 4 <= appliedPosition ? HEADER_SIZE : -1;
+        }
+        return writePosition + recordSize + 4 <= appliedPosition ? writePosition : -1;
+    }
+
+    /**
+     * Reads the records from an offset, following the wrap markers, up to an offset or, if it is -1,
+     * up to the zero length or the torn record that ends the log.
+     */
+    private List<Entry> read(int from, int to, int maxRecords) {
+        List<Entry> entries = new ArrayList<>();
+        ByteBuffer in = buffer.duplicate();
+        int position = from;
+        boolean wrapped = false;
+        while (position != to && position + 4 <= buffer.capacity() && entries.size() < maxRecords) {
+            int length = in.getInt(position);
+            if (length == WRAP_MARKER && !wrapped) {
+                position = HEADER_SIZE;
+                wrapped = true;
+                continue;
+            }
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()
+                    || wrapped && position + RECORD_HEADER_SIZE + length > from) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            in.position(position + RECORD_HEADER_SIZE);
+            in.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != in.getInt(position + 4)) {
+                logger.warn("Torn journal record at offset " + position + ", ignoring the rest of the journal");
+                break;
+            }
+            int end = position + RECORD_HEADER_SIZE + length;
+            entries.add(decode(position, end, payload));
+            position = end;
+        }
+        return entries;
+    }
+
+    private static byte[] encode(Operation operation, long appendedAt, Ticket ticket) {
+        byte[] plate = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(1 + 8 + 4 + 4 + 1 + 8 + 8 + 8 + 2 + plate.length);
+        out.put((byte) operation.ordinal());
+        out.putLong(appendedAt);
+        out.putInt(ticket.getId());
+        out.putInt(ticket.getParkingSpot().getId());
+        out.put((byte) ticket.getParkingSpot().getParkingType().ordinal());
+        out.putDouble(ticket.getPrice());
+        out.putLong(ticket.getInTime().getTime());
+        out.putLong(ticket.getOutTime() == null ? -1 : ticket.getOutTime().getTime());
+        out.putShort((short) plate.length);
+        out.put(plate);
+        return out.array();
+    }
+
+    private static Entry decode(int start, int end, byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        Operation operation = Operation.values()[in.get()];
+        long appendedAt = in.getLong();
+        Ticket ticket = new Ticket();
+        ticket.setId(in.getInt());
+        int parkingNumber = in.getInt();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.values()[in.get()], false));
+        ticket.setPrice(in.getDouble());
+        ticket.setInTime(new Date(in.getLong()));
+        long outTime = in.getLong();
+        ticket.setOutTime(outTime < 0 ? null : new Date(outTime));
+        byte[] plate = new byte[in.getShort()];
+        in.get(plate);
+        ticket.setVehicleRegNumber(new String(plate, StandardCharsets.UTF_8));
+        return new Entry(operation, appendedAt, ticket, start, end);
+    }
+
+    /**
+     * One ticket write read from or appended to the journal.
+     */
+    public static final class Entry {
+        private final Operation operation;
+        private final long appendedAt;
+        private final Ticket ticket;
+        private final int start;
+        private final int end;
+
+        private Entry(Operation operation, long appendedAt, Ticket ticket, int start, int end) {
+            this.operation = operation;
+            this.appendedAt = appendedAt;
+            this.ticket = ticket;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public long getAppendedAt() {
+            return appendedAt;
+        }
+
+        public Ticket getTicket() {
+            return ticket;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+    }
+}
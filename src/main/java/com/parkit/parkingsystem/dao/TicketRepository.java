@@ -0,0 +1,43 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Storage operations on tickets used by the parking service.
+ * Implemented by {@link TicketDAO} for MySQL and {@link InMemoryTicketRepository}
+ * for simulations and performance runs.
+ */
+public interface TicketRepository {
+
+    /**
+     * Saves a new ticket and sets its ID on it.
+     *
+     * @param ticket The Ticket object to be saved.
+     * @return the ID of the saved ticket, or 0 if it was not saved.
+     */
+    int saveTicket(Ticket ticket);
+
+    /**
+     * Retrieves the most recent ticket of a vehicle.
+     *
+     * @param vehicleRegNumber The vehicle registration number.
+     * @return The Ticket object if found, null otherwise.
+     */
+    Ticket getTicket(String vehicleRegNumber);
+
+    /**
+     * Updates the price and out time of an existing ticket.
+     *
+     * @param ticket The Ticket object with updated information.
+     * @return true if the ticket was updated successfully, false otherwise.
+     */
+    boolean updateTicket(Ticket ticket);
+
+    /**
+     * Retrieves the number of tickets associated with a specific vehicle registration number.
+     *
+     * @param vehicleRegNumber The vehicle registration number.
+     * @return The count of tickets for the given vehicle registration number.
+     */
+    int getNbTicket(String vehicleRegNumber);
+}
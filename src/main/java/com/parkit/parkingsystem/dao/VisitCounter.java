@@ -0,0 +1,90 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.util.BloomFilter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of tickets per vehicle registration number, maintained incrementally as tickets are saved.
+ * A Bloom filter in front of the counts answers "never seen" for first-time visitors without
+ * touching the map, so the loyalty check costs O(1) whatever the size of the ticket history.
+ */
+public class VisitCounter {
+
+    private final BloomFilter seenVehicles;
+    private final Map<String, AtomicInteger> visits = new ConcurrentHashMap<>();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder neverSeen = new LongAdder();
+
+    /**
+     * @param expectedVehicles number of distinct vehicles the Bloom filter is sized for.
+     */
+    public VisitCounter(int expectedVehicles) {
+        this.seenVehicles = new BloomFilter(expectedVehicles, 0.01);
+    }
+
+    /**
+     * @param vehicleRegNumber The vehicle registration number.
+     * @return the number of tickets recorded for the vehicle.
+     */
+    public int getVisits(String vehicleRegNumber) {
+        lookups.increment();
+        if (!seenVehicles.mightContain(vehicleRegNumber)) {
+            neverSeen.increment();
+            return 0;
+        }
+        AtomicInteger count = visits.get(vehicleRegNumber);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Records one more ticket for a vehicle.
+     *
+     * @param vehicleRegNumber The vehicle registration number.
+     */
+    public void recordVisit(String vehicleRegNumber) {
+        visits.computeIfAbsent(vehicleRegNumber, k -> new AtomicInteger()).incrementAndGet();
+        seenVehicles.put(vehicleRegNumber);
+    }
+
+    /**
+     * Takes back a ticket recorded by recordVisit that was deleted afterwards.
+     *
+     * @param vehicleRegNumber The vehicle registration number.
+     */
+    public void forgetVisit(String vehicleRegNumber) {
+        AtomicInteger count = visits.get(vehicleRegNumber);
+        if (count != null) {
+            count.updateAndGet(n -> Math.max(0, n - 1));
+        }
+    }
+
+    /**
+     * Sets the ticket count of a vehicle, used when loading the counts from storage.
+     *
+     * @param vehicleRegNumber The vehicle registration number.
+     * @param count number of tickets of the vehicle.
+     */
+    public void setVisits(String vehicleRegNumber, int count) {
+        visits.computeIfAbsent(vehicleRegNumber, k -> new AtomicInteger()).set(count);
+        seenVehicles.put(vehicleRegNumber);
+    }
+
+    public int getVehicleCount() {
+        return visits.size();
+    }
+
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return how many lookups the Bloom filter answered alone.
+     */
+    public long getNeverSeenCount() {
+        return neverSeen.sum();
+    }
+}
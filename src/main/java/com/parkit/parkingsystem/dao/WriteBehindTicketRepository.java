@@ -0,0 +1,253 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ticket storage that acknowledges writes once they are in a local {@link TicketJournal} and applies
+ * them to MySQL in the background, so a slow database does not hold up the gates.
+ * A flusher thread reads the journal and applies its records through {@link TicketDAO} in JDBC batches,
+ * one transaction per batch. Until a write is applied, reads of that vehicle are answered from memory.
+ * After a crash, the records the flusher had not applied are replayed at startup.
+ * Ticket IDs are assigned by the DAO's {@link TicketIdAllocator}, so a ticket has its final ID before
+ * it reaches the database.
+ */
+public class WriteBehindTicketRepository implements TicketRepository, Closeable {
+
+    private static final Logger logger = LogManager.getLogger("WriteBehindTicketRepository");
+
+    private final TicketDAO ticketDAO;
+    private final TicketJournal journal;
+    private final UnitOfWork flushUnit;
+    private final int batchSize;
+    private final Map<String, TicketJournal.Entry> unflushedByVehicle = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> unflushedSaves = new ConcurrentHashMap<>();
+    private final LongAdder flushedRecords = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Registers the writes left in the journal by a previous run and starts the flusher.
+     *
+     * @param ticketDAO DAO applying the writes, with a ticket ID allocator.
+     * @param journal journal holding the writes not applied yet.
+     * @param batchSize maximum number of writes applied per transaction.
+     * @param flushIntervalMillis pause between two flushes when the journal is drained.
+     */
+    public WriteBehindTicketRepository(TicketDAO ticketDAO, TicketJournal journal, int batchSize, long flushIntervalMillis) {
+        if (ticketDAO.getIdAllocator() == null) {
+            throw new IllegalArgumentException("Write-behind needs ticket IDs from a TicketIdAllocator");
+        }
+        this.ticketDAO = ticketDAO;
+        this.journal = journal;
+        this.flushUnit = new UnitOfWork(ticketDAO.dataBaseConfig);
+        this.batchSize = batchSize;
+        for (TicketJournal.Entry entry : journal.readPending(Integer.MAX_VALUE)) {
+            track(entry);
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ticket-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, 0, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Assigns the ticket's ID and journals it. If the current unit of work rolls back, the ticket
+     * is cancelled with another journal record.
+     */
+    @Override
+    public int saveTicket(Ticket ticket) {
+        ticket.setId(ticketDAO.getIdAllocator().nextId());
+        Ticket saved = ticket.copy();
+        append(TicketJournal.Operation.SAVE, saved);
+        UnitOfWork.afterRollback(() -> append(TicketJournal.Operation.CANCEL, saved));
+        return ticket.getId();
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        TicketJournal.Entry unflushed = unflushedByVehicle.get(vehicleRegNumber);
+        if (unflushed != null) {
+            return unflushed.getTicket().copy();
+        }
+        return ticketDAO.getTicket(vehicleRegNumber);
+    }
+
+    /**
+     * Journals the new price and out time. If the current unit of work rolls back, the ticket's
+     * previous state is journaled again.
+     */
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        Ticket previous = getTicket(ticket.getVehicleRegNumber());
+        append(TicketJournal.Operation.UPDATE, ticket.copy());
+        if (previous != null && previous.getId() == ticket.getId()) {
+            UnitOfWork.afterRollback(() -> append(TicketJournal.Operation.UPDATE, previous));
+        }
+        return true;
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        AtomicInteger unflushed = unflushedSaves.get(vehicleRegNumber);
+        return ticketDAO.getNbTicket(vehicleRegNumber) + (unflushed == null ? 0 : unflushed.get());
+    }
+
+    /**
+     * Applies every journaled write to the database, batch by batch.
+     *
+     * @return the number of writes applied.
+     * @throws Exception if a batch cannot be applied; it stays in the journal for the next flush.
+     */
+    public synchronized int flush() throws Exception {
+        int total = 0;
+        List<TicketJournal.Entry> entries;
+        while (!(entries = journal.readPending(batchSize)).isEmpty()) {
+            List<Ticket> saves = new ArrayList<>();
+            List<Ticket> updates = new ArrayList<>();
+            List<Ticket> cancels = new ArrayList<>();
+            for (TicketJournal.Entry entry : entries) {
+                switch (entry.getOperation()) {
+                    case SAVE:
+                        saves.add(entry.getTicket());
+                        break;
+                    case UPDATE:
+                        updates.add(entry.getTicket());
+                        break;
+                    default:
+                        cancels.add(entry.getTicket());
+                        break;
+                }
+            }
+            flushUnit.execute(() -> {
+                ticketDAO.applyJournal(saves, updates, cancels);
+                return null;
+            });
+            for (TicketJournal.Entry entry : entries) {
+                untrack(entry);
+            }
+            journal.markApplied(entries.get(entries.size() - 1).getEnd(), entries.size());
+            flushedRecords.add(entries.size());
+            total += entries.size();
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of journaled writes not applied to the database yet.
+     */
+    public int getBacklog() {
+        return journal.getPendingRecords();
+    }
+
+    /**
+     * @return the size in bytes of the journaled writes not applied to the database yet.
+     */
+    public int getBacklogBytes() {
+        return journal.getPendingBytes();
+    }
+
+    /**
+     * @return how long ago the oldest write not applied yet was journaled, 0 if there is none.
+     */
+    public long getLagMillis() {
+        List<TicketJournal.Entry> oldest = journal.readPending(1);
+        return oldest.isEmpty() ? 0 : System.currentTimeMillis() - oldest.get(0).getAppendedAt();
+    }
+
+    public long getFlushedRecords() {
+        return flushedRecords.sum();
+    }
+
+    public long getFlushFailures() {
+        return flushFailures.sum();
+    }
+
+    /**
+     * Stops the flusher after applying what it can, then closes the journal. Writes that could not
+     * be applied are replayed on the next start.
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            flush();
+        } catch (Exception e) {
+            logger.error("Unable to apply " + getBacklog() + " journaled ticket writes before closing", e);
+        }
+        journal.close();
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            flushFailures.increment();
+            logger.error("Error applying ticket journal, " + getBacklog() + " writes waiting", e);
+        }
+    }
+
+    private void append(TicketJournal.Operation operation, Ticket ticket) {
+        try {
+            // Tracked under the journal's lock, so the flusher cannot apply the write before it is tracked
+            synchronized (journal) {
+                track(journal.append(operation, ticket));
+            }
+        } catch (IOException ex) {
+            logger.error("Error journaling ticket", ex);
+            throw new RuntimeException("Error journaling ticket", ex);
+        }
+    }
+
+    /**
+     * Makes a journaled write visible to reads until it is applied.
+     */
+    private void track(TicketJournal.Entry entry) {
+        String vehicleRegNumber = entry.getTicket().getVehicleRegNumber();
+        switch (entry.getOperation()) {
+            case SAVE:
+                unflushedSaves.computeIfAbsent(vehicleRegNumber, k -> new AtomicInteger()).incrementAndGet();
+                unflushedByVehicle.put(vehicleRegNumber, entry);
+                break;
+            case UPDATE:
+                unflushedByVehicle.put(vehicleRegNumber, entry);
+                break;
+            default:
+                unflushedSaves.computeIfAbsent(vehicleRegNumber, k -> new AtomicInteger()).decrementAndGet();
+                unflushedByVehicle.computeIfPresent(vehicleRegNumber,
+                        (k, latest) -> latest.getTicket().getId() == entry.getTicket().getId() ? null : latest);
+                break;
+        }
+    }
+
+    /**
+     * Hands reads of an applied write back to the DAO, unless a later write of the vehicle is still pending.
+     */
+    private void untrack(TicketJournal.Entry entry) {
+        String vehicleRegNumber = entry.getTicket().getVehicleRegNumber();
+        int delta = entry.getOperation() == TicketJournal.Operation.SAVE ? -1
+                : entry.getOperation() == TicketJournal.Operation.CANCEL ? 1 : 0;
+        if (delta != 0) {
+            unflushedSaves.computeIfPresent(vehicleRegNumber, (k, count) -> count.addAndGet(delta) == 0 ? null : count);
+        }
+        unflushedByVehicle.computeIfPresent(vehicleRegNumber,
+                (k, latest) -> latest.getStart() == entry.getStart() ? null : latest);
+    }
+}
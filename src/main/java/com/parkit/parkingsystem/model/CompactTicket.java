@@ -0,0 +1,120 @@
+package com.parkit.parkingsystem.model;
+
+import java.util.Date;
+
+/**
+ * Allocation-light form of a {@link Ticket}, for tickets held in memory by caches and repositories:
+ * times are epoch milliseconds, the price is in cents, and the spot is a shared {@link SpotRef}.
+ * A ticket takes one object plus its plate instead of four with two Dates and a ParkingSpot.
+ * It is converted to and from a Ticket where the service layer or JDBC needs one.
+ */
+public class CompactTicket {
+
+    /**
+     * Out time of a ticket whose vehicle has not left yet.
+     */
+    public static final long OPEN = -1L;
+
+    private int id;
+    private SpotRef spot;
+    private String vehicleRegNumber;
+    private long priceCents;
+    private long inTimeMillis;
+    private long outTimeMillis;
+
+    public CompactTicket(int id, SpotRef spot, String vehicleRegNumber, long priceCents, long inTimeMillis, long outTimeMillis) {
+        this.id = id;
+        this.spot = spot;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.priceCents = priceCents;
+        this.inTimeMillis = inTimeMillis;
+        this.outTimeMillis = outTimeMillis;
+    }
+
+    /**
+     * @param ticket a ticket with its spot and in time set.
+     * @return the compact form of the ticket; the price is rounded to the cent.
+     */
+    public static CompactTicket of(Ticket ticket) {
+        return new CompactTicket(ticket.getId(), SpotRef.of(ticket.getParkingSpot()), ticket.getVehicleRegNumber(),
+                toCents(ticket.getPrice()), ticket.getInTime().getTime(),
+                ticket.getOutTime() == null ? OPEN : ticket.getOutTime().getTime());
+    }
+
+    /**
+     * @return a new Ticket with the same values, whose spot is marked as not available.
+     */
+    public Ticket toTicket() {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(spot.toParkingSpot(false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(priceCents / 100.0);
+        ticket.setInTime(new Date(inTimeMillis));
+        ticket.setOutTime(outTimeMillis == OPEN ? null : new Date(outTimeMillis));
+        return ticket;
+    }
+
+    /**
+     * @return a copy of this ticket, that later changes to either do not affect.
+     */
+    public CompactTicket copy() {
+        return new CompactTicket(id, spot, vehicleRegNumber, priceCents, inTimeMillis, outTimeMillis);
+    }
+
+    public static long toCents(double price) {
+        return Math.round(price * 100);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public SpotRef getSpot() {
+        return spot;
+    }
+
+    public void setSpot(SpotRef spot) {
+        this.spot = spot;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public void setVehicleRegNumber(String vehicleRegNumber) {
+        this.vehicleRegNumber = vehicleRegNumber;
+    }
+
+    public long getPriceCents() {
+        return priceCents;
+    }
+
+    public void setPriceCents(long priceCents) {
+        this.priceCents = priceCents;
+    }
+
+    public long getInTimeMillis() {
+        return inTimeMillis;
+    }
+
+    public void setInTimeMillis(long inTimeMillis) {
+        this.inTimeMillis = inTimeMillis;
+    }
+
+    public long getOutTimeMillis() {
+        return outTimeMillis;
+    }
+
+    public void setOutTimeMillis(long outTimeMillis) {
+        this.outTimeMillis = outTimeMillis;
+    }
+
+    public boolean isOpen() {
+        return outTimeMillis == OPEN;
+    }
+}
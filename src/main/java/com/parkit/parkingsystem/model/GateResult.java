@@ -0,0 +1,100 @@
+package com.parkit.parkingsystem.model;
+
+import java.util.Date;
+
+/**
+ * Outcome of one entry or exit processed by ParkingService.enter or ParkingService.exit.
+ */
+public class GateResult {
+
+    public enum Status {
+        /** The vehicle entered; the spot and in-time are set. */
+        ENTERED,
+        /** The vehicle left; the out-time and price are set. */
+        EXITED,
+        /** No spot of the requested type is free. */
+        FULL,
+        /** There is no open ticket for the vehicle. */
+        NOT_PARKED,
+        /** Another gate is processing the same vehicle. */
+        BUSY,
+        /** The entry or exit could not be saved; nothing was changed. */
+        FAILED
+    }
+
+    private final Status status;
+    private final String vehicleRegNumber;
+    private final ParkingSpot parkingSpot;
+    private final Date inTime;
+    private final Date outTime;
+    private final double price;
+    private final boolean recurrentCustomer;
+    private final String message;
+
+    private GateResult(Status status, String vehicleRegNumber, ParkingSpot parkingSpot, Date inTime, Date outTime,
+                       double price, boolean recurrentCustomer, String message) {
+        this.status = status;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingSpot = parkingSpot;
+        this.inTime = inTime;
+        this.outTime = outTime;
+        this.price = price;
+        this.recurrentCustomer = recurrentCustomer;
+        this.message = message;
+    }
+
+    public static GateResult entered(Ticket ticket, boolean recurrentCustomer) {
+        return new GateResult(Status.ENTERED, ticket.getVehicleRegNumber(), ticket.getParkingSpot(),
+                ticket.getInTime(), null, 0, recurrentCustomer, null);
+    }
+
+    public static GateResult exited(Ticket ticket) {
+        return new GateResult(Status.EXITED, ticket.getVehicleRegNumber(), ticket.getParkingSpot(),
+                ticket.getInTime(), ticket.getOutTime(), ticket.getPrice(), false, null);
+    }
+
+    public static GateResult rejected(Status status, String vehicleRegNumber, String message) {
+        return new GateResult(status, vehicleRegNumber, null, null, null, 0, false, message);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.ENTERED || status == Status.EXITED;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public ParkingSpot getParkingSpot() {
+        return parkingSpot;
+    }
+
+    public Date getInTime() {
+        return inTime;
+    }
+
+    public Date getOutTime() {
+        return outTime;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public boolean isRecurrentCustomer() {
+        return recurrentCustomer;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return status + " " + vehicleRegNumber + (message != null ? ": " + message : "");
+    }
+}
@@ -0,0 +1,71 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+/**
+ * Activity of one parking type over a period: an hour, or a day summed from its hours.
+ */
+public class ParkingStats {
+    private final Date start;
+    private final ParkingType parkingType;
+    private final long entries;
+    private final long exits;
+    private final long revenueCents;
+    private final long stayMillis;
+    private final int peakOccupancy;
+
+    public ParkingStats(Date start, ParkingType parkingType, long entries, long exits, long revenueCents,
+                        long stayMillis, int peakOccupancy) {
+        this.start = start;
+        this.parkingType = parkingType;
+        this.entries = entries;
+        this.exits = exits;
+        this.revenueCents = revenueCents;
+        this.stayMillis = stayMillis;
+        this.peakOccupancy = peakOccupancy;
+    }
+
+    public Date getStart() {
+        return start;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public long getExits() {
+        return exits;
+    }
+
+    /**
+     * @return the fares paid during the period, in currency units.
+     */
+    public double getRevenue() {
+        return revenueCents / 100.0;
+    }
+
+    public long getRevenueCents() {
+        return revenueCents;
+    }
+
+    /**
+     * @return the total time spent by the vehicles that exited during the period.
+     */
+    public long getStayMillis() {
+        return stayMillis;
+    }
+
+    public long getAverageStayMillis() {
+        return exits == 0 ? 0 : stayMillis / exits;
+    }
+
+    public int getPeakOccupancy() {
+        return peakOccupancy;
+    }
+}
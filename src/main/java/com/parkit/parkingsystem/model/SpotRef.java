@@ -0,0 +1,88 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Immutable reference to a parking spot: its number and type, without the availability flag.
+ * Instances are shared, so the compact model does not allocate a spot per ticket.
+ */
+public final class SpotRef {
+
+    private static final int MAX_CACHED_NUMBER = 4096;
+
+    private static final List<AtomicReferenceArray<SpotRef>> CACHE = newCache();
+
+    private final int number;
+    private final ParkingType parkingType;
+
+    private SpotRef(int number, ParkingType parkingType) {
+        this.number = number;
+        this.parkingType = parkingType;
+    }
+
+    /**
+     * Returns the shared reference to a spot.
+     *
+     * @param number spot number.
+     * @param parkingType type of the spot.
+     * @return the spot reference, the same instance for the same number and type.
+     */
+    public static SpotRef of(int number, ParkingType parkingType) {
+        if (number < 0 || number >= MAX_CACHED_NUMBER) {
+            return new SpotRef(number, parkingType);
+        }
+        AtomicReferenceArray<SpotRef> spots = CACHE.get(parkingType.ordinal());
+        SpotRef spot = spots.get(number);
+        if (spot == null) {
+            spots.compareAndSet(number, null, new SpotRef(number, parkingType));
+            spot = spots.get(number);
+        }
+        return spot;
+    }
+
+    public static SpotRef of(ParkingSpot parkingSpot) {
+        return of(parkingSpot.getId(), parkingSpot.getParkingType());
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    /**
+     * @param available availability of the spot.
+     * @return a new mutable ParkingSpot for this spot.
+     */
+    public ParkingSpot toParkingSpot(boolean available) {
+        return new ParkingSpot(number, parkingType, available);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SpotRef that = (SpotRef) o;
+        return number == that.number && parkingType == that.parkingType;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * number + parkingType.hashCode();
+    }
+
+    private static List<AtomicReferenceArray<SpotRef>> newCache() {
+        List<AtomicReferenceArray<SpotRef>> cache = new ArrayList<>(ParkingType.values().length);
+        for (int i = 0; i < ParkingType.values().length; i++) {
+            cache.add(new AtomicReferenceArray<>(MAX_CACHED_NUMBER));
+        }
+        return Collections.unmodifiableList(cache);
+    }
+}
@@ -58,4 +58,19 @@ public class Ticket {
     public void setOutTime(Date outTime) {
         this.outTime = outTime;
     }
+
+    /**
+     * @return a copy of this ticket, with its own spot and dates, that later changes to either do not affect.
+     */
+    public Ticket copy() {
+        Ticket copy = new Ticket();
+        copy.setId(id);
+        copy.setParkingSpot(parkingSpot == null ? null
+                : new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+        copy.setVehicleRegNumber(vehicleRegNumber);
+        copy.setPrice(price);
+        copy.setInTime(inTime == null ? null : new Date(inTime.getTime()));
+        copy.setOutTime(outTime == null ? null : new Date(outTime.getTime()));
+        return copy;
+    }
 }
@@ -0,0 +1,82 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * Reusable batch of closed tickets stored as columns, for bulk jobs that price millions of tickets.
+ * Only the columns pricing needs are kept, along with each ticket's visit number: its rank among the
+ * tickets of the vehicle, archived ones included.
+ */
+public class TicketBatch {
+    private final int[] ids;
+    private final ParkingType[] parkingTypes;
+    private final long[] inTimes;
+    private final long[] outTimes;
+    private final double[] prices;
+    private final int[] visits;
+    private int size;
+
+    /**
+     * @param capacity maximum number of tickets in the batch.
+     */
+    public TicketBatch(int capacity) {
+        this.ids = new int[capacity];
+        this.parkingTypes = new ParkingType[capacity];
+        this.inTimes = new long[capacity];
+        this.outTimes = new long[capacity];
+        this.prices = new double[capacity];
+        this.visits = new int[capacity];
+    }
+
+    /**
+     * Appends a ticket.
+     *
+     * @return true if the batch is now full.
+     */
+    public boolean add(int id, ParkingType parkingType, long inTime, long outTime, double price, int visit) {
+        ids[size] = id;
+        parkingTypes[size] = parkingType;
+        inTimes[size] = inTime;
+        outTimes[size] = outTime;
+        prices[size] = price;
+        visits[size] = visit;
+        size++;
+        return size == ids.length;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ids.length;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public ParkingType getParkingType(int index) {
+        return parkingTypes[index];
+    }
+
+    public long getInTime(int index) {
+        return inTimes[index];
+    }
+
+    public long getOutTime(int index) {
+        return outTimes[index];
+    }
+
+    public double getPrice(int index) {
+        return prices[index];
+    }
+
+    public int getVisit(int index) {
+        return visits[index];
+    }
+}
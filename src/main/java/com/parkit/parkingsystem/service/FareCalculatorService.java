@@ -1,76 +1,200 @@
 package com.parkit.parkingsystem.service;
 
 import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.CompactTicket;
 import com.parkit.parkingsystem.model.Ticket;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import com.parkit.parkingsystem.model.TicketBatch;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
 
 /**
  * Service to calculate the fare of a parking ticket.
  * The fare is calculated based on the parking type and duration.
- * The rates are defined in the Fare class.
- * The duration is calculated in hours.
- * The time is provided in milliseconds.
- * if the time is inferior to 30 min the prices should be 0
+ * The rates, free period, caps and loyalty discounts come from the current {@link TariffTable},
+ * the {@link Fare} constants by default. The table is read once per call or batch, without a lock,
+ * so a tariff reloaded by {@link com.parkit.parkingsystem.config.TariffConfig} applies from the next call.
+ * Fares are computed in whole cents with long arithmetic. Nothing is allocated per ticket.
  */
 public class FareCalculatorService {
+
+    /**
+     * Number of visits of a returning customer, used by the boolean discount methods.
+     */
+    public static final int RETURNING_CUSTOMER_VISITS = 2;
+
+    /**
+     * Number of tickets below which a parallel pricing task is not split further.
+     */
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private final Supplier<TariffTable> tariff;
+
+    public FareCalculatorService() {
+        this(() -> TariffTable.DEFAULT);
+    }
+
+    /**
+     * @param tariff gives the tariff in force, read on every call.
+     */
+    public FareCalculatorService(Supplier<TariffTable> tariff) {
+        this.tariff = tariff;
+    }
+
     /**
      * Calculate the fare for a given ticket.
      *
      * @param ticket
-     * @param discount
+     * @param discount whether the vehicle is a returning customer.
      */
     public void calculateFare(Ticket ticket, boolean discount) {
+        calculateFare(ticket, discount ? RETURNING_CUSTOMER_VISITS : 1);
+    }
+
+    /**
+     * Calculate the fare for a given ticket without discount.
+     *
+     * @param ticket
+     */
+    public void calculateFare(Ticket ticket) {
+        calculateFare(ticket, false);
+    }
+
+    /**
+     * Calculate the fare for a given ticket, with the loyalty discount of the vehicle's visit count.
+     *
+     * @param ticket
+     * @param visits number of tickets of the vehicle, this one included.
+     */
+    public void calculateFare(Ticket ticket, int visits) {
         if ((ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime()))) {
             throw new IllegalArgumentException("Out time provided is incorrect:" + ticket.getOutTime().toString());
         }
+        long fareCents = tariff.get().price(ticket.getInTime().getTime(), ticket.getOutTime().getTime(),
+                ticket.getParkingSpot().getParkingType(), visits);
+        ticket.setPrice(fareCents / 100.0);
+    }
 
-        long inHour = ticket.getInTime().getTime();
-        long outHour = ticket.getOutTime().getTime();
-
-
-        float duration = (outHour - inHour);
-        duration = duration / (1000 * 60 * 60); // convert milliseconds to hours
-
-        double fare;
+    /**
+     * Calculate the fare of a stay in cents.
+     *
+     * @param inTimeMillis entry time, in epoch milliseconds.
+     * @param outTimeMillis exit time, in epoch milliseconds.
+     * @param parkingType type of the vehicle; null throws a NullPointerException.
+     * @param discount whether the vehicle is a returning customer.
+     * @return the fare in cents.
+     */
+    public long calculateFareCents(long inTimeMillis, long outTimeMillis, ParkingType parkingType, boolean discount) {
+        return tariff.get().price(inTimeMillis, outTimeMillis, parkingType, discount ? RETURNING_CUSTOMER_VISITS : 1);
+    }
 
-        switch (ticket.getParkingSpot().getParkingType()) {
-            case CAR: {
-                fare = Fare.CAR_RATE_PER_HOUR;
-                break;
-            }
-            case BIKE: {
-                fare = Fare.BIKE_RATE_PER_HOUR;
-                break;
+    /**
+     * Prices a batch of tickets, for settlement and re-pricing jobs. The whole batch uses the same tariff.
+     *
+     * @param tickets tickets with their out time set.
+     * @param discounts whether the vehicle is a returning customer, per ticket.
+     */
+    public void calculateFares(Ticket[] tickets, boolean[] discounts) {
+        TariffTable table = tariff.get();
+        for (int i = 0; i < tickets.length; i++) {
+            Ticket ticket = tickets[i];
+            if ((ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime()))) {
+                throw new IllegalArgumentException("Out time provided is incorrect for ticket " + ticket.getId());
             }
-            default:
-                throw new IllegalArgumentException("Unknown Parking Type");
+            ticket.setPrice(table.price(ticket.getInTime().getTime(), ticket.getOutTime().getTime(),
+                    ticket.getParkingSpot().getParkingType(), discounts[i] ? RETURNING_CUSTOMER_VISITS : 1) / 100.0);
         }
+    }
 
-
-
-        BigDecimal rawPrice = new BigDecimal (0);
-
-        if (duration > 0.5) {
-            rawPrice = BigDecimal.valueOf(duration * fare).setScale(2, RoundingMode.HALF_UP);
-
-            if (discount) {
-                rawPrice = rawPrice.multiply(BigDecimal.valueOf(0.95)).setScale(2, RoundingMode.HALF_UP);
+    /**
+     * Prices a batch of compact tickets, setting their price in cents. The whole batch uses the same tariff.
+     *
+     * @param tickets tickets with their out time set.
+     * @param discounts whether the vehicle is a returning customer, per ticket.
+     */
+    public void calculateFares(CompactTicket[] tickets, boolean[] discounts) {
+        TariffTable table = tariff.get();
+        for (int i = 0; i < tickets.length; i++) {
+            CompactTicket ticket = tickets[i];
+            if (ticket.isOpen()) {
+                throw new IllegalArgumentException("Out time provided is incorrect for ticket " + ticket.getId());
             }
+            ticket.setPriceCents(table.price(ticket.getInTimeMillis(), ticket.getOutTimeMillis(),
+                    ticket.getSpot().getParkingType(), discounts[i] ? RETURNING_CUSTOMER_VISITS : 1));
         }
+    }
 
-        double price = rawPrice.doubleValue();
-        ticket.setPrice(price);
+    /**
+     * Prices a batch of stays given as columns, such as archive segments, writing the fares to fareCents.
+     * The whole batch uses the same tariff.
+     *
+     * @param inTimes entry times, in epoch milliseconds.
+     * @param outTimes exit times, in epoch milliseconds.
+     * @param parkingTypes vehicle types.
+     * @param discounts whether the vehicle is a returning customer, per stay.
+     * @param fareCents receives the fares in cents.
+     */
+    public void calculateFares(long[] inTimes, long[] outTimes, ParkingType[] parkingTypes, boolean[] discounts,
+                               long[] fareCents) {
+        TariffTable table = tariff.get();
+        for (int i = 0; i < inTimes.length; i++) {
+            fareCents[i] = table.price(inTimes[i], outTimes[i], parkingTypes[i], discounts[i] ? RETURNING_CUSTOMER_VISITS : 1);
+        }
+    }
 
+    /**
+     * Prices a batch of tickets on all the workers of a fork-join pool, with the loyalty discount of each
+     * ticket's visit number. The whole batch uses the same tariff.
+     *
+     * @param batch tickets to price.
+     * @param fareCents receives the fare of each ticket in cents, at the same index.
+     * @param pool pool running the pricing.
+     */
+    public void calculateFares(TicketBatch batch, long[] fareCents, ForkJoinPool pool) {
+        pool.invoke(new PricingTask(tariff.get(), batch, fareCents, 0, batch.size()));
+    }
 
+    /**
+     * @return the tariff in force.
+     */
+    public TariffTable getTariff() {
+        return tariff.get();
     }
 
     /**
-     * Calculate the fare for a given ticket without discount.
-     *
-     * @param ticket
+     * Prices a range of a batch, split in halves until it is small enough.
      */
-    public void calculateFare(Ticket ticket) {
-        calculateFare(ticket, false);
+    private static final class PricingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TariffTable table;
+        private final TicketBatch batch;
+        private final long[] fareCents;
+        private final int from;
+        private final int to;
+
+        private PricingTask(TariffTable table, TicketBatch batch, long[] fareCents, int from, int to) {
+            this.table = table;
+            this.batch = batch;
+            this.fareCents = fareCents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    fareCents[i] = table.price(batch.getInTime(i), batch.getOutTime(i), batch.getParkingType(i),
+                            batch.getVisit(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PricingTask(table, batch, fareCents, from, middle),
+                    new PricingTask(table, batch, fareCents, middle, to));
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,372 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.StorageConfig;
+import com.parkit.parkingsystem.config.TariffConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SpotAllocationMode;
+import com.parkit.parkingsystem.dao.AllocationMetrics;
+import com.parkit.parkingsystem.dao.FreeSpotIndex;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotRepository;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.util.LatencyHistogram;
+import com.parkit.parkingsystem.util.VirtualThreads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP gate endpoint for lane terminals, on the JDK's built-in HTTP server:
+ * <ul>
+ *     <li>POST /entry?plate=AB-123-CD&amp;type=CAR lets a vehicle in,</li>
+ *     <li>POST /exit?plate=AB-123-CD lets it out and returns the fare,</li>
+ *     <li>GET /occupancy returns the parked vehicles and the next free spot per type,</li>
+ *     <li>GET /metrics returns requests per second and p50/p99 latency of entries and exits, and the spot
+ *     allocation counters of this instance since startup; /metrics?reset=true starts a new latency
+ *     measurement period.</li>
+ * </ul>
+ * Responses are JSON. An entry or exit answers 200 when done, 409 when refused (parking full, vehicle not parked
+ * or already at a gate) and 500 when it could not be saved. Each request is handled on its own virtual thread on
+ * Java 21 and later, on a fixed pool of parkit.http.threads platform threads otherwise.
+ */
+public class GateHttpServer {
+
+    private static final Logger logger = LogManager.getLogger("GateHttpServer");
+
+    private final ParkingService parkingService;
+    private final ParkingStatistics parkingStatistics;
+    private final ParkingSpotRepository parkingSpotRepository;
+    private final HttpServer server;
+    private final ExecutorService platformThreads;
+    private final LatencyHistogram entryLatency = new LatencyHistogram();
+    private final LatencyHistogram exitLatency = new LatencyHistogram();
+
+    /**
+     * Binds the server; requests are served once started.
+     * @param address address to listen on, port 0 for any free port.
+     * @param platformThreadCount request threads when the runtime has no virtual threads.
+     * @throws IOException if the address cannot be bound.
+     */
+    public GateHttpServer(ParkingService parkingService, ParkingStatistics parkingStatistics,
+                          ParkingSpotRepository parkingSpotRepository, InetSocketAddress address,
+                          int platformThreadCount) throws IOException {
+        this.parkingService = parkingService;
+        this.parkingStatistics = parkingStatistics;
+        this.parkingSpotRepository = parkingSpotRepository;
+        this.server = HttpServer.create(address, 0);
+        ThreadFactory threadFactory = VirtualThreads.factory();
+        if (VirtualThreads.isSupported()) {
+            this.platformThreads = null;
+            server.setExecutor(request -> threadFactory.newThread(request).start());
+        } else {
+            this.platformThreads = Executors.newFixedThreadPool(platformThreadCount, threadFactory);
+            server.setExecutor(platformThreads);
+        }
+        server.createContext("/entry", exchange -> handle(exchange, "POST", this::entry));
+        server.createContext("/exit", exchange -> handle(exchange, "POST", this::exit));
+        server.createContext("/occupancy", exchange -> handle(exchange, "GET", this::occupancy));
+        server.createContext("/metrics", exchange -> handle(exchange, "GET", this::metrics));
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Gate endpoint listening on port " + getPort() + " with "
+                + (platformThreads == null ? "virtual threads" : "platform threads"));
+    }
+
+    /**
+     * Stops accepting requests, lets the requests in progress finish for up to delaySeconds and logs the metrics.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        if (platformThreads != null) {
+            platformThreads.shutdown();
+            try {
+                platformThreads.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        logger.info("Gate endpoint stopped: " + metricsJson());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public LatencyHistogram getEntryLatency() {
+        return entryLatency;
+    }
+
+    public LatencyHistogram getExitLatency() {
+        return exitLatency;
+    }
+
+    private interface Endpoint {
+        Response serve(Map<String, String> parameters);
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        try {
+            Response response;
+            if (!method.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                response = new Response(405, error("Use " + method));
+            } else {
+                try {
+                    response = endpoint.serve(parseQuery(exchange.getRequestURI().getRawQuery()));
+                } catch (IllegalArgumentException e) {
+                    response = new Response(400, error(e.getMessage()));
+                } catch (RuntimeException e) {
+                    logger.error("Error serving " + exchange.getRequestURI(), e);
+                    response = new Response(500, error("Internal error"));
+                }
+            }
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response entry(Map<String, String> parameters) {
+        long start = System.nanoTime();
+        String type = required(parameters, "type");
+        ParkingType parkingType;
+        try {
+            parkingType = ParkingType.valueOf(type.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown vehicle type " + type);
+        }
+        GateResult result = parkingService.enter(required(parameters, "plate"), parkingType);
+        entryLatency.record((System.nanoTime() - start) / 1000);
+        return gateResponse(result);
+    }
+
+    private Response exit(Map<String, String> parameters) {
+        long start = System.nanoTime();
+        GateResult result = parkingService.exit(required(parameters, "plate"));
+        exitLatency.record((System.nanoTime() - start) / 1000);
+        return gateResponse(result);
+    }
+
+    private Response occupancy(Map<String, String> parameters) {
+        StringBuilder json = new StringBuilder("{");
+        for (ParkingType parkingType : ParkingType.values()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(parkingType).append("\":{\"parked\":")
+                    .append(parkingStatistics.getOccupancy(parkingType))
+                    .append(",\"nextFreeSpot\":")
+                    .append(Math.max(0, parkingSpotRepository.getNextAvailableSlot(parkingType)))
+                    .append('}');
+        }
+        return new Response(200, json.append('}').toString());
+    }
+
+    private Response metrics(Map<String, String> parameters) {
+        String json = metricsJson();
+        if (Boolean.parseBoolean(parameters.get("reset"))) {
+            entryLatency.reset();
+            exitLatency.reset();
+        }
+        return new Response(200, json);
+    }
+
+    private String metricsJson() {
+        return "{\"entry\":" + latencyJson(entryLatency) + ",\"exit\":" + latencyJson(exitLatency)
+                + allocationJson() + "}";
+    }
+
+    /**
+     * Reports the reservations done in the database (SKIP_LOCKED and OPTIMISTIC modes) and the claims of the
+     * free-spot index (INDEX mode and in-memory storage), where compare-and-set retries show gate contention.
+     */
+    private String allocationJson() {
+        StringBuilder json = new StringBuilder(",\"allocation\":{");
+        FreeSpotIndex index;
+        if (parkingSpotRepository instanceof ParkingSpotDAO) {
+            ParkingSpotDAO parkingSpotDAO = (ParkingSpotDAO) parkingSpotRepository;
+            AllocationMetrics metrics = parkingSpotDAO.getAllocationMetrics();
+            json.append("\"node\":").append(quote(metrics.getNode()))
+                    .append(",\"mode\":\"").append(parkingSpotDAO.getAllocationMode())
+                    .append("\",\"claims\":").append(metrics.getClaims())
+                    .append(",\"conflicts\":").append(metrics.getConflicts())
+                    .append(",\"retries\":").append(metrics.getRetries())
+                    .append(",\"misses\":").append(metrics.getMisses());
+            index = parkingSpotDAO.getAllocationMode() == SpotAllocationMode.INDEX
+                    ? parkingSpotDAO.getFreeSpotIndex() : null;
+        } else if (parkingSpotRepository instanceof InMemoryParkingSpotRepository) {
+            index = ((InMemoryParkingSpotRepository) parkingSpotRepository).getFreeSpotIndex();
+        } else {
+            return "";
+        }
+        if (index != null) {
+            if (json.charAt(json.length() - 1) != '{') {
+                json.append(',');
+            }
+            json.append("\"index\":{");
+            for (ParkingType parkingType : ParkingType.values()) {
+                if (parkingType.ordinal() > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(parkingType).append("\":{\"claims\":").append(index.getClaimCount(parkingType))
+                        .append(",\"retries\":").append(index.getClaimRetryCount(parkingType))
+                        .append(",\"misses\":").append(index.getClaimMissCount(parkingType))
+                        .append('}');
+            }
+            json.append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    private static String latencyJson(LatencyHistogram histogram) {
+        return "{\"count\":" + histogram.getCount()
+                + ",\"requestsPerSecond\":" + String.format(Locale.ROOT, "%.1f", histogram.getRatePerSecond())
+                + ",\"p50Micros\":" + histogram.getPercentile(50)
+                + ",\"p99Micros\":" + histogram.getPercentile(99)
+                + ",\"maxMicros\":" + histogram.getMax() + "}";
+    }
+
+    private static Response gateResponse(GateResult result) {
+        StringBuilder json = new StringBuilder("{\"status\":\"").append(result.getStatus())
+                .append("\",\"plate\":").append(quote(result.getVehicleRegNumber()));
+        if (result.getParkingSpot() != null) {
+            json.append(",\"spot\":").append(result.getParkingSpot().getId());
+        }
+        if (result.getInTime() != null) {
+            json.append(",\"inTime\":").append(result.getInTime().getTime());
+        }
+        if (result.getOutTime() != null) {
+            json.append(",\"outTime\":").append(result.getOutTime().getTime())
+                    .append(",\"price\":").append(String.format(Locale.ROOT, "%.2f", result.getPrice()));
+        }
+        if (result.getStatus() == GateResult.Status.ENTERED) {
+            json.append(",\"recurrentCustomer\":").append(result.isRecurrentCustomer());
+        }
+        if (result.getMessage() != null) {
+            json.append(",\"message\":").append(quote(result.getMessage()));
+        }
+        json.append('}');
+        int status;
+        switch (result.getStatus()) {
+            case ENTERED:
+            case EXITED:
+                status = 200;
+                break;
+            case FAILED:
+                status = 500;
+                break;
+            default:
+                status = 409;
+        }
+        return new Response(status, json.toString());
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.trim().length() == 0) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        try {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return parameters;
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Runs the app as an HTTP gate endpoint instead of the interactive shell, on the port given by
+     * parkit.http.port. The storage and tariff are configured as for the shell; they are closed on shutdown.
+     */
+    public static void serve() {
+        StorageConfig storageConfig = StorageConfig.fromSystemProperties();
+        TariffConfig tariffConfig = TariffConfig.fromSystemProperties();
+        ParkingService parkingService = storageConfig.newParkingService(null, tariffConfig.newFareCalculatorService());
+        GateHttpServer gateHttpServer;
+        try {
+            gateHttpServer = new GateHttpServer(parkingService, storageConfig.getParkingStatistics(),
+                    storageConfig.getParkingSpotRepository(),
+                    new InetSocketAddress(Integer.getInteger("parkit.http.port", 8080)),
+                    Integer.getInteger("parkit.http.threads", 64));
+        } catch (IOException e) {
+            tariffConfig.close();
+            storageConfig.close();
+            throw new IllegalStateException("Unable to start the gate endpoint", e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            gateHttpServer.stop(5);
+            tariffConfig.close();
+            storageConfig.close();
+        }, "gate-endpoint-shutdown"));
+        gateHttpServer.start();
+    }
+}
@@ -0,0 +1,90 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.GateResult;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary gate protocol served by {@link GateSocketServer}. All numbers are big-endian.
+ * <p>
+ * Each message is a frame: an int length of the bytes that follow, then the message.
+ * <ul>
+ *     <li>ENTER request: byte 1, int request id, byte parking type (ordinal), short plate length, plate in UTF-8.</li>
+ *     <li>EXIT request: byte 2, int request id, short plate length, plate in UTF-8.</li>
+ *     <li>QUERY request: byte 3, int request id, byte parking type (ordinal).</li>
+ *     <li>Response: int request id, byte status, then for ENTERED: int spot, long in-time millis, byte recurrent
+ *     customer; for EXITED: int spot, long out-time millis, long price in cents; for a QUERY: int parked vehicles,
+ *     int next free spot or 0. Other statuses have no body.</li>
+ * </ul>
+ * A client may send requests without waiting for the responses. The requests of one connection are processed
+ * in order and their responses come back in the same order, several per packet when they are ready together.
+ */
+public final class GateProtocol {
+
+    public static final byte ENTER = 1;
+    public static final byte EXIT = 2;
+    public static final byte QUERY = 3;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ENTERED = 1;
+    public static final byte STATUS_EXITED = 2;
+    public static final byte STATUS_FULL = 3;
+    public static final byte STATUS_NOT_PARKED = 4;
+    public static final byte STATUS_BUSY = 5;
+    public static final byte STATUS_FAILED = 6;
+    public static final byte STATUS_BAD_REQUEST = 7;
+
+    public static final int MAX_PLATE_BYTES = 64;
+    /** Longest request frame, without its length prefix: an ENTER with the longest plate. */
+    public static final int MAX_REQUEST_LENGTH = 1 + 4 + 1 + 2 + MAX_PLATE_BYTES;
+    /** Longest response frame, without its length prefix: an EXITED response. */
+    public static final int MAX_RESPONSE_LENGTH = 4 + 1 + 4 + 8 + 8;
+
+    private GateProtocol() {
+    }
+
+    public static void writeEnter(ByteBuffer buffer, int requestId, String vehicleRegNumber, ParkingType parkingType) {
+        byte[] plate = plateBytes(vehicleRegNumber);
+        buffer.putInt(1 + 4 + 1 + 2 + plate.length).put(ENTER).putInt(requestId).put((byte) parkingType.ordinal())
+                .putShort((short) plate.length).put(plate);
+    }
+
+    public static void writeExit(ByteBuffer buffer, int requestId, String vehicleRegNumber) {
+        byte[] plate = plateBytes(vehicleRegNumber);
+        buffer.putInt(1 + 4 + 2 + plate.length).put(EXIT).putInt(requestId).putShort((short) plate.length).put(plate);
+    }
+
+    public static void writeQuery(ByteBuffer buffer, int requestId, ParkingType parkingType) {
+        buffer.putInt(1 + 4 + 1).put(QUERY).putInt(requestId).put((byte) parkingType.ordinal());
+    }
+
+    /**
+     * @return the status byte of an entry or exit outcome.
+     */
+    public static byte statusOf(GateResult.Status status) {
+        switch (status) {
+            case ENTERED:
+                return STATUS_ENTERED;
+            case EXITED:
+                return STATUS_EXITED;
+            case FULL:
+                return STATUS_FULL;
+            case NOT_PARKED:
+                return STATUS_NOT_PARKED;
+            case BUSY:
+                return STATUS_BUSY;
+            default:
+                return STATUS_FAILED;
+        }
+    }
+
+    private static byte[] plateBytes(String vehicleRegNumber) {
+        byte[] plate = vehicleRegNumber.getBytes(StandardCharsets.UTF_8);
+        if (plate.length == 0 || plate.length > MAX_PLATE_BYTES) {
+            throw new IllegalArgumentException("Invalid vehicle registration number " + vehicleRegNumber);
+        }
+        return plate;
+    }
+}
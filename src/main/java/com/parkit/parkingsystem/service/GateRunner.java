@@ -0,0 +1,180 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.util.VirtualThreads;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves parking lanes concurrently, one thread per lane, each looping over the vehicles of its lane
+ * and passing them to {@link ParkingService#enter} or {@link ParkingService#exit}.
+ * A lane spends most of its time blocked, waiting for the next vehicle or for the database, so on
+ * Java 21 and later the lanes run on virtual threads and many lanes cost a few carrier threads.
+ * On older runtimes each lane gets a daemon platform thread.
+ */
+public class GateRunner implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("GateRunner");
+
+    /**
+     * Source of the vehicles of one lane, e.g. a plate reader and a barrier.
+     */
+    public interface Lane {
+        /**
+         * Waits for the next vehicle at the lane.
+         * @return the next request, or null to close the lane.
+         * @throws InterruptedException when the runner is closed while waiting.
+         */
+        Request next() throws InterruptedException;
+
+        /**
+         * Called on the lane's thread with the outcome of each request, e.g. to open the barrier.
+         */
+        void completed(Request request, GateResult result);
+    }
+
+    /**
+     * A vehicle entering or leaving.
+     */
+    public static final class Request {
+        private final String vehicleRegNumber;
+        private final ParkingType parkingType;
+
+        private Request(String vehicleRegNumber, ParkingType parkingType) {
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.parkingType = parkingType;
+        }
+
+        public static Request entry(String vehicleRegNumber, ParkingType parkingType) {
+            return new Request(vehicleRegNumber, parkingType);
+        }
+
+        public static Request exit(String vehicleRegNumber) {
+            return new Request(vehicleRegNumber, null);
+        }
+
+        public boolean isExit() {
+            return parkingType == null;
+        }
+
+        public String getVehicleRegNumber() {
+            return vehicleRegNumber;
+        }
+
+        public ParkingType getParkingType() {
+            return parkingType;
+        }
+    }
+
+    private final ParkingService parkingService;
+    private final ThreadFactory threadFactory;
+    private final boolean virtual;
+    private final Map<String, Thread> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger processed = new AtomicInteger();
+    private volatile boolean closed;
+
+    public GateRunner(ParkingService parkingService) {
+        this.parkingService = parkingService;
+        this.threadFactory = VirtualThreads.factory();
+        this.virtual = VirtualThreads.isSupported();
+        logger.info("Gate lanes run on " + (virtual ? "virtual" : "platform") + " threads");
+    }
+
+    /**
+     * Starts serving a lane on its own thread, until the lane returns null or the runner is closed.
+     * @param name name of the lane, unique among the open lanes.
+     * @param lane source of the vehicles.
+     */
+    public void open(String name, Lane lane) {
+        if (closed) {
+            throw new IllegalStateException("Gate runner is closed");
+        }
+        Thread thread = threadFactory.newThread(() -> serve(name, lane));
+        thread.setName("gate-" + name);
+        if (lanes.putIfAbsent(name, thread) != null) {
+            throw new IllegalArgumentException("Lane " + name + " is already open");
+        }
+        thread.start();
+    }
+
+    private void serve(String name, Lane lane) {
+        try {
+            while (!closed) {
+                Request request = lane.next();
+                if (request == null) {
+                    break;
+                }
+                GateResult result;
+                try {
+                    result = request.isExit()
+                            ? parkingService.exit(request.getVehicleRegNumber())
+                            : parkingService.enter(request.getVehicleRegNumber(), request.getParkingType());
+                } catch (RuntimeException e) {
+                    logger.error("Invalid request on lane " + name, e);
+                    result = GateResult.rejected(GateResult.Status.FAILED, request.getVehicleRegNumber(), e.getMessage());
+                }
+                processed.incrementAndGet();
+                try {
+                    lane.completed(request, result);
+                } catch (RuntimeException e) {
+                    logger.error("Lane " + name + " failed to handle " + result, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Lane " + name + " stopped", e);
+        } finally {
+            lanes.remove(name);
+        }
+    }
+
+    /**
+     * Waits for the open lanes to close by themselves.
+     * @param timeoutMillis maximum wait per lane.
+     * @return true if every lane is closed.
+     */
+    public boolean awaitLanes(long timeoutMillis) throws InterruptedException {
+        for (Thread thread : lanes.values()) {
+            thread.join(timeoutMillis);
+        }
+        return lanes.isEmpty();
+    }
+
+    /**
+     * Stops every lane: lanes waiting for a vehicle are interrupted, a request being processed completes.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread thread : lanes.values()) {
+            thread.interrupt();
+        }
+        try {
+            awaitLanes(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!lanes.isEmpty()) {
+            logger.error("Lanes still running after close: " + lanes.keySet());
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getOpenLanes() {
+        return lanes.size();
+    }
+
+    public int getProcessedCount() {
+        return processed.get();
+    }
+}
@@ -0,0 +1,452 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.StorageConfig;
+import com.parkit.parkingsystem.config.TariffConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.GateResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Non-blocking socket server of the binary {@link GateProtocol}, for high-rate lanes and camera controllers.
+ * One selector thread reads and writes every connection; the requests read from a connection are handed,
+ * in order, to a worker of a fixed pool that calls {@link ParkingService} and encodes the responses, which
+ * the selector thread then writes back in one go. A connection is processed by one worker at a time, so its
+ * requests keep their order while different connections are processed in parallel. A connection with too
+ * many requests waiting is no longer read until the workers catch up.
+ */
+public class GateSocketServer implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("GateSocketServer");
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_QUEUED_REQUESTS = 1024;
+    private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+    private final ParkingService parkingService;
+    private final ParkingStatistics parkingStatistics;
+    private final ParkingSpotRepository parkingSpotRepository;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final int port;
+    private final ExecutorService workers;
+    private final Thread selectorThread;
+    private final Queue<Connection> updatedConnections = new ConcurrentLinkedQueue<>();
+    private final LongAdder requestCount = new LongAdder();
+    private volatile boolean running;
+
+    /**
+     * Binds the server; connections are accepted once started.
+     * @param address address to listen on, port 0 for any free port.
+     * @param workerCount threads processing the requests, about the number of database connections.
+     * @throws IOException if the address cannot be bound.
+     */
+    public GateSocketServer(ParkingService parkingService, ParkingStatistics parkingStatistics,
+                            ParkingSpotRepository parkingSpotRepository, InetSocketAddress address,
+                            int workerCount) throws IOException {
+        this.parkingService = parkingService;
+        this.parkingStatistics = parkingStatistics;
+        this.parkingSpotRepository = parkingSpotRepository;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(address);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "gate-worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.selectorThread = new Thread(this::select, "gate-selector");
+    }
+
+    public void start() {
+        running = true;
+        selectorThread.start();
+        logger.info("Gate socket server listening on port " + port);
+    }
+
+    /**
+     * Stops accepting and reading, closes every connection and waits for the workers to finish the
+     * requests they are processing; their responses are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(5000);
+            workers.shutdown();
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Gate socket server stopped after " + requestCount.sum() + " requests");
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    private void select() {
+        try {
+            while (running) {
+                selector.select();
+                Connection updated;
+                while ((updated = updatedConnections.poll()) != null) {
+                    updated.updateInterest();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        try {
+                            accept();
+                        } catch (IOException e) {
+                            logger.error("Error accepting a gate connection", e);
+                        }
+                    } else if (key.isValid()) {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        } catch (IOException e) {
+                            logger.info("Closing gate connection " + connection.remoteAddress + ": " + e.getMessage());
+                            connection.close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            logger.error("Gate socket server selector failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.error("Error closing gate socket server", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        }
+    }
+
+    /**
+     * A decoded request; opcode 0 for a malformed one.
+     */
+    private static final class Request {
+        private final byte opcode;
+        private final int id;
+        private final ParkingType parkingType;
+        private final String vehicleRegNumber;
+
+        private Request(byte opcode, int id, ParkingType parkingType, String vehicleRegNumber) {
+            this.opcode = opcode;
+            this.id = id;
+            this.parkingType = parkingType;
+            this.vehicleRegNumber = vehicleRegNumber;
+        }
+    }
+
+    private final class Connection implements Runnable {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final String remoteAddress;
+        private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        // guarded by this
+        private final ArrayDeque<Request> queued = new ArrayDeque<>();
+        private ByteBuffer out = ByteBuffer.allocate(4096);
+        private boolean processing;
+        private boolean inputClosed;
+        private boolean closed;
+
+        private Connection(SocketChannel channel, SelectionKey key) throws IOException {
+            this.channel = channel;
+            this.key = key;
+            this.remoteAddress = String.valueOf(channel.getRemoteAddress());
+        }
+
+        /**
+         * Called on the selector thread: decodes the complete frames read and queues them for a worker.
+         */
+        private void read() throws IOException {
+            if (channel.read(in) < 0) {
+                synchronized (this) {
+                    inputClosed = true;
+                }
+                updateInterest();
+                return;
+            }
+            in.flip();
+            List<Request> requests = new ArrayList<>();
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < 1 + 4 || length > GateProtocol.MAX_REQUEST_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                if (in.remaining() < 4 + length) {
+                    break;
+                }
+                int end = in.position() + 4 + length;
+                in.position(in.position() + 4);
+                requests.add(decode(in, end));
+                in.position(end);
+            }
+            in.compact();
+            if (!requests.isEmpty()) {
+                requestCount.add(requests.size());
+                synchronized (this) {
+                    queued.addAll(requests);
+                    if (!processing) {
+                        processing = true;
+                        workers.execute(this);
+                    }
+                }
+                updateInterest();
+            }
+        }
+
+        /**
+         * Called on a worker: processes the queued requests in order, a batch at a time.
+         */
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Request[] batch;
+                    synchronized (this) {
+                        if (queued.isEmpty() || closed) {
+                            processing = false;
+                            break;
+                        }
+                        batch = queued.toArray(new Request[0]);
+                        queued.clear();
+                    }
+                    ByteBuffer responses = ByteBuffer.allocate(batch.length * (4 + GateProtocol.MAX_RESPONSE_LENGTH));
+                    for (Request request : batch) {
+                        respond(request, responses);
+                    }
+                    responses.flip();
+                    synchronized (this) {
+                        if (out.remaining() < responses.remaining()) {
+                            ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + responses.remaining()));
+                            out.flip();
+                            out = larger.put(out);
+                        }
+                        out.put(responses);
+                    }
+                    updatedConnections.add(this);
+                    selector.wakeup();
+                }
+            } catch (RuntimeException e) {
+                logger.error("Error processing requests of gate connection " + remoteAddress, e);
+                synchronized (this) {
+                    processing = false;
+                }
+                close();
+            }
+            updatedConnections.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Called on the selector thread: sends the pending responses.
+         */
+        private void write() throws IOException {
+            synchronized (this) {
+                out.flip();
+                try {
+                    channel.write(out);
+                } finally {
+                    out.compact();
+                }
+            }
+            updateInterest();
+        }
+
+        /**
+         * Called on the selector thread: reads while the backlog is small, writes while there are responses,
+         * and closes the connection once the client has stopped sending and every response is sent.
+         */
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            int ops;
+            boolean done;
+            synchronized (this) {
+                boolean pendingOutput = out.position() > 0;
+                done = inputClosed && !processing && queued.isEmpty() && !pendingOutput;
+                ops = (!inputClosed && queued.size() < MAX_QUEUED_REQUESTS ? SelectionKey.OP_READ : 0)
+                        | (pendingOutput ? SelectionKey.OP_WRITE : 0);
+            }
+            if (done) {
+                close();
+            } else {
+                key.interestOps(ops);
+            }
+        }
+
+        private void close() {
+            synchronized (this) {
+                closed = true;
+                queued.clear();
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Error closing gate connection " + remoteAddress, e);
+            }
+        }
+    }
+
+    private static Request decode(ByteBuffer in, int end) {
+        byte opcode = in.get();
+        int id = in.getInt();
+        ParkingType parkingType = null;
+        if (opcode == GateProtocol.ENTER || opcode == GateProtocol.QUERY) {
+            int type = in.position() < end ? in.get() : -1;
+            if (type < 0 || type >= PARKING_TYPES.length) {
+                return new Request((byte) 0, id, null, null);
+            }
+            parkingType = PARKING_TYPES[type];
+        } else if (opcode != GateProtocol.EXIT) {
+            return new Request((byte) 0, id, null, null);
+        }
+        String vehicleRegNumber = null;
+        if (opcode != GateProtocol.QUERY) {
+            int length = end - in.position() >= 2 ? in.getShort() : -1;
+            if (length < 1 || length > GateProtocol.MAX_PLATE_BYTES || in.position() + length > end) {
+                return new Request((byte) 0, id, null, null);
+            }
+            vehicleRegNumber = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        }
+        return new Request(opcode, id, parkingType, vehicleRegNumber);
+    }
+
+    private void respond(Request request, ByteBuffer responses) {
+        int start = responses.position();
+        responses.putInt(0).putInt(request.id);
+        try {
+            switch (request.opcode) {
+                case GateProtocol.ENTER:
+                    writeResult(parkingService.enter(request.vehicleRegNumber, request.parkingType), responses);
+                    break;
+                case GateProtocol.EXIT:
+                    writeResult(parkingService.exit(request.vehicleRegNumber), responses);
+                    break;
+                case GateProtocol.QUERY:
+                    responses.put(GateProtocol.STATUS_OK)
+                            .putInt(parkingStatistics.getOccupancy(request.parkingType))
+                            .putInt(Math.max(0, parkingSpotRepository.getNextAvailableSlot(request.parkingType)));
+                    break;
+                default:
+                    responses.put(GateProtocol.STATUS_BAD_REQUEST);
+            }
+        } catch (IllegalArgumentException e) {
+            responses.position(start + 8);
+            responses.put(GateProtocol.STATUS_BAD_REQUEST);
+        } catch (RuntimeException e) {
+            logger.error("Error processing gate request " + request.id, e);
+            responses.position(start + 8);
+            responses.put(GateProtocol.STATUS_FAILED);
+        }
+        responses.putInt(start, responses.position() - start - 4);
+    }
+
+    private static void writeResult(GateResult result, ByteBuffer responses) {
+        responses.put(GateProtocol.statusOf(result.getStatus()));
+        if (result.getStatus() == GateResult.Status.ENTERED) {
+            responses.putInt(result.getParkingSpot().getId())
+                    .putLong(result.getInTime().getTime())
+                    .put((byte) (result.isRecurrentCustomer() ? 1 : 0));
+        } else if (result.getStatus() == GateResult.Status.EXITED) {
+            responses.putInt(result.getParkingSpot().getId())
+                    .putLong(result.getOutTime().getTime())
+                    .putLong(CompactTicket.toCents(result.getPrice()));
+        }
+    }
+
+    /**
+     * Runs the app as a binary gate server instead of the interactive shell, on the port given by
+     * parkit.socket.port with parkit.socket.workers workers. The storage and tariff are configured as for
+     * the shell; they are closed on shutdown.
+     */
+    public static void serve() {
+        StorageConfig storageConfig = StorageConfig.fromSystemProperties();
+        TariffConfig tariffConfig = TariffConfig.fromSystemProperties();
+        ParkingService parkingService = storageConfig.newParkingService(null, tariffConfig.newFareCalculatorService());
+        GateSocketServer gateSocketServer;
+        try {
+            gateSocketServer = new GateSocketServer(parkingService, storageConfig.getParkingStatistics(),
+                    storageConfig.getParkingSpotRepository(),
+                    new InetSocketAddress(Integer.getInteger("parkit.socket.port", 9090)),
+                    Integer.getInteger("parkit.socket.workers", 16));
+        } catch (IOException e) {
+            tariffConfig.close();
+            storageConfig.close();
+            throw new IllegalStateException("Unable to start the gate socket server", e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            gateSocketServer.close();
+            tariffConfig.close();
+            storageConfig.close();
+        }, "gate-socket-shutdown"));
+        gateSocketServer.start();
+    }
+}
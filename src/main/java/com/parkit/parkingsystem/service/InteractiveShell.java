@@ -1,7 +1,7 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.config.StorageConfig;
+import com.parkit.parkingsystem.config.TariffConfig;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,9 +16,9 @@ public class InteractiveShell {
 
         boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
-        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
-        TicketDAO ticketDAO = new TicketDAO();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        StorageConfig storageConfig = StorageConfig.fromSystemProperties();
+        TariffConfig tariffConfig = TariffConfig.fromSystemProperties();
+        ParkingService parkingService = storageConfig.newParkingService(inputReaderUtil, tariffConfig.newFareCalculatorService());
 
         while(continueApp){
             loadMenu();
@@ -35,6 +35,8 @@ public class InteractiveShell {
                 case 3: {
                     System.out.println("Exiting from the system!");
                     continueApp = false;
+                    tariffConfig.close();
+                    storageConfig.close();
                     break;
                 }
                 default: System.out.println("Unsupported option. Please enter a number corresponding to the provided menu");
@@ -1,8 +1,12 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.config.UnitOfWork;
 import com.parkit.parkingsystem.constants.ParkingType;
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.AsyncStorage;
+import com.parkit.parkingsystem.dao.GateEventLog;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.GateResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
@@ -10,49 +14,99 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Service class to process incoming and exiting vehicles.
+ * The database writes of one entry or exit run as a single {@link UnitOfWork}.
+ * Committed entries and exits are counted in the {@link ParkingStatistics} and recorded in the
+ * {@link GateEventLog} when there is one.
+ * processIncomingVehicle and processExitingVehicle serve the interactive shell; enter and exit take
+ * their input as arguments, return a {@link GateResult} and can be called by several gates at once.
  */
 public class ParkingService {
 
     private static final Logger logger = LogManager.getLogger("ParkingService");
 
-    private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private final InputReaderUtil inputReaderUtil;
+    private final ParkingSpotRepository parkingSpotDAO;
+    private final TicketRepository ticketDAO;
+    private final UnitOfWork unitOfWork;
+    private final ParkingStatistics parkingStatistics;
+    private final FareCalculatorService fareCalculatorService;
+    private final AsyncStorage asyncStorage;
+    private final GateEventLog gateEventLog;
+    private final Set<String> vehiclesInProgress = ConcurrentHashMap.newKeySet();
 
-    private InputReaderUtil inputReaderUtil;
-    private ParkingSpotDAO parkingSpotDAO;
-    private  TicketDAO ticketDAO;
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotRepository parkingSpotDAO, TicketRepository ticketDAO){
+        this(inputReaderUtil, parkingSpotDAO, ticketDAO, new UnitOfWork(null));
+    }
+
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotRepository parkingSpotDAO, TicketRepository ticketDAO,
+                          UnitOfWork unitOfWork){
+        this(inputReaderUtil, parkingSpotDAO, ticketDAO, unitOfWork, new ParkingStatistics());
+    }
+
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotRepository parkingSpotDAO, TicketRepository ticketDAO,
+                          UnitOfWork unitOfWork, ParkingStatistics parkingStatistics){
+        this(inputReaderUtil, parkingSpotDAO, ticketDAO, unitOfWork, parkingStatistics, new FareCalculatorService());
+    }
+
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotRepository parkingSpotDAO, TicketRepository ticketDAO,
+                          UnitOfWork unitOfWork, ParkingStatistics parkingStatistics,
+                          FareCalculatorService fareCalculatorService){
+        this(inputReaderUtil, parkingSpotDAO, ticketDAO, unitOfWork, parkingStatistics, fareCalculatorService, null);
+    }
+
+    /**
+     * @param lookupExecutor database executor on which the visit count of a vehicle is fetched while its spot is
+     *                       claimed or its ticket read, null to run every call on the caller thread.
+     */
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotRepository parkingSpotDAO, TicketRepository ticketDAO,
+                          UnitOfWork unitOfWork, ParkingStatistics parkingStatistics,
+                          FareCalculatorService fareCalculatorService, Executor lookupExecutor){
+        this(inputReaderUtil, parkingSpotDAO, ticketDAO, unitOfWork, parkingStatistics, fareCalculatorService,
+                lookupExecutor, null);
+    }
 
-    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+    /**
+     * @param gateEventLog log in which committed entries and exits are recorded, null for none.
+     */
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotRepository parkingSpotDAO, TicketRepository ticketDAO,
+                          UnitOfWork unitOfWork, ParkingStatistics parkingStatistics,
+                          FareCalculatorService fareCalculatorService, Executor lookupExecutor,
+                          GateEventLog gateEventLog){
         this.inputReaderUtil = inputReaderUtil;
         this.parkingSpotDAO = parkingSpotDAO;
         this.ticketDAO = ticketDAO;
+        this.unitOfWork = unitOfWork;
+        this.parkingStatistics = parkingStatistics;
+        this.fareCalculatorService = fareCalculatorService;
+        this.asyncStorage = lookupExecutor == null ? null : new AsyncStorage(parkingSpotDAO, ticketDAO, lookupExecutor);
+        this.gateEventLog = gateEventLog;
     }
 
     /**
      * Processes an incoming vehicle by allocating a parking spot and generating a ticket.
+     * Allotting the spot and saving the ticket are committed together; if either fails,
+     * both are rolled back and the claimed spot is released.
      */
     public void processIncomingVehicle() {
         try{
             ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
             if(parkingSpot !=null && parkingSpot.getId() > 0){
-                String vehicleRegNumber = getVehicleRegNumber();
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark it's availability as false
-                boolean recurrentCustomer =ticketDAO.getNbTicket(vehicleRegNumber)>0;
-
-                Date inTime = new Date();
-                Ticket ticket = new Ticket();
-                //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-                //ticket.setId(ticketID);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
-                if (recurrentCustomer){
+                String vehicleRegNumber;
+                try {
+                    vehicleRegNumber = getVehicleRegNumber();
+                } catch (Exception e) {
+                    releaseParkingSpot(parkingSpot);
+                    throw e;
+                }
+                GateResult result = admit(parkingSpot, vehicleRegNumber, null);
+                if (result.isRecurrentCustomer()){
                     logger.info("Heureux de vous revoir ! En tant qu’utilisateur régulier de notre parking, vous allez obtenir une remise de 5 %");
                 }
                 else{
@@ -61,13 +115,100 @@ public class ParkingService {
 
                 logger.info("Generated Ticket and saved in DB");
                 logger.info("Please park your vehicle in spot number:"+parkingSpot.getId());
-                logger.info("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+inTime);
+                logger.info("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+result.getInTime());
             }
         }catch(Exception e){
             logger.error("Unable to process incoming vehicle",e);
         }
     }
 
+    /**
+     * Lets a vehicle in without reading the shell: claims a spot of the given type and opens its ticket.
+     * Safe to call from several threads; a vehicle already being processed by another gate is refused as BUSY.
+     * @param vehicleRegNumber registration number of the vehicle.
+     * @param parkingType type of spot to allot.
+     * @return ENTERED with the spot, FULL when no spot is free, BUSY or FAILED otherwise.
+     */
+    public GateResult enter(String vehicleRegNumber, ParkingType parkingType) {
+        checkVehicleRegNumber(vehicleRegNumber);
+        if (parkingType == null) {
+            throw new IllegalArgumentException("Parking type is required");
+        }
+        if (!vehiclesInProgress.add(vehicleRegNumber)) {
+            return GateResult.rejected(GateResult.Status.BUSY, vehicleRegNumber, "Vehicle is already at a gate");
+        }
+        try {
+            CompletableFuture<Integer> visitCount = countVisits(vehicleRegNumber);
+            int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(parkingType);
+            if (parkingNumber <= 0) {
+                return GateResult.rejected(GateResult.Status.FULL, vehicleRegNumber, "No free " + parkingType + " spot");
+            }
+            return admit(new ParkingSpot(parkingNumber, parkingType, true), vehicleRegNumber, visitCount);
+        } catch (Exception e) {
+            logger.error("Unable to process incoming vehicle " + vehicleRegNumber, e);
+            return GateResult.rejected(GateResult.Status.FAILED, vehicleRegNumber, e.getMessage());
+        } finally {
+            vehiclesInProgress.remove(vehicleRegNumber);
+        }
+    }
+
+    /**
+     * Allots a claimed spot to a vehicle and saves its ticket in one unit of work.
+     * The spot is released by a rollback callback of the unit if the entry is rolled back.
+     * @param parkingSpot spot claimed for the vehicle.
+     * @param vehicleRegNumber registration number of the vehicle.
+     * @param visitCount visit count of the vehicle being fetched, awaited before the unit of work starts;
+     *                   null to fetch it in the unit of work.
+     * @return the ENTERED result.
+     * @throws Exception if the entry could not be saved.
+     */
+    private GateResult admit(ParkingSpot parkingSpot, String vehicleRegNumber,
+                             CompletableFuture<Integer> visitCount) throws Exception {
+        parkingSpot.setAvailable(false);
+        Date inTime = new Date();
+        Integer fetchedVisits;
+        try {
+            // Joined before the unit of work borrows its connection: the lookup may need the last free one
+            fetchedVisits = visitCount != null ? visitCount.join() : null;
+        } catch (RuntimeException e) {
+            releaseParkingSpot(parkingSpot);
+            throw e;
+        }
+        return unitOfWork.execute(() -> {
+            if (!parkingSpotDAO.updateParking(parkingSpot)) {//allot this parking space and mark it's availability as false
+                throw new IllegalStateException("Unable to allot parking spot " + parkingSpot.getId());
+            }
+            int visits = fetchedVisits != null ? fetchedVisits : ticketDAO.getNbTicket(vehicleRegNumber);
+            boolean recurrent = visits>0;
+
+            Ticket ticket = new Ticket();
+            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+            //ticket.setId(ticketID);
+            ticket.setParkingSpot(parkingSpot);
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTime(inTime);
+            ticket.setOutTime(null);
+            if (ticketDAO.saveTicket(ticket) < 1) {
+                throw new IllegalStateException("Unable to save ticket of vehicle " + vehicleRegNumber);
+            }
+            UnitOfWork.afterCommit(() -> parkingStatistics.recordEntry(parkingSpot.getParkingType(), inTime));
+            if (gateEventLog != null) {
+                UnitOfWork.afterCommit(() -> gateEventLog.recordEntry(ticket));
+            }
+            return GateResult.entered(ticket, recurrent);
+        }, () -> releaseParkingSpot(parkingSpot));
+    }
+
+    /**
+     * Gives back a spot claimed by getNextParkingNumberIfAvailable when the entry cannot go on.
+     * @param parkingSpot the claimed spot.
+     */
+    private void releaseParkingSpot(ParkingSpot parkingSpot) {
+        parkingSpotDAO.releaseClaim(parkingSpot);
+        parkingSpot.setAvailable(true);
+    }
+
     /**
      * Gets the vehicle registration number from user input.
      * @return
@@ -78,7 +219,8 @@ public class ParkingService {
         return inputReaderUtil.readVehicleRegistrationNumber();
     }
 /**
-     * Retrieves the next available parking spot based on vehicle type.
+     * Claims the next available parking spot based on vehicle type.
+     * The spot is reserved for the caller, who must then allot it with updateParking or release it.
      * @return ParkingSpot object if available, null otherwise.
      */
     public ParkingSpot getNextParkingNumberIfAvailable(){
@@ -86,7 +228,7 @@ public class ParkingService {
         ParkingSpot parkingSpot = null;
         try{
             ParkingType parkingType = getVehicleType();
-            parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
+            parkingNumber = parkingSpotDAO.claimNextAvailableSlot(parkingType);
             if(parkingNumber > 0){
                 parkingSpot = new ParkingSpot(parkingNumber,parkingType, true);
             }else{
@@ -127,27 +269,18 @@ public class ParkingService {
 
     /**
      * Processes an exiting vehicle by calculating the fare and updating the ticket.
+     * The loyalty discount of the tariff depends on the vehicle's number of tickets.
+     * Closing the ticket and freeing the spot are committed together.
      */
     public void processExitingVehicle() {
         try{
             String vehicleRegNumber = getVehicleRegNumber();
-            boolean recurrentCustomer =ticketDAO.getNbTicket(vehicleRegNumber)>1;
-            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            Date outTime = new Date();
-            ticket.setOutTime(outTime);
-            if (recurrentCustomer) {
-                fareCalculatorService.calculateFare(ticket, true);
-            }
-            else {
-
-                fareCalculatorService.calculateFare(ticket);
-            }
-            if(ticketDAO.updateTicket(ticket)) {
-                ParkingSpot parkingSpot = ticket.getParkingSpot();
-                parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
-                logger.info("Please pay the parking fare:" + String.format("%.2f",ticket.getPrice()));
-                logger.info("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + (outTime));
+            GateResult result = release(vehicleRegNumber);
+            if(result.getStatus() == GateResult.Status.EXITED) {
+                logger.info("Please pay the parking fare:" + String.format("%.2f",result.getPrice()));
+                logger.info("Recorded out-time for vehicle number:" + result.getVehicleRegNumber() + " is:" + result.getOutTime());
+            }else if(result.getStatus() == GateResult.Status.NOT_PARKED){
+                logger.error("No vehicle parked with registration number:" + vehicleRegNumber);
             }else{
                 logger.info("Unable to update ticket information. Error occurred");
             }
@@ -155,4 +288,91 @@ public class ParkingService {
             logger.error("Unable to process exiting vehicle",e);
         }
     }
+
+    /**
+     * Lets a vehicle out without reading the shell: prices and closes its open ticket and frees its spot.
+     * Safe to call from several threads; a vehicle already being processed by another gate is refused as BUSY.
+     * @param vehicleRegNumber registration number of the vehicle.
+     * @return EXITED with the price, NOT_PARKED when the vehicle has no open ticket, BUSY or FAILED otherwise.
+     */
+    public GateResult exit(String vehicleRegNumber) {
+        checkVehicleRegNumber(vehicleRegNumber);
+        if (!vehiclesInProgress.add(vehicleRegNumber)) {
+            return GateResult.rejected(GateResult.Status.BUSY, vehicleRegNumber, "Vehicle is already at a gate");
+        }
+        try {
+            return release(vehicleRegNumber);
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicle " + vehicleRegNumber, e);
+            return GateResult.rejected(GateResult.Status.FAILED, vehicleRegNumber, e.getMessage());
+        } finally {
+            vehiclesInProgress.remove(vehicleRegNumber);
+        }
+    }
+
+    /**
+     * Reads and prices the open ticket of a vehicle, then closes it and frees its spot in one unit of work.
+     * If the ticket read turns out to be closed already, by another instance sharing the database, the vehicle's
+     * latest ticket is read again and, if it is another open ticket, priced and closed instead.
+     * @param vehicleRegNumber registration number of the vehicle.
+     * @return EXITED, NOT_PARKED, or FAILED when the ticket could not be updated.
+     * @throws Exception if the exit could not be saved.
+     */
+    private GateResult release(String vehicleRegNumber) throws Exception {
+        Date outTime = new Date();
+        CompletableFuture<Integer> visitCount = countVisits(vehicleRegNumber);
+        Ticket exitTicket = ticketDAO.getTicket(vehicleRegNumber);
+        if (exitTicket == null || exitTicket.getOutTime() != null) {
+            return GateResult.rejected(GateResult.Status.NOT_PARKED, vehicleRegNumber, "No open ticket");
+        }
+        // Joined before the unit of work borrows its connection: the lookup may need the last free one
+        int visits = visitCount != null ? visitCount.join() : ticketDAO.getNbTicket(vehicleRegNumber);
+        GateResult result = close(exitTicket, visits, outTime);
+        if (result.getStatus() == GateResult.Status.FAILED) {
+            Ticket current = ticketDAO.getTicket(vehicleRegNumber);
+            if (current != null && current.getOutTime() == null && current.getId() != exitTicket.getId()) {
+                result = close(current, visits, outTime);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Prices a ticket, then closes it and frees its spot in one unit of work.
+     * @return EXITED, or FAILED when the ticket could not be updated.
+     */
+    private GateResult close(Ticket exitTicket, int visits, Date outTime) throws Exception {
+        String vehicleRegNumber = exitTicket.getVehicleRegNumber();
+        exitTicket.setOutTime(outTime);
+        fareCalculatorService.calculateFare(exitTicket, visits);
+        return unitOfWork.execute(() -> {
+            if (!ticketDAO.updateTicket(exitTicket)) {
+                return GateResult.rejected(GateResult.Status.FAILED, vehicleRegNumber, "Unable to update ticket information");
+            }
+            ParkingSpot parkingSpot = exitTicket.getParkingSpot();
+            parkingSpot.setAvailable(true);
+            parkingSpotDAO.updateParking(parkingSpot);
+            UnitOfWork.afterCommit(() -> parkingStatistics.recordExit(exitTicket));
+            if (gateEventLog != null) {
+                UnitOfWork.afterCommit(() -> gateEventLog.recordExit(exitTicket));
+            }
+            return GateResult.exited(exitTicket);
+        });
+    }
+
+    /**
+     * Starts fetching the visit count of a vehicle on the lookup executor, so that it overlaps the spot claim
+     * or the ticket read. The count of past tickets does not need the caller's transaction, and the caller must
+     * not hold a connection while it waits for the count, or gates could take every connection of the pool.
+     * @return the visit count to come, or null without a lookup executor.
+     */
+    private CompletableFuture<Integer> countVisits(String vehicleRegNumber) {
+        return asyncStorage == null ? null : asyncStorage.getNbTicketAsync(vehicleRegNumber);
+    }
+
+    private static void checkVehicleRegNumber(String vehicleRegNumber) {
+        if (vehicleRegNumber == null || vehicleRegNumber.trim().length() == 0) {
+            throw new IllegalArgumentException("Invalid vehicle registration number");
+        }
+    }
 }
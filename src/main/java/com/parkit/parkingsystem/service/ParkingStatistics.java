@@ -0,0 +1,331 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingStatsDAO;
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.ParkingStats;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Revenue, visit, stay and occupancy figures per hour and ParkingType, updated by ParkingService
+ * on every committed entry and exit, so that dashboards read them instead of scanning the ticket table.
+ * Day figures are summed from the hours of the day. Hours without any entry or exit are not stored.
+ * With a {@link ParkingStatsDAO}, the figures added since the last {@link #flush()} are written to the
+ * parking_stats table, and {@link #load(Date, Date)} reads them back at startup.
+ * Revenue is counted in cents, so that summing many fares does not drift.
+ * Occupancy is counted by this instance from the open tickets found at startup; when several instances
+ * share the database, the peak occupancy of each is a lower bound.
+ */
+public class ParkingStatistics {
+
+    private static final Logger logger = LogManager.getLogger("ParkingStatistics");
+
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    private final ParkingStatsDAO parkingStatsDAO;
+    private final ZoneId zone;
+    private final ConcurrentSkipListMap<Long, Hour> hours = new ConcurrentSkipListMap<>();
+    private final AtomicInteger[] occupancy = new AtomicInteger[ParkingType.values().length];
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates in-memory statistics, lost on restart.
+     */
+    public ParkingStatistics() {
+        this(null, ZoneId.systemDefault());
+    }
+
+    /**
+     * @param parkingStatsDAO DAO storing the figures, or null to keep them in memory only.
+     * @param zone time zone in which days start.
+     */
+    public ParkingStatistics(ParkingStatsDAO parkingStatsDAO, ZoneId zone) {
+        this.parkingStatsDAO = parkingStatsDAO;
+        this.zone = zone;
+        for (int i = 0; i < occupancy.length; i++) {
+            occupancy[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Reads the stored figures of a period and the current occupancy. Called once at startup;
+     * does nothing when the figures are kept in memory only.
+     *
+     * @param from start of the period to load, inclusive.
+     * @param to end of the period to load, exclusive.
+     */
+    public void load(Date from, Date to) {
+        if (parkingStatsDAO == null) {
+            return;
+        }
+        for (ParkingStats stats : parkingStatsDAO.getHourlyStats(from, to)) {
+            Bucket bucket = hour(stats.getStart().getTime()).buckets[stats.getParkingType().ordinal()];
+            bucket.entries.add(stats.getEntries());
+            bucket.exits.add(stats.getExits());
+            bucket.revenueCents.add(stats.getRevenueCents());
+            bucket.stayMillis.add(stats.getStayMillis());
+            bucket.peakOccupancy.accumulateAndGet(stats.getPeakOccupancy(), Math::max);
+        }
+        for (Map.Entry<ParkingType, Integer> parked : parkingStatsDAO.getOccupancy().entrySet()) {
+            occupancy[parked.getKey().ordinal()].set(parked.getValue());
+        }
+        logger.info("Loaded parking stats of " + hours.size() + " hours");
+    }
+
+    /**
+     * Counts a vehicle admitted in the parking.
+     *
+     * @param parkingType type of the vehicle.
+     * @param inTime time it entered.
+     */
+    public void recordEntry(ParkingType parkingType, Date inTime) {
+        int parked = occupancy[parkingType.ordinal()].incrementAndGet();
+        Bucket bucket = hour(inTime.getTime()).buckets[parkingType.ordinal()];
+        bucket.entries.increment();
+        bucket.newEntries.incrementAndGet();
+        bucket.peakOccupancy.accumulateAndGet(parked, Math::max);
+        bucket.dirty.set(true);
+    }
+
+    /**
+     * Counts a priced ticket of a vehicle leaving the parking.
+     *
+     * @param ticket the closed ticket, with its price and out time.
+     */
+    public void recordExit(Ticket ticket) {
+        ParkingType parkingType = ticket.getParkingSpot().getParkingType();
+        occupancy[parkingType.ordinal()].updateAndGet(parked -> Math.max(0, parked - 1));
+        long stay = ticket.getOutTime().getTime() - ticket.getInTime().getTime();
+        long cents = CompactTicket.toCents(ticket.getPrice());
+        Bucket bucket = hour(ticket.getOutTime().getTime()).buckets[parkingType.ordinal()];
+        bucket.exits.increment();
+        bucket.newExits.incrementAndGet();
+        bucket.revenueCents.add(cents);
+        bucket.newRevenueCents.addAndGet(cents);
+        bucket.stayMillis.add(stay);
+        bucket.newStayMillis.addAndGet(stay);
+        bucket.dirty.set(true);
+    }
+
+    /**
+     * Returns the figures of each hour of a period with entries or exits of a parking type.
+     *
+     * @param from start of the period, inclusive.
+     * @param to end of the period, exclusive.
+     * @param parkingType type of vehicle.
+     * @return the hourly figures, oldest first.
+     */
+    public List<ParkingStats> getHours(Date from, Date to, ParkingType parkingType) {
+        List<ParkingStats> result = new ArrayList<>();
+        for (Map.Entry<Long, Hour> hour : hours.subMap(truncate(from.getTime()), to.getTime()).entrySet()) {
+            Bucket bucket = hour.getValue().buckets[parkingType.ordinal()];
+            if (bucket.entries.sum() > 0 || bucket.exits.sum() > 0) {
+                result.add(bucket.snapshot(hour.getKey(), parkingType));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sums the hours of a day.
+     *
+     * @param day the day, in this instance's time zone.
+     * @param parkingType type of vehicle.
+     * @return the day's figures; the peak occupancy is the highest of its hours.
+     */
+    public ParkingStats getDay(LocalDate day, ParkingType parkingType) {
+        long start = day.atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long entries = 0;
+        long exits = 0;
+        long revenueCents = 0;
+        long stayMillis = 0;
+        int peakOccupancy = 0;
+        for (Hour hour : hours.subMap(start, end).values()) {
+            Bucket bucket = hour.buckets[parkingType.ordinal()];
+            entries += bucket.entries.sum();
+            exits += bucket.exits.sum();
+            revenueCents += bucket.revenueCents.sum();
+            stayMillis += bucket.stayMillis.sum();
+            peakOccupancy = Math.max(peakOccupancy, bucket.peakOccupancy.get());
+        }
+        return new ParkingStats(new Date(start), parkingType, entries, exits, revenueCents, stayMillis,
+                peakOccupancy);
+    }
+
+    /**
+     * @param parkingType type of vehicle.
+     * @return the number of vehicles of that type parked right now.
+     */
+    public int getOccupancy(ParkingType parkingType) {
+        return occupancy[parkingType.ordinal()].get();
+    }
+
+    /**
+     * Writes the figures added since the last flush to the parking_stats table. Each pending figure is
+     * taken and zeroed in one step, so what is recorded meanwhile goes to the next flush.
+     *
+     * @return the number of hourly rows written.
+     */
+    public synchronized int flush() {
+        if (parkingStatsDAO == null) {
+            return 0;
+        }
+        List<ParkingStats> deltas = new ArrayList<>();
+        for (Map.Entry<Long, Hour> hour : hours.entrySet()) {
+            for (ParkingType parkingType : ParkingType.values()) {
+                Bucket bucket = hour.getValue().buckets[parkingType.ordinal()];
+                if (bucket.dirty.getAndSet(false)) {
+                    deltas.add(new ParkingStats(new Date(hour.getKey()), parkingType, bucket.newEntries.getAndSet(0),
+                            bucket.newExits.getAndSet(0), bucket.newRevenueCents.getAndSet(0),
+                            bucket.newStayMillis.getAndSet(0), bucket.peakOccupancy.get()));
+                }
+            }
+        }
+        try {
+            parkingStatsDAO.addHourlyStats(deltas);
+        } catch (RuntimeException e) {
+            restore(deltas);
+            throw e;
+        }
+        return deltas.size();
+    }
+
+    /**
+     * Forgets the hours before a date, once they are flushed.
+     *
+     * @param before hours starting before this date are dropped from memory.
+     */
+    public synchronized void prune(Date before) {
+        ConcurrentNavigableMap<Long, Hour> old = hours.headMap(before.getTime());
+        for (Map.Entry<Long, Hour> hour : old.entrySet()) {
+            boolean flushed = true;
+            for (Bucket bucket : hour.getValue().buckets) {
+                flushed &= !bucket.dirty.get();
+            }
+            if (flushed || parkingStatsDAO == null) {
+                hours.remove(hour.getKey());
+            }
+        }
+    }
+
+    /**
+     * Flushes periodically in a background thread, then forgets the hours older than the retention.
+     *
+     * @param periodMillis time between two flushes.
+     * @param retentionMillis how long hours are kept in memory.
+     */
+    public synchronized void start(long periodMillis, long retentionMillis) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "parking-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+                prune(new Date(System.currentTimeMillis() - retentionMillis));
+            } catch (Exception e) {
+                logger.error("Error flushing parking stats", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic flushes and writes what is left.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        flush();
+    }
+
+    /**
+     * Puts back deltas that could not be written, so the next flush sends them again.
+     */
+    private void restore(List<ParkingStats> deltas) {
+        for (ParkingStats delta : deltas) {
+            Bucket bucket = hour(delta.getStart().getTime()).buckets[delta.getParkingType().ordinal()];
+            bucket.newEntries.addAndGet(delta.getEntries());
+            bucket.newExits.addAndGet(delta.getExits());
+            bucket.newRevenueCents.addAndGet(delta.getRevenueCents());
+            bucket.newStayMillis.addAndGet(delta.getStayMillis());
+            bucket.dirty.set(true);
+        }
+    }
+
+    private Hour hour(long time) {
+        long start = truncate(time);
+        Hour hour = hours.get(start);
+        if (hour == null) {
+            Hour created = new Hour();
+            for (ParkingType parkingType : ParkingType.values()) {
+                created.buckets[parkingType.ordinal()].peakOccupancy.set(occupancy[parkingType.ordinal()].get());
+            }
+            hour = hours.putIfAbsent(start, created);
+            if (hour == null) {
+                hour = created;
+            }
+        }
+        return hour;
+    }
+
+    private static long truncate(long time) {
+        return Math.floorDiv(time, HOUR_MILLIS) * HOUR_MILLIS;
+    }
+
+    /**
+     * The figures of one hour, per parking type.
+     */
+    private static final class Hour {
+        private final Bucket[] buckets = new Bucket[ParkingType.values().length];
+
+        private Hour() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+    }
+
+    /**
+     * The figures of one hour and parking type: totals, and what was added since the last flush.
+     * The pending figures are atomic longs rather than adders, since a flush must read and zero them at once.
+     */
+    private static final class Bucket {
+        private final LongAdder entries = new LongAdder();
+        private final LongAdder exits = new LongAdder();
+        private final LongAdder revenueCents = new LongAdder();
+        private final LongAdder stayMillis = new LongAdder();
+        private final AtomicInteger peakOccupancy = new AtomicInteger();
+        private final AtomicLong newEntries = new AtomicLong();
+        private final AtomicLong newExits = new AtomicLong();
+        private final AtomicLong newRevenueCents = new AtomicLong();
+        private final AtomicLong newStayMillis = new AtomicLong();
+        private final AtomicBoolean dirty = new AtomicBoolean();
+
+        private ParkingStats snapshot(long start, ParkingType parkingType) {
+            return new ParkingStats(new Date(start), parkingType, entries.sum(), exits.sum(),
+                    revenueCents.sum(), stayMillis.sum(), peakOccupancy.get());
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.TicketBatch;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Job recomputing the price of the tickets closed in a period with the tariff in force, after a tariff
+ * dispute or correction. Tickets are streamed from MySQL in chunks, each chunk is priced in parallel on a
+ * fork-join pool, and the prices that differ are written back in JDBC batches, one unit of work per chunk.
+ * A dry run only reports what would change. The whole run uses the tariff in force when it starts.
+ * Archived tickets are not repriced.
+ */
+public class RepricingJob {
+
+    private static final Logger logger = LogManager.getLogger("RepricingJob");
+
+    private static final int MAX_SAMPLES = 100;
+
+    private final TicketDAO ticketDAO;
+    private final FareCalculatorService fareCalculatorService;
+    private final UnitOfWork unitOfWork;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int jdbcBatchSize;
+    private volatile long rowsScanned;
+
+    /**
+     * Prices on the common fork-join pool, which has one worker per core but one.
+     */
+    public RepricingJob(TicketDAO ticketDAO, FareCalculatorService fareCalculatorService, int chunkSize, int jdbcBatchSize) {
+        this(ticketDAO, fareCalculatorService, ForkJoinPool.commonPool(), chunkSize, jdbcBatchSize);
+    }
+
+    /**
+     * @param ticketDAO DAO of the ticket table.
+     * @param fareCalculatorService calculator giving the tariff to apply.
+     * @param pool pool pricing each chunk.
+     * @param chunkSize number of tickets read, priced and written together.
+     * @param jdbcBatchSize maximum number of updates sent to MySQL at once.
+     */
+    public RepricingJob(TicketDAO ticketDAO, FareCalculatorService fareCalculatorService, ForkJoinPool pool,
+                        int chunkSize, int jdbcBatchSize) {
+        this.ticketDAO = ticketDAO;
+        this.fareCalculatorService = fareCalculatorService;
+        this.unitOfWork = new UnitOfWork(ticketDAO.dataBaseConfig);
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.jdbcBatchSize = jdbcBatchSize;
+    }
+
+    /**
+     * Reprices the tickets whose out time is in [from, to).
+     *
+     * @param from start of the period, inclusive.
+     * @param to end of the period, exclusive.
+     * @param dryRun true to only report the differences.
+     * @return what changed, or would change on a dry run.
+     */
+    public synchronized Report run(Date from, Date to, boolean dryRun) {
+        TariffTable tariff = fareCalculatorService.getTariff();
+        FareCalculatorService pinnedCalculator = new FareCalculatorService(() -> tariff);
+        TicketBatch batch = new TicketBatch(chunkSize);
+        long[] fareCents = new long[chunkSize];
+        int[] changed = new int[chunkSize];
+        Report report = new Report(dryRun);
+        long start = System.nanoTime();
+        rowsScanned = 0;
+        ticketDAO.scanTicketsToReprice(from, to, batch, tickets -> {
+            pinnedCalculator.calculateFares(tickets, fareCents, pool);
+            int count = 0;
+            for (int i = 0; i < tickets.size(); i++) {
+                long oldCents = CompactTicket.toCents(tickets.getPrice(i));
+                report.oldTotalCents += oldCents;
+                report.newTotalCents += fareCents[i];
+                if (oldCents != fareCents[i]) {
+                    changed[count++] = i;
+                    if (report.samples.size() < MAX_SAMPLES) {
+                        report.samples.add(new Change(tickets.getId(i), oldCents, fareCents[i]));
+                    }
+                }
+            }
+            report.changed += count;
+            if (!dryRun && count > 0) {
+                report.updated += writeChunk(tickets, changed, fareCents, count);
+            }
+            rowsScanned += tickets.size();
+            report.rows = rowsScanned;
+            report.elapsedNanos = System.nanoTime() - start;
+            logger.info("Repriced " + report.rows + " tickets, " + report.changed + " changed, "
+                    + report.getRowsPerSecond() + " rows/s");
+        });
+        report.elapsedNanos = System.nanoTime() - start;
+        logger.info((dryRun ? "Dry run: " : "") + "repriced " + report.rows + " tickets closed between " + from + " and " + to
+                + " in " + report.getElapsedMillis() + " ms, " + report.getRowsPerSecond() + " rows/s; "
+                + report.changed + " prices differ, " + report.updated + " updated, revenue "
+                + report.oldTotalCents / 100.0 + " -> " + report.newTotalCents / 100.0);
+        return report;
+    }
+
+    /**
+     * @return the number of tickets priced so far by the current or last run, for progress monitoring.
+     */
+    public long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    private int writeChunk(TicketBatch tickets, int[] changed, long[] fareCents, int count) {
+        try {
+            return unitOfWork.execute(() -> ticketDAO.updatePrices(tickets, changed, fareCents, count, jdbcBatchSize));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error writing repriced tickets", e);
+        }
+    }
+
+    /**
+     * A ticket whose price differs under the new tariff.
+     */
+    public static final class Change {
+        private final int ticketId;
+        private final long oldCents;
+        private final long newCents;
+
+        private Change(int ticketId, long oldCents, long newCents) {
+            this.ticketId = ticketId;
+            this.oldCents = oldCents;
+            this.newCents = newCents;
+        }
+
+        public int getTicketId() {
+            return ticketId;
+        }
+
+        public long getOldCents() {
+            return oldCents;
+        }
+
+        public long getNewCents() {
+            return newCents;
+        }
+    }
+
+    /**
+     * Outcome of a run.
+     */
+    public static final class Report {
+        private final boolean dryRun;
+        private final List<Change> samples = new ArrayList<>();
+        private long rows;
+        private long changed;
+        private long updated;
+        private long oldTotalCents;
+        private long newTotalCents;
+        private long elapsedNanos;
+
+        private Report(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        public boolean isDryRun() {
+            return dryRun;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the number of tickets whose price differs under the new tariff.
+         */
+        public long getChanged() {
+            return changed;
+        }
+
+        /**
+         * @return the number of tickets written; fewer than changed when prices moved during the run.
+         */
+        public long getUpdated() {
+            return updated;
+        }
+
+        public long getOldTotalCents() {
+            return oldTotalCents;
+        }
+
+        public long getNewTotalCents() {
+            return newTotalCents;
+        }
+
+        /**
+         * @return the first changes found, at most 100.
+         */
+        public List<Change> getSamples() {
+            return Collections.unmodifiableList(samples);
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        public long getRowsPerSecond() {
+            return elapsedNanos == 0 ? rows : rows * 1_000_000_000L / elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Immutable parking tariff, compiled from a properties file into flat tables so that a stay
+ * is priced in constant time with long arithmetic in cents:
+ * <pre>
+ * free.minutes=30            # stays up to this long are free
+ * rate.CAR=150               # cents per hour, for every ParkingType
+ * rate.BIKE=100
+ * band.night.hours=20-8      # optional time band, local hours [start, end), may wrap midnight;
+ *                            # bands must not overlap, and start = end is the whole day
+ * band.night.rate.CAR=100    # rate of the band, per ParkingType
+ * cap.CAR=2000               # optional maximum fare per 24 hours of parking, in cents
+ * loyalty.2=5                # discount percent from the given number of visits, this one included
+ * loyalty.10=10
+ * timezone=Europe/Paris      # zone of the band hours, the system one by default
+ * </pre>
+ * Band hours follow the local clock at entry time; a stay across a daylight saving change keeps that offset.
+ * The fare is rounded half up to the cent, then the loyalty discount is applied and rounded half up again.
+ */
+public final class TariffTable {
+
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    /**
+     * The tariff of the {@link Fare} constants: 30 free minutes, then a flat hourly rate, 5 % off from the second visit.
+     */
+    public static final TariffTable DEFAULT = compile(defaultProperties());
+
+    private final long freeMillis;
+    private final TimeZone timeZone;
+    /** Cents per hour, per ParkingType ordinal and local hour of the day. */
+    private final long[][] hourlyRates;
+    /** Cost of the hours before each hour of the day, in cent-milliseconds per hour; index 24 is a full day. */
+    private final long[][] costBeforeHour;
+    /** Cap per 24 hours in cent-milliseconds per hour, Long.MAX_VALUE when uncapped. */
+    private final long[] dailyCaps;
+    /** Discount percent per number of visits; the last entry applies to every higher count. */
+    private final int[] discountByVisits;
+
+    private TariffTable(long freeMillis, TimeZone timeZone, long[][] hourlyRates, long[] dailyCaps, int[] discountByVisits) {
+        this.freeMillis = freeMillis;
+        this.timeZone = timeZone;
+        this.hourlyRates = hourlyRates;
+        this.dailyCaps = dailyCaps;
+        this.discountByVisits = discountByVisits;
+        this.costBeforeHour = new long[hourlyRates.length][25];
+        for (int type = 0; type < hourlyRates.length; type++) {
+            for (int hour = 0; hour < 24; hour++) {
+                costBeforeHour[type][hour + 1] = costBeforeHour[type][hour] + hourlyRates[type][hour] * MILLIS_PER_HOUR;
+            }
+        }
+    }
+
+    /**
+     * Compiles a tariff.
+     *
+     * @param properties the tariff definition, see the class documentation.
+     * @return the compiled tariff.
+     * @throws IllegalArgumentException if the definition is incomplete or invalid.
+     */
+    public static TariffTable compile(Properties properties) {
+        ParkingType[] parkingTypes = ParkingType.values();
+        long[][] hourlyRates = new long[parkingTypes.length][24];
+        long[] dailyCaps = new long[parkingTypes.length];
+        boolean[][] banded = new boolean[parkingTypes.length][24];
+        for (ParkingType parkingType : parkingTypes) {
+            String rate = properties.getProperty("rate." + parkingType);
+            if (rate == null) {
+                throw new IllegalArgumentException("No rate for " + parkingType);
+            }
+            Arrays.fill(hourlyRates[parkingType.ordinal()], parseCents("rate." + parkingType, rate));
+            String cap = properties.getProperty("cap." + parkingType);
+            dailyCaps[parkingType.ordinal()] = cap == null ? Long.MAX_VALUE
+                    : parseCents("cap." + parkingType, cap) * MILLIS_PER_HOUR;
+        }
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith("band.") && name.endsWith(".hours")) {
+                String band = name.substring(0, name.length() - ".hours".length());
+                String[] hours = properties.getProperty(name).trim().split("-");
+                if (hours.length != 2) {
+                    throw new IllegalArgumentException("Invalid hours for " + band + ": " + properties.getProperty(name));
+                }
+                int start = parseHour(band, hours[0]);
+                int end = parseHour(band, hours[1]);
+                for (ParkingType parkingType : parkingTypes) {
+                    String rate = properties.getProperty(band + ".rate." + parkingType);
+                    if (rate == null) {
+                        continue;
+                    }
+                    long cents = parseCents(band + ".rate." + parkingType, rate);
+                    int hour = start;
+                    do {
+                        if (banded[parkingType.ordinal()][hour]) {
+                            throw new IllegalArgumentException("Overlapping bands at hour " + hour + " for " + parkingType);
+                        }
+                        banded[parkingType.ordinal()][hour] = true;
+                        hourlyRates[parkingType.ordinal()][hour] = cents;
+                        hour = (hour + 1) % 24;
+                    } while (hour != end);
+                }
+            }
+        }
+        TreeMap<Integer, Integer> tiers = new TreeMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith("loyalty.")) {
+                int visits = parseInt(name, name.substring("loyalty.".length()));
+                int percent = parseInt(name, properties.getProperty(name));
+                if (visits < 1 || percent < 0 || percent > 100) {
+                    throw new IllegalArgumentException("Invalid loyalty tier " + name + "=" + percent);
+                }
+                tiers.put(visits, percent);
+            }
+        }
+        int[] discountByVisits = new int[tiers.isEmpty() ? 1 : tiers.lastKey() + 1];
+        for (Map.Entry<Integer, Integer> tier : tiers.entrySet()) {
+            for (int visits = tier.getKey(); visits < discountByVisits.length; visits++) {
+                discountByVisits[visits] = tier.getValue();
+            }
+        }
+        long freeMinutes = parseInt("free.minutes", properties.getProperty("free.minutes", "0"));
+        String zone = properties.getProperty("timezone");
+        return new TariffTable(freeMinutes * 60_000L, zone == null ? TimeZone.getDefault() : TimeZone.getTimeZone(zone),
+                hourlyRates, dailyCaps, discountByVisits);
+    }
+
+    /**
+     * Prices a stay.
+     *
+     * @param inTimeMillis entry time, in epoch milliseconds.
+     * @param outTimeMillis exit time, in epoch milliseconds.
+     * @param parkingType type of the vehicle; null throws a NullPointerException.
+     * @param visits number of visits of the vehicle, this one included.
+     * @return the fare in cents.
+     */
+    public long price(long inTimeMillis, long outTimeMillis, ParkingType parkingType, int visits) {
+        int type = parkingType.ordinal();
+        long duration = outTimeMillis - inTimeMillis;
+        if (duration < 0) {
+            throw new IllegalArgumentException("Out time provided is incorrect:" + outTimeMillis);
+        }
+        if (duration <= freeMillis) {
+            return 0;
+        }
+        long cap = dailyCaps[type];
+        long[] costBefore = costBeforeHour[type];
+        long fullDays = duration / MILLIS_PER_DAY;
+        long start = Math.floorMod(inTimeMillis + timeZone.getOffset(inTimeMillis), MILLIS_PER_DAY);
+        long end = start + duration % MILLIS_PER_DAY;
+        long lastDayCost = costSince(type, end) - costSince(type, start);
+        long cost = fullDays * Math.min(costBefore[24], cap) + Math.min(lastDayCost, cap);
+        long fareCents = roundHalfUp(cost, MILLIS_PER_HOUR);
+        int discount = getDiscountPercent(visits);
+        if (discount > 0) {
+            fareCents = roundHalfUp(fareCents * (100 - discount), 100);
+        }
+        return fareCents;
+    }
+
+    /**
+     * @return the discount percent given from a number of visits, this one included.
+     */
+    public int getDiscountPercent(int visits) {
+        return discountByVisits[Math.min(Math.max(visits, 0), discountByVisits.length - 1)];
+    }
+
+    /**
+     * @param parkingType type of vehicle.
+     * @param hour local hour of the day.
+     * @return the rate in cents per hour.
+     */
+    public long getHourlyRate(ParkingType parkingType, int hour) {
+        return hourlyRates[parkingType.ordinal()][hour];
+    }
+
+    /**
+     * Cost from local midnight to a time of the day, which may run into the next day.
+     */
+    private long costSince(int type, long millisOfDay) {
+        long dayCost = 0;
+        if (millisOfDay >= MILLIS_PER_DAY) {
+            dayCost = costBeforeHour[type][24];
+            millisOfDay -= MILLIS_PER_DAY;
+        }
+        int hour = (int) (millisOfDay / MILLIS_PER_HOUR);
+        return dayCost + costBeforeHour[type][hour] + hourlyRates[type][hour] * (millisOfDay - hour * MILLIS_PER_HOUR);
+    }
+
+    /**
+     * @return numerator / denominator rounded half up, for a non-negative numerator.
+     */
+    private static long roundHalfUp(long numerator, long denominator) {
+        return numerator / denominator + (numerator % denominator * 2 >= denominator ? 1 : 0);
+    }
+
+    private static Properties defaultProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("free.minutes", "30");
+        properties.setProperty("rate.CAR", Long.toString(Fare.CAR_RATE_PER_HOUR_CENTS));
+        properties.setProperty("rate.BIKE", Long.toString(Fare.BIKE_RATE_PER_HOUR_CENTS));
+        properties.setProperty("loyalty.2", "5");
+        return properties;
+    }
+
+    private static long parseCents(String name, String value) {
+        long cents = parseInt(name, value);
+        if (cents < 0) {
+            throw new IllegalArgumentException("Negative amount for " + name + ": " + value);
+        }
+        return cents;
+    }
+
+    private static int parseHour(String band, String value) {
+        int hour = parseInt(band + ".hours", value);
+        if (hour < 0 || hour > 23) {
+            throw new IllegalArgumentException("Invalid hour for " + band + ": " + value);
+        }
+        return hour;
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value, e);
+        }
+    }
+}
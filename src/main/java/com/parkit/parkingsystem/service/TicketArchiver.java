@@ -0,0 +1,111 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.dao.TicketArchive;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Job moving closed tickets older than a maximum age from MySQL to the {@link TicketArchive},
+ * so the ticket table only holds recent tickets.
+ * Each batch is one unit of work: the tickets are locked, written to staged archive segments,
+ * deleted from MySQL, and the segments are published once the deletion commits.
+ */
+public class TicketArchiver {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiver");
+
+    private final TicketDAO ticketDAO;
+    private final TicketArchive archive;
+    private final UnitOfWork unitOfWork;
+    private final long maxAgeMillis;
+    private final int batchSize;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param ticketDAO DAO of the ticket table.
+     * @param archive archive receiving the tickets.
+     * @param maxAgeMillis how long after its out time a ticket stays in MySQL.
+     * @param batchSize maximum number of tickets moved per transaction.
+     */
+    public TicketArchiver(TicketDAO ticketDAO, TicketArchive archive, long maxAgeMillis, int batchSize) {
+        this.ticketDAO = ticketDAO;
+        this.archive = archive;
+        this.unitOfWork = new UnitOfWork(ticketDAO.dataBaseConfig);
+        this.maxAgeMillis = maxAgeMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Moves every ticket closed before the cutoff to the archive.
+     *
+     * @return the number of tickets archived.
+     * @throws Exception if a batch fails; the batches before it stay archived.
+     */
+    public synchronized int archive() throws Exception {
+        Date closedBefore = new Date(System.currentTimeMillis() - maxAgeMillis);
+        int total = 0;
+        int archived;
+        do {
+            archived = unitOfWork.execute(() -> {
+                List<Ticket> tickets = ticketDAO.getTicketsToArchive(closedBefore, batchSize);
+                if (tickets.isEmpty()) {
+                    return 0;
+                }
+                List<Path> staged = archive.stage(tickets);
+                UnitOfWork.afterRollback(() -> archive.discard(staged));
+                UnitOfWork.afterCommit(() -> archive.publish(staged));
+                ticketDAO.deleteArchivedTickets(tickets);
+                return tickets.size();
+            });
+            total += archived;
+        } while (archived == batchSize);
+        logger.info("Archived " + total + " tickets closed before " + closedBefore);
+        return total;
+    }
+
+    /**
+     * Settles the segments a crash left in staging, then runs the job periodically in a background thread.
+     *
+     * @param periodMillis time between two runs.
+     * @throws Exception if the staged segments cannot be settled.
+     */
+    public synchronized void start(long periodMillis) throws Exception {
+        archive.recover(ticketDAO);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ticket-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archive();
+            } catch (Exception e) {
+                logger.error("Error archiving tickets", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic runs.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public TicketArchive getArchive() {
+        return archive;
+    }
+}
@@ -0,0 +1,51 @@
+package com.parkit.parkingsystem.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21 from code compiled for Java 8.
+ */
+public final class VirtualThreads {
+
+    private static final ThreadFactory FACTORY = lookupFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the runtime has virtual threads.
+     */
+    public static boolean isSupported() {
+        return FACTORY != null;
+    }
+
+    /**
+     * A factory of virtual threads when the runtime has them, of daemon platform threads otherwise.
+     * @return the thread factory.
+     */
+    public static ThreadFactory factory() {
+        if (FACTORY != null) {
+            return FACTORY;
+        }
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Thread.ofVirtual().factory(), looked up by reflection.
+     * @return the factory, or null when the runtime has no virtual threads.
+     */
+    private static ThreadFactory lookupFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.SpotRef;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CompactTicket and SpotRef.
+ * @see CompactTicket
+ */
+class CompactTicketTest {
+
+    @Test
+    void convertsToAndFromTicket() {
+        //Given
+        Ticket ticket = new Ticket();
+        ticket.setId(7);
+        ticket.setParkingSpot(new ParkingSpot(2, ParkingType.BIKE, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setPrice(1.125);
+        ticket.setInTime(new Date(1_000_000L));
+        ticket.setOutTime(null);
+
+        //When
+        CompactTicket compact = CompactTicket.of(ticket);
+        Ticket converted = compact.toTicket();
+
+        //Then
+        assertTrue(compact.isOpen());
+        assertEquals(113, compact.getPriceCents());
+        assertEquals(7, converted.getId());
+        assertEquals(ticket.getParkingSpot(), converted.getParkingSpot());
+        assertEquals(ParkingType.BIKE, converted.getParkingSpot().getParkingType());
+        assertEquals("ABCDEF", converted.getVehicleRegNumber());
+        assertEquals(1.13, converted.getPrice());
+        assertEquals(ticket.getInTime(), converted.getInTime());
+        assertNull(converted.getOutTime());
+    }
+
+    @Test
+    void spotReferencesAreShared() {
+        assertSame(SpotRef.of(1, ParkingType.CAR), SpotRef.of(new ParkingSpot(1, ParkingType.CAR, true)));
+        assertNotSame(SpotRef.of(1, ParkingType.CAR), SpotRef.of(1, ParkingType.BIKE));
+        assertEquals(SpotRef.of(100_000, ParkingType.CAR), SpotRef.of(100_000, ParkingType.CAR));
+    }
+}
@@ -0,0 +1,186 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the connection pool and its per-connection statement cache.
+ */
+class ConnectionPoolTest {
+
+    private static final String QUERY = "select PARKING_NUMBER from parking where TYPE = ?";
+
+    private FakeJdbc database;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUpPerTest() {
+        database = new FakeJdbc((sql, parameters) -> sql.startsWith("select")
+                ? FakeJdbc.rows(new Object[]{1}, new Object[]{2}) : (Object) 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void borrowTimesOutWhenEveryConnectionIsLeased() throws SQLException {
+        //Given a pool of one connection, leased
+        pool = newPool(1, 0);
+        Connection connection = pool.borrow();
+
+        //When another caller borrows
+        long start = System.nanoTime();
+        assertThrows(SQLTimeoutException.class, pool::borrow);
+
+        //Then it waited for the borrow timeout without opening a second connection
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+        assertEquals(1, database.connectionsOpened.get());
+        connection.close();
+    }
+
+    @Test
+    void closingTheLeaseReturnsTheConnection() throws SQLException {
+        //Given a leased connection left in a transaction
+        pool = newPool(1, 0);
+        Connection connection = pool.borrow();
+        connection.setAutoCommit(false);
+
+        //When the borrower closes it
+        connection.close();
+
+        //Then the transaction is rolled back and the physical connection is kept for the next borrower
+        assertEquals(1, database.rollbacks.get());
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, () -> connection.prepareStatement(QUERY));
+        Connection next = pool.borrow();
+        assertTrue(next.getAutoCommit());
+        assertEquals(1, database.connectionsOpened.get());
+        assertEquals(0, database.connectionsClosed.get());
+        next.close();
+    }
+
+    @Test
+    void secondCloseOfALeaseIsIgnored() throws SQLException {
+        //Given a pool of one connection whose lease is closed twice
+        pool = newPool(1, 0);
+        Connection connection = pool.borrow();
+        connection.close();
+        connection.close();
+
+        //When the connection is borrowed again
+        Connection next = pool.borrow();
+
+        //Then the pool still lends a single connection at a time
+        assertEquals(1, pool.getActiveCount());
+        assertThrows(SQLTimeoutException.class, pool::borrow);
+        assertEquals(1, database.connectionsOpened.get());
+        next.close();
+    }
+
+    @Test
+    void idleConnectionsAreEvictedDownToMinIdle() throws Exception {
+        //Given three connections leased at once, then returned, with an idle timeout of 50 ms and minIdle 1
+        pool = new ConnectionPool(database.getUrl(), "user", "password", 1, 3, 50, 0, 200, 0);
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        Connection third = pool.borrow();
+        first.close();
+        second.close();
+        third.close();
+        assertTrue(pool.getTotalCount() >= 3);
+
+        //When the housekeeping runs
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getTotalCount() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        //Then the idle connections above minIdle are closed
+        assertEquals(1, pool.getTotalCount());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(database.connectionsOpened.get() - 1, database.connectionsClosed.get());
+    }
+
+    @Test
+    void closedStatementCannotTouchTheNextLease() throws SQLException {
+        //Given a cached statement closed twice by its first user, then prepared again
+        pool = newPool(1, 4);
+        Connection connection = pool.borrow();
+        PreparedStatement first = connection.prepareStatement(QUERY);
+        first.setString(1, "CAR");
+        first.executeQuery();
+        first.close();
+        PreparedStatement second = connection.prepareStatement(QUERY);
+        first.close();
+
+        //Then the statement is prepared once, and only the second handle can use it
+        assertEquals(1, database.statementsPrepared.get());
+        assertEquals(1, pool.getStatementCacheHits());
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, first::executeQuery);
+        assertThrows(SQLException.class, first::clearParameters);
+        assertFalse(second.isClosed());
+        second.setString(1, "BIKE");
+        assertTrue(second.executeQuery().next());
+        connection.close();
+    }
+
+    @Test
+    void checkInClosesTheResultSetAndClearsTheBatch() throws SQLException {
+        //Given a cached statement with an open result set and a pending batch
+        pool = newPool(1, 4);
+        Connection connection = pool.borrow();
+        PreparedStatement statement = connection.prepareStatement(QUERY);
+        statement.executeQuery();
+        statement.setString(1, "CAR");
+        statement.addBatch();
+
+        //When its user closes it
+        statement.close();
+
+        //Then the next user finds it clean, prepared only once
+        assertEquals(1, database.resultSetsClosed.get());
+        assertEquals(1, database.batchesCleared.get());
+        assertEquals(0, database.statementsClosed.get());
+        connection.close();
+    }
+
+    @Test
+    void statementLeftOpenIsHandedBackWithItsConnection() throws SQLException {
+        //Given a statement its user forgot to close
+        pool = newPool(1, 4);
+        Connection connection = pool.borrow();
+        PreparedStatement forgotten = connection.prepareStatement(QUERY);
+
+        //When the connection goes back to the pool and is borrowed again
+        connection.close();
+        Connection next = pool.borrow();
+        PreparedStatement statement = next.prepareStatement(QUERY);
+
+        //Then the forgotten handle is dead and the statement is reused
+        assertTrue(forgotten.isClosed());
+        assertThrows(SQLException.class, forgotten::executeQuery);
+        assertEquals(1, database.statementsPrepared.get());
+        assertTrue(statement.executeQuery().next());
+        next.close();
+    }
+
+    private ConnectionPool newPool(int maxSize, int statementCacheSize) {
+        return new ConnectionPool(database.getUrl(), "user", "password", 0, maxSize, 300_000, 0, 200,
+                statementCacheSize);
+    }
+}
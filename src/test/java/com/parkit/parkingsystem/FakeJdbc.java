@@ -0,0 +1,433 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Scripted JDBC driver for unit tests. Each statement executed on its connections is answered by a
+ * {@link Handler} given the SQL and its parameters, and the calls are counted, so DAOs and the
+ * connection pool can be tested without MySQL. Connections are reachable through {@link #getUrl()}
+ * with DriverManager, or through the pool of {@link #newDataBaseConfig(int)}.
+ */
+class FakeJdbc {
+
+    /**
+     * Answers a statement: an Integer update count, or {@link Rows} for a query.
+     */
+    interface Handler {
+        Object execute(String sql, List<Object> parameters) throws SQLException;
+    }
+
+    /**
+     * Result of a query: named columns and rows of values.
+     */
+    static final class Rows {
+        private final List<String> columns;
+        private final List<Object[]> rows;
+
+        private Rows(List<String> columns, List<Object[]> rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    private static final Map<String, FakeJdbc> databases = new ConcurrentHashMap<>();
+    private static final AtomicInteger databaseCount = new AtomicInteger();
+
+    static {
+        try {
+            DriverManager.registerDriver(new FakeDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String url = "jdbc:fake:db" + databaseCount.incrementAndGet();
+    private final Handler handler;
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger connectionsOpened = new AtomicInteger();
+    final AtomicInteger connectionsClosed = new AtomicInteger();
+    final AtomicInteger statementsPrepared = new AtomicInteger();
+    final AtomicInteger statementsClosed = new AtomicInteger();
+    final AtomicInteger resultSetsClosed = new AtomicInteger();
+    final AtomicInteger batchesCleared = new AtomicInteger();
+    final AtomicInteger commits = new AtomicInteger();
+    final AtomicInteger rollbacks = new AtomicInteger();
+
+    FakeJdbc(Handler handler) {
+        this.handler = handler;
+        databases.put(url, this);
+    }
+
+    static Rows rows(Object[]... rows) {
+        return new Rows(Collections.emptyList(), Arrays.asList(rows));
+    }
+
+    static Rows namedRows(String[] columns, Object[]... rows) {
+        return new Rows(Arrays.asList(columns), Arrays.asList(rows));
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the SQL of every statement executed so far, in order.
+     */
+    List<String> getExecuted() {
+        synchronized (executed) {
+            return new ArrayList<>(executed);
+        }
+    }
+
+    int countExecuted(String sql) {
+        int count = 0;
+        for (String statement : getExecuted()) {
+            if (statement.equals(sql)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return a database configuration whose connections come from its own pool of at most maxSize
+     * connections to this database, without statement cache, waiting at most 2 s for a connection.
+     */
+    DataBaseConfig newDataBaseConfig(int maxSize) {
+        ConnectionPool pool = new ConnectionPool(url, "user", "password", 0, maxSize, 300_000, 0, 2_000, 0);
+        return new DataBaseConfig(url, "user", "password") {
+            @Override
+            public ConnectionPool getPool() {
+                return pool;
+            }
+        };
+    }
+
+    Connection connect() {
+        connectionsOpened.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new FakeConnection());
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        return null;
+    }
+
+    private final class FakeConnection implements InvocationHandler {
+        private boolean closed;
+        private boolean autoCommit = true;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    checkOpen();
+                    statementsPrepared.incrementAndGet();
+                    return newStatement(PreparedStatement.class, (String) args[0]);
+                case "createStatement":
+                    checkOpen();
+                    return newStatement(Statement.class, null);
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        connectionsClosed.incrementAndGet();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "isValid":
+                    return !closed;
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "commit":
+                    commits.incrementAndGet();
+                    return null;
+                case "rollback":
+                    rollbacks.incrementAndGet();
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "FakeConnection";
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private void checkOpen() throws SQLException {
+            if (closed) {
+                throw new SQLException("Connection is closed");
+            }
+        }
+
+        private Object newStatement(Class<?> type, String sql) {
+            return Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(), new Class<?>[]{type},
+                    new FakeStatement(sql));
+        }
+    }
+
+    private final class FakeStatement implements InvocationHandler {
+        private final String sql;
+        private final TreeMap<Integer, Object> parameters = new TreeMap<>();
+        private final List<List<Object>> batch = new ArrayList<>();
+        private ResultSet resultSet;
+        private int updateCount = -1;
+        private boolean closed;
+
+        private FakeStatement(String sql) {
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                    && !name.equals("setFetchSize")) {
+                parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                return null;
+            }
+            switch (name) {
+                case "clearParameters":
+                    parameters.clear();
+                    return null;
+                case "addBatch":
+                    batch.add(new ArrayList<>(parameters.values()));
+                    return null;
+                case "clearBatch":
+                    batch.clear();
+                    batchesCleared.incrementAndGet();
+                    return null;
+                case "executeBatch": {
+                    checkOpen();
+                    int[] counts = new int[batch.size()];
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] = (Integer) run(sql, batch.get(i));
+                    }
+                    batch.clear();
+                    return counts;
+                }
+                case "executeQuery": {
+                    checkOpen();
+                    resultSet = newResultSet((Rows) run(statementSql(args), currentParameters()));
+                    return resultSet;
+                }
+                case "executeUpdate":
+                    checkOpen();
+                    updateCount = (Integer) run(statementSql(args), currentParameters());
+                    return updateCount;
+                case "execute": {
+                    checkOpen();
+                    Object result = run(statementSql(args), currentParameters());
+                    if (result instanceof Rows) {
+                        resultSet = newResultSet((Rows) result);
+                        return true;
+                    }
+                    updateCount = result == null ? 0 : (Integer) result;
+                    return false;
+                }
+                case "getResultSet":
+                    return resultSet;
+                case "getUpdateCount":
+                    return updateCount;
+                case "getGeneratedKeys":
+                    return newResultSet(rows());
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        statementsClosed.incrementAndGet();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "FakeStatement[" + sql + "]";
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private void checkOpen() throws SQLException {
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+        }
+
+        private String statementSql(Object[] args) {
+            return args != null && args.length > 0 ? (String) args[0] : sql;
+        }
+
+        private List<Object> currentParameters() {
+            return new ArrayList<>(parameters.values());
+        }
+
+        private Object run(String statement, List<Object> values) throws SQLException {
+            executed.add(statement);
+            return handler.execute(statement, values);
+        }
+    }
+
+    private ResultSet newResultSet(Rows rows) {
+        return (ResultSet) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                new FakeResultSet(rows == null ? rows() : rows));
+    }
+
+    private final class FakeResultSet implements InvocationHandler {
+        private final Rows rows;
+        private int row = -1;
+        private boolean wasNull;
+        private boolean closed;
+
+        private FakeResultSet(Rows rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "next":
+                    return ++row < rows.rows.size();
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        resultSetsClosed.incrementAndGet();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "wasNull":
+                    return wasNull;
+                case "getMetaData":
+                    return Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(),
+                            new Class<?>[]{ResultSetMetaData.class}, (metaProxy, metaMethod, metaArgs) ->
+                                    metaMethod.getName().equals("getColumnCount")
+                                            ? (Object) (rows.rows.isEmpty() ? rows.columns.size() : rows.rows.get(0).length)
+                                            : defaultValue(metaMethod.getReturnType()));
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (!name.startsWith("get") || args == null || args.length == 0) {
+                return defaultValue(method.getReturnType());
+            }
+            int column = args[0] instanceof Integer ? (Integer) args[0] : rows.columns.indexOf(args[0]) + 1;
+            Object value = rows.rows.get(row)[column - 1];
+            wasNull = value == null;
+            return convert(value, method.getReturnType());
+        }
+
+        private Object convert(Object value, Class<?> type) {
+            if (value == null) {
+                return defaultValue(type);
+            }
+            if (type == int.class) {
+                return ((Number) value).intValue();
+            }
+            if (type == long.class) {
+                return ((Number) value).longValue();
+            }
+            if (type == double.class) {
+                return ((Number) value).doubleValue();
+            }
+            if (type == boolean.class) {
+                return value instanceof Boolean ? value : ((Number) value).intValue() != 0;
+            }
+            if (type == String.class) {
+                return String.valueOf(value);
+            }
+            if (type == Timestamp.class) {
+                return value instanceof Timestamp ? value : new Timestamp(((Date) value).getTime());
+            }
+            return value;
+        }
+    }
+
+    private static final class FakeDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            FakeJdbc database = databases.get(url);
+            return database == null ? null : database.connect();
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:fake:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketBatch;
 import com.parkit.parkingsystem.service.FareCalculatorService;
 import net.bytebuddy.asm.Advice;
 import org.junit.jupiter.api.BeforeAll;
@@ -19,6 +20,7 @@ import java.math.RoundingMode;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 /**
@@ -253,4 +255,61 @@ class FareCalculatorServiceTest {
 
     }
 
+    @Test
+    void calculateFareCentsRoundsHalfUp(){
+        //Given 30 min 12 s of car parking, 75.5 cents before rounding
+        long inTime = 0;
+        long outTime = 1_812_000;
+
+        //When
+        long fare = fareCalculatorService.calculateFareCents(inTime, outTime, ParkingType.CAR, false);
+        long discountedFare = fareCalculatorService.calculateFareCents(inTime, outTime, ParkingType.CAR, true);
+
+        //Then
+        assertEquals(76, fare);
+        assertEquals(72, discountedFare);
+        assertEquals(0, fareCalculatorService.calculateFareCents(inTime, 30 * 60 * 1000, ParkingType.CAR, false));
+    }
+
+    @Test
+    void calculateFaresPricesEveryStayOfTheBatch(){
+        //Given
+        long hour = 60 * 60 * 1000;
+        long[] inTimes = {0, 0, 0};
+        long[] outTimes = {hour, 24 * hour, 45 * 60 * 1000};
+        ParkingType[] parkingTypes = {ParkingType.CAR, ParkingType.CAR, ParkingType.BIKE};
+        boolean[] discounts = {true, false, false};
+        long[] fares = new long[3];
+
+        //When
+        fareCalculatorService.calculateFares(inTimes, outTimes, parkingTypes, discounts, fares);
+
+        //Then
+        assertEquals(143, fares[0]);
+        assertEquals(3600, fares[1]);
+        assertEquals(75, fares[2]);
+    }
+
+    @Test
+    void calculateFaresInParallelMatchesOneByOnePricing(){
+        //Given
+        java.util.Random random = new java.util.Random(42);
+        TicketBatch batch = new TicketBatch(20_000);
+        for (int i = 0; i < batch.capacity(); i++) {
+            long inTime = random.nextInt(1_000_000_000);
+            batch.add(i, i % 3 == 0 ? ParkingType.BIKE : ParkingType.CAR, inTime, inTime + random.nextInt(200_000_000),
+                    0, 1 + random.nextInt(3));
+        }
+        long[] fares = new long[batch.size()];
+
+        //When
+        fareCalculatorService.calculateFares(batch, fares, new ForkJoinPool(4));
+
+        //Then
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(fareCalculatorService.calculateFareCents(batch.getInTime(i), batch.getOutTime(i),
+                    batch.getParkingType(i), batch.getVisit(i) > 1), fares[i]);
+        }
+    }
+
 }
@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.FreeSpotIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for FreeSpotIndex.
+ * @see FreeSpotIndex
+ */
+class FreeSpotIndexTest {
+
+    private FreeSpotIndex freeSpotIndex;
+
+    @BeforeEach
+    void setUpPerTest() {
+        freeSpotIndex = new FreeSpotIndex();
+        freeSpotIndex.addSpot(1, ParkingType.CAR, true);
+        freeSpotIndex.addSpot(2, ParkingType.CAR, true);
+        freeSpotIndex.addSpot(3, ParkingType.CAR, false);
+        freeSpotIndex.addSpot(4, ParkingType.BIKE, true);
+        freeSpotIndex.addSpot(5, ParkingType.BIKE, true);
+    }
+
+    @Test
+    void lowestFreeSpotPerType() {
+        assertEquals(1, freeSpotIndex.lowestFree(ParkingType.CAR));
+        assertEquals(4, freeSpotIndex.lowestFree(ParkingType.BIKE));
+        assertEquals(2, freeSpotIndex.countFree(ParkingType.CAR));
+    }
+
+    @Test
+    void takingAndFreeingSpots() {
+        assertTrue(freeSpotIndex.setAvailable(1, false));
+        assertEquals(2, freeSpotIndex.lowestFree(ParkingType.CAR));
+
+        freeSpotIndex.setAvailable(2, false);
+        assertEquals(-1, freeSpotIndex.lowestFree(ParkingType.CAR));
+
+        freeSpotIndex.setAvailable(3, true);
+        assertEquals(3, freeSpotIndex.lowestFree(ParkingType.CAR));
+        assertEquals(4, freeSpotIndex.lowestFree(ParkingType.BIKE));
+    }
+
+    @Test
+    void unknownSpotIsRejected() {
+        assertFalse(freeSpotIndex.setAvailable(42, true));
+        assertNull(freeSpotIndex.getParkingType(42));
+    }
+
+    @Test
+    void largeFacility() {
+        FreeSpotIndex index = new FreeSpotIndex();
+        for (int number = 1; number <= 5000; number++) {
+            index.addSpot(number, number % 2 == 0 ? ParkingType.CAR : ParkingType.BIKE, number > 4000);
+        }
+        assertEquals(4002, index.lowestFree(ParkingType.CAR));
+        assertEquals(4001, index.lowestFree(ParkingType.BIKE));
+        assertEquals(500, index.countFree(ParkingType.CAR));
+    }
+
+    @Test
+    void claimTakesTheLowestFreeSpot() {
+        assertEquals(1, freeSpotIndex.claim(ParkingType.CAR));
+        assertEquals(2, freeSpotIndex.claim(ParkingType.CAR));
+        assertEquals(-1, freeSpotIndex.claim(ParkingType.CAR));
+        assertEquals(2, freeSpotIndex.getClaimCount(ParkingType.CAR));
+        assertEquals(1, freeSpotIndex.getClaimMissCount(ParkingType.CAR));
+        assertEquals(4, freeSpotIndex.claim(ParkingType.BIKE));
+    }
+
+    @Test
+    void concurrentClaimsNeverShareASpot() throws InterruptedException {
+        //Given 2000 free car spots and 8 gates claiming concurrently
+        FreeSpotIndex index = new FreeSpotIndex();
+        for (int number = 1; number <= 2000; number++) {
+            index.addSpot(number, ParkingType.CAR, true);
+        }
+        Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+        List<Thread> gates = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread gate = new Thread(() -> {
+                int number;
+                while ((number = index.claim(ParkingType.CAR)) > 0) {
+                    assertTrue(claimed.add(number), "spot " + number + " claimed twice");
+                }
+            });
+            gates.add(gate);
+            gate.start();
+        }
+        for (Thread gate : gates) {
+            gate.join();
+        }
+
+        //Then every spot was handed out exactly once
+        assertEquals(2000, claimed.size());
+        assertEquals(2000, index.getClaimCount(ParkingType.CAR));
+        assertEquals(0, index.countFree(ParkingType.CAR));
+    }
+}
@@ -0,0 +1,123 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.FreeSpotIndex;
+import com.parkit.parkingsystem.dao.GateEventLog;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotRepository;
+import com.parkit.parkingsystem.dao.InMemoryTicketRepository;
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ParkingStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the snapshots and replay of the gate event log.
+ */
+class GateEventLogTest {
+
+    private Path directory;
+    private GateEventLog gateEventLog;
+    private ParkingService parkingService;
+
+    @BeforeEach
+    void setUpPerTest() throws IOException {
+        directory = Files.createTempDirectory("eventlog");
+        gateEventLog = new GateEventLog(directory, false);
+        gateEventLog.reset(Arrays.asList(new ParkingSpot(1, ParkingType.CAR, true),
+                new ParkingSpot(2, ParkingType.CAR, true), new ParkingSpot(3, ParkingType.BIKE, true)),
+                Collections.emptyList(), Collections.singletonMap("GHIJKL", 4), 0);
+        gateEventLog.start(3_600_000L);
+        parkingService = new ParkingService(null, new InMemoryParkingSpotRepository(2, 1),
+                new InMemoryTicketRepository(), new UnitOfWork(null), new ParkingStatistics(),
+                new FareCalculatorService(), null, gateEventLog);
+    }
+
+    @Test
+    void eventsAfterTheSnapshotAreReplayedOnRestart() throws IOException {
+        //Given a car and a bike entering, a snapshot, then the car leaving and another car entering
+        parkingService.enter("ABCDEF", ParkingType.CAR);
+        GateResult bike = parkingService.enter("GHIJKL", ParkingType.BIKE);
+        gateEventLog.snapshot();
+        parkingService.exit("ABCDEF");
+        parkingService.enter("MNOPQR", ParkingType.CAR);
+
+        //When the log is reopened without having been closed
+        GateEventLog restored = new GateEventLog(directory, false);
+
+        //Then the state is the one after the last event
+        assertTrue(restored.isRestored());
+        assertEquals(4, restored.getLastSequence());
+        assertEquals(new GateEventLog.Watermark(3, 2), restored.getWatermark());
+        List<CompactTicket> openTickets = restored.getOpenTickets();
+        assertEquals(2, openTickets.size());
+        for (CompactTicket ticket : openTickets) {
+            if (ticket.getVehicleRegNumber().equals("GHIJKL")) {
+                assertEquals(2, ticket.getId());
+                assertEquals(3, ticket.getSpot().getNumber());
+                assertEquals(bike.getInTime().getTime(), ticket.getInTimeMillis());
+            } else {
+                assertEquals("MNOPQR", ticket.getVehicleRegNumber());
+            }
+        }
+        assertEquals(Integer.valueOf(1), restored.getVisitCounts().get("ABCDEF"));
+        assertEquals(Integer.valueOf(5), restored.getVisitCounts().get("GHIJKL"));
+        FreeSpotIndex index = restored.newFreeSpotIndex();
+        assertFalse(index.isAvailable(1));
+        assertTrue(index.isAvailable(2));
+        assertEquals(0, index.countFree(ParkingType.BIKE));
+    }
+
+    @Test
+    void tornTailIsIgnoredAndDamagedSnapshotIsRejected() throws IOException {
+        //Given an entry followed by a partly written record
+        parkingService.enter("ABCDEF", ParkingType.CAR);
+        Files.write(lastLogFile(), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        //When the log is reopened
+        GateEventLog restored = new GateEventLog(directory, false);
+
+        //Then the entry is restored and the partial record dropped
+        assertTrue(restored.isRestored());
+        assertEquals(1, restored.getLastSequence());
+        assertEquals(1, restored.getOpenTickets().size());
+
+        //When the snapshot is damaged
+        Path snapshot = directory.resolve("gate.snapshot");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(snapshot, bytes);
+
+        //Then nothing is restored
+        GateEventLog damaged = new GateEventLog(directory, false);
+        assertFalse(damaged.isRestored());
+        assertEquals(0, damaged.getOpenTickets().size());
+    }
+
+    private Path lastLogFile() throws IOException {
+        Path last = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "events-*.log")) {
+            for (Path file : files) {
+                if (last == null || file.getFileName().toString().compareTo(last.getFileName().toString()) > 0) {
+                    last = file;
+                }
+            }
+        }
+        return last;
+    }
+}
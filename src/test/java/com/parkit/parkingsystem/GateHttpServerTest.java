@@ -0,0 +1,117 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SpotAllocationMode;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotRepository;
+import com.parkit.parkingsystem.dao.InMemoryTicketRepository;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.service.GateHttpServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ParkingStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the HTTP gate endpoint over the in-memory storage.
+ */
+class GateHttpServerTest {
+
+    private GateHttpServer gateHttpServer;
+
+    @BeforeEach
+    void setUpPerTest() throws IOException {
+        InMemoryParkingSpotRepository parkingSpotRepository = new InMemoryParkingSpotRepository(1, 1);
+        ParkingStatistics parkingStatistics = new ParkingStatistics();
+        ParkingService parkingService = new ParkingService(null, parkingSpotRepository, new InMemoryTicketRepository(),
+                new UnitOfWork(null), parkingStatistics);
+        gateHttpServer = new GateHttpServer(parkingService, parkingStatistics, parkingSpotRepository,
+                new InetSocketAddress("127.0.0.1", 0), 4);
+        gateHttpServer.start();
+    }
+
+    @AfterEach
+    void tearDownPerTest() {
+        gateHttpServer.stop(0);
+    }
+
+    @Test
+    void vehicleEntersAndExitsOverHttp() throws IOException {
+        //When a car enters, another car finds the parking full and the first car exits
+        String entered = call("POST", "/entry?plate=AB-123-CD&type=car", 200);
+        call("POST", "/entry?plate=EF-456-GH&type=CAR", 409);
+        String occupancy = call("GET", "/occupancy", 200);
+        String exited = call("POST", "/exit?plate=AB-123-CD", 200);
+
+        //Then the responses describe each step and the latencies are counted
+        assertTrue(entered.contains("\"status\":\"ENTERED\""));
+        assertTrue(entered.contains("\"spot\":1"));
+        assertTrue(occupancy.contains("\"CAR\":{\"parked\":1,\"nextFreeSpot\":0}"));
+        assertTrue(exited.contains("\"status\":\"EXITED\""));
+        assertTrue(exited.contains("\"price\":0.00"));
+        assertEquals(2, gateHttpServer.getEntryLatency().getCount());
+        assertEquals(1, gateHttpServer.getExitLatency().getCount());
+        String metrics = call("GET", "/metrics", 200);
+        assertTrue(metrics.contains("\"p99Micros\""));
+        assertTrue(metrics.contains("\"allocation\":{\"index\":{\"CAR\":{\"claims\":1,\"retries\":0,\"misses\":1}"));
+    }
+
+    @Test
+    void metricsReportTheDatabaseReservations() throws IOException {
+        //Given a gate reserving spots in the database, where another instance took the first spot tried
+        AtomicInteger candidate = new AtomicInteger();
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> sql.equals(DBConstants.GET_NEXT_PARKING_SPOT)
+                ? FakeJdbc.rows(new Object[]{candidate.incrementAndGet()}) : (Object) (candidate.get() < 2 ? 0 : 1));
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(database.newDataBaseConfig(1), SpotAllocationMode.OPTIMISTIC);
+        gateHttpServer.stop(0);
+        gateHttpServer = new GateHttpServer(null, new ParkingStatistics(), parkingSpotDAO,
+                new InetSocketAddress("127.0.0.1", 0), 1);
+        gateHttpServer.start();
+
+        //When
+        parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+        String metrics = call("GET", "/metrics", 200);
+
+        //Then
+        assertTrue(metrics.contains("\"mode\":\"OPTIMISTIC\",\"claims\":1,\"conflicts\":1,\"retries\":1,\"misses\":0}"));
+        assertFalse(metrics.contains("\"index\""));
+    }
+
+    @Test
+    void invalidRequestsAreRejected() throws IOException {
+        //When requests miss a parameter, use an unknown type or the wrong method
+        call("POST", "/entry?plate=AB-123-CD", 400);
+        call("POST", "/entry?plate=AB-123-CD&type=TRUCK", 400);
+        call("GET", "/exit?plate=AB-123-CD", 405);
+
+        //Then an exit without entry is refused
+        assertTrue(call("POST", "/exit?plate=AB-123-CD", 409).contains("\"status\":\"NOT_PARKED\""));
+    }
+
+    private String call(String method, String path, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + gateHttpServer.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        assertEquals(expectedStatus, connection.getResponseCode());
+        try (InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
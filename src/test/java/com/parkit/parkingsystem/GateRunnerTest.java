@@ -0,0 +1,263 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SpotAllocationMode;
+import com.parkit.parkingsystem.dao.AsyncStorage;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotRepository;
+import com.parkit.parkingsystem.dao.InMemoryTicketRepository;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.GateRunner;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ParkingStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the programmatic gate API of ParkingService and the lanes of the GateRunner.
+ */
+class GateRunnerTest {
+
+    @Test
+    void enterAndExitReturnTheirOutcome() {
+        //Given a parking with a single car spot
+        InMemoryParkingSpotRepository parkingSpotRepository = new InMemoryParkingSpotRepository(1, 1);
+        ParkingService parkingService = new ParkingService(null, parkingSpotRepository, new InMemoryTicketRepository());
+
+        //When two cars enter
+        GateResult entered = parkingService.enter("ABCDEF", ParkingType.CAR);
+        GateResult full = parkingService.enter("GHIJKL", ParkingType.CAR);
+
+        //Then the first gets the spot and the second is refused
+        assertEquals(GateResult.Status.ENTERED, entered.getStatus());
+        assertEquals(1, entered.getParkingSpot().getId());
+        assertEquals(GateResult.Status.FULL, full.getStatus());
+
+        //When the first car leaves twice and an unknown car leaves
+        GateResult exited = parkingService.exit("ABCDEF");
+        GateResult exitedAgain = parkingService.exit("ABCDEF");
+        GateResult unknown = parkingService.exit("GHIJKL");
+
+        //Then only the first exit closes the ticket
+        assertEquals(GateResult.Status.EXITED, exited.getStatus());
+        assertNotNull(exited.getOutTime());
+        assertEquals(0, exited.getPrice());
+        assertEquals(GateResult.Status.NOT_PARKED, exitedAgain.getStatus());
+        assertEquals(GateResult.Status.NOT_PARKED, unknown.getStatus());
+        assertEquals(1, parkingSpotRepository.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    void failedEntryGivesItsSpotBackWithoutAnotherDatabaseWrite() {
+        //Given a database rejecting the allotment of the spot claimed from the index
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> {
+            if (sql.equals(DBConstants.GET_PARKING_SPOTS)) {
+                return FakeJdbc.rows(new Object[]{1, true, "CAR"});
+            }
+            throw new SQLException("Lock wait timeout exceeded", "40001", 1205);
+        });
+        DataBaseConfig dataBaseConfig = database.newDataBaseConfig(1);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig, SpotAllocationMode.INDEX);
+        UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig);
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, new InMemoryTicketRepository(), unitOfWork);
+
+        //When
+        GateResult failed = parkingService.enter("ABCDEF", ParkingType.CAR);
+
+        //Then the rollback gives the spot back to the index, and the update is not tried again
+        assertEquals(GateResult.Status.FAILED, failed.getStatus());
+        assertEquals(1, unitOfWork.getRollbackCount());
+        assertEquals(1, database.countExecuted(DBConstants.UPDATE_PARKING_SPOT));
+        assertEquals(1, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    void exitClosesTheOpenTicketWhenTheTicketReadWasClosedElsewhere() {
+        //Given a car whose first ticket another instance closed, still returned once by a stale read
+        InMemoryTicketRepository tickets = new InMemoryTicketRepository();
+        ParkingService parkingService = new ParkingService(null, new InMemoryParkingSpotRepository(2, 1), tickets);
+        parkingService.enter("ABCDEF", ParkingType.CAR);
+        Ticket stale = tickets.getTicket("ABCDEF");
+        parkingService.exit("ABCDEF");
+        parkingService.enter("ABCDEF", ParkingType.CAR);
+        AtomicInteger reads = new AtomicInteger();
+        TicketRepository staleOnce = new TicketRepository() {
+            @Override
+            public int saveTicket(Ticket ticket) {
+                return tickets.saveTicket(ticket);
+            }
+
+            @Override
+            public Ticket getTicket(String vehicleRegNumber) {
+                return reads.getAndIncrement() == 0 ? stale.copy() : tickets.getTicket(vehicleRegNumber);
+            }
+
+            @Override
+            public boolean updateTicket(Ticket ticket) {
+                return tickets.getTicket(ticket.getVehicleRegNumber()).getId() == ticket.getId()
+                        && tickets.updateTicket(ticket);
+            }
+
+            @Override
+            public int getNbTicket(String vehicleRegNumber) {
+                return tickets.getNbTicket(vehicleRegNumber);
+            }
+        };
+
+        //When the car leaves
+        GateResult exited = new ParkingService(null, new InMemoryParkingSpotRepository(2, 1), staleOnce)
+                .exit("ABCDEF");
+
+        //Then the second ticket is the one closed
+        assertEquals(GateResult.Status.EXITED, exited.getStatus());
+        assertNotNull(tickets.getTicket("ABCDEF").getOutTime());
+    }
+
+    @Test
+    void visitCountIsFetchedOnTheLookupExecutor() throws InterruptedException {
+        //Given a parking service fetching visit counts on a database executor
+        ThreadPoolExecutor lookupExecutor = AsyncStorage.newExecutor(2, 16);
+        ParkingService parkingService = new ParkingService(null, new InMemoryParkingSpotRepository(1, 1),
+                new InMemoryTicketRepository(), new UnitOfWork(null), new ParkingStatistics(),
+                new FareCalculatorService(), lookupExecutor);
+
+        //When a car comes twice
+        GateResult firstVisit = parkingService.enter("ABCDEF", ParkingType.CAR);
+        parkingService.exit("ABCDEF");
+        GateResult secondVisit = parkingService.enter("ABCDEF", ParkingType.CAR);
+        lookupExecutor.shutdown();
+        assertTrue(lookupExecutor.awaitTermination(5, TimeUnit.SECONDS));
+
+        //Then it is a recurrent customer the second time, counted on the executor
+        assertFalse(firstVisit.isRecurrentCustomer());
+        assertTrue(secondVisit.isRecurrentCustomer());
+        assertEquals(3, lookupExecutor.getCompletedTaskCount());
+    }
+
+    @Test
+    void gatesLeaveConnectionsToTheVisitCountLookups() throws Exception {
+        //Given 8 lanes sharing a pool of 2 connections, each visit count lookup holding a connection of its own
+        DataBaseConfig dataBaseConfig = new FakeJdbc((sql, parameters) -> 1).newDataBaseConfig(2);
+        InMemoryTicketRepository tickets = new InMemoryTicketRepository();
+        TicketRepository ticketRepository = new TicketRepository() {
+            @Override
+            public int saveTicket(Ticket ticket) {
+                return tickets.saveTicket(ticket);
+            }
+
+            @Override
+            public Ticket getTicket(String vehicleRegNumber) {
+                return tickets.getTicket(vehicleRegNumber);
+            }
+
+            @Override
+            public boolean updateTicket(Ticket ticket) {
+                return tickets.updateTicket(ticket);
+            }
+
+            @Override
+            public int getNbTicket(String vehicleRegNumber) {
+                Connection connection = null;
+                try {
+                    connection = dataBaseConfig.getConnection();
+                    Thread.sleep(2);
+                    return tickets.getNbTicket(vehicleRegNumber);
+                } catch (Exception e) {
+                    throw new RuntimeException("Error counting tickets", e);
+                } finally {
+                    dataBaseConfig.closeConnection(connection);
+                }
+            }
+        };
+        ThreadPoolExecutor lookupExecutor = AsyncStorage.newExecutor(4, 64);
+        ParkingService parkingService = new ParkingService(null, new InMemoryParkingSpotRepository(10, 10),
+                ticketRepository, new UnitOfWork(dataBaseConfig), new ParkingStatistics(), new FareCalculatorService(),
+                lookupExecutor);
+        AtomicInteger succeeded = new AtomicInteger();
+
+        //When the lanes let 20 cars each in and out
+        try (GateRunner gateRunner = new GateRunner(parkingService)) {
+            for (int lane = 0; lane < 8; lane++) {
+                Deque<GateRunner.Request> requests = new ArrayDeque<>();
+                for (int car = 0; car < 20; car++) {
+                    String plate = "LANE" + lane + "-" + car;
+                    requests.add(GateRunner.Request.entry(plate, ParkingType.CAR));
+                    requests.add(GateRunner.Request.exit(plate));
+                }
+                gateRunner.open("lane" + lane, new GateRunner.Lane() {
+                    @Override
+                    public GateRunner.Request next() {
+                        return requests.poll();
+                    }
+
+                    @Override
+                    public void completed(GateRunner.Request request, GateResult result) {
+                        if (result.isSuccess()) {
+                            succeeded.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            assertTrue(gateRunner.awaitLanes(20000));
+        }
+        lookupExecutor.shutdown();
+
+        //Then no gate waited for a connection held by another gate
+        assertEquals(320, succeeded.get());
+        assertEquals(0, dataBaseConfig.getPool().getActiveCount());
+    }
+
+    @Test
+    void lanesProcessTheirVehiclesConcurrently() throws InterruptedException {
+        //Given 8 lanes, each letting 50 cars in and out
+        InMemoryParkingSpotRepository parkingSpotRepository = new InMemoryParkingSpotRepository(10, 10);
+        ParkingService parkingService = new ParkingService(null, parkingSpotRepository, new InMemoryTicketRepository());
+        AtomicInteger succeeded = new AtomicInteger();
+
+        //When the lanes run
+        try (GateRunner gateRunner = new GateRunner(parkingService)) {
+            for (int lane = 0; lane < 8; lane++) {
+                Deque<GateRunner.Request> requests = new ArrayDeque<>();
+                for (int car = 0; car < 50; car++) {
+                    String plate = "LANE" + lane + "-" + car;
+                    requests.add(GateRunner.Request.entry(plate, ParkingType.CAR));
+                    requests.add(GateRunner.Request.exit(plate));
+                }
+                gateRunner.open("lane" + lane, new GateRunner.Lane() {
+                    @Override
+                    public GateRunner.Request next() {
+                        return requests.poll();
+                    }
+
+                    @Override
+                    public void completed(GateRunner.Request request, GateResult result) {
+                        if (result.isSuccess()) {
+                            succeeded.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            assertTrue(gateRunner.awaitLanes(10000));
+
+            //Then every vehicle got in and out and every spot is free again
+            assertEquals(800, gateRunner.getProcessedCount());
+        }
+        assertEquals(800, succeeded.get());
+        assertEquals(1, parkingSpotRepository.getNextAvailableSlot(ParkingType.CAR));
+    }
+}
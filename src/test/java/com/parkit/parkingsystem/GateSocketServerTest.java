@@ -0,0 +1,105 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotRepository;
+import com.parkit.parkingsystem.dao.InMemoryTicketRepository;
+import com.parkit.parkingsystem.service.GateProtocol;
+import com.parkit.parkingsystem.service.GateSocketServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ParkingStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the binary gate protocol over the in-memory storage.
+ */
+class GateSocketServerTest {
+
+    private GateSocketServer gateSocketServer;
+
+    @BeforeEach
+    void setUpPerTest() throws IOException {
+        InMemoryParkingSpotRepository parkingSpotRepository = new InMemoryParkingSpotRepository(1, 1);
+        ParkingStatistics parkingStatistics = new ParkingStatistics();
+        ParkingService parkingService = new ParkingService(null, parkingSpotRepository, new InMemoryTicketRepository(),
+                new UnitOfWork(null), parkingStatistics);
+        gateSocketServer = new GateSocketServer(parkingService, parkingStatistics, parkingSpotRepository,
+                new InetSocketAddress("127.0.0.1", 0), 2);
+        gateSocketServer.start();
+    }
+
+    @AfterEach
+    void tearDownPerTest() {
+        gateSocketServer.close();
+    }
+
+    @Test
+    void pipelinedRequestsAreAnsweredInOrder() throws IOException {
+        //Given a client sending its requests without waiting for the responses
+        ByteBuffer requests = ByteBuffer.allocate(1024);
+        GateProtocol.writeEnter(requests, 1, "AB-123-CD", ParkingType.CAR);
+        GateProtocol.writeEnter(requests, 2, "EF-456-GH", ParkingType.CAR);
+        GateProtocol.writeQuery(requests, 3, ParkingType.CAR);
+        GateProtocol.writeExit(requests, 4, "AB-123-CD");
+        GateProtocol.writeExit(requests, 5, "AB-123-CD");
+        requests.putInt(5).put((byte) 9).putInt(6);
+        requests.flip();
+
+        //When the requests are sent at once
+        ByteBuffer responses = ByteBuffer.allocate(1024);
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", gateSocketServer.getPort()))) {
+            while (requests.hasRemaining()) {
+                channel.write(requests);
+            }
+            channel.shutdownOutput();
+            while (channel.read(responses) >= 0) {
+                // read until the server closes the connection
+            }
+        }
+        responses.flip();
+
+        //Then each request gets its response, in order
+        assertEquals(4 + 1 + 4 + 8 + 1, responses.getInt());
+        assertEquals(1, responses.getInt());
+        assertEquals(GateProtocol.STATUS_ENTERED, responses.get());
+        assertEquals(1, responses.getInt());
+        assertTrue(responses.getLong() > 0);
+        assertEquals(0, responses.get());
+
+        assertEquals(5, responses.getInt());
+        assertEquals(2, responses.getInt());
+        assertEquals(GateProtocol.STATUS_FULL, responses.get());
+
+        assertEquals(13, responses.getInt());
+        assertEquals(3, responses.getInt());
+        assertEquals(GateProtocol.STATUS_OK, responses.get());
+        assertEquals(1, responses.getInt());
+        assertEquals(0, responses.getInt());
+
+        assertEquals(4 + 1 + 4 + 8 + 8, responses.getInt());
+        assertEquals(4, responses.getInt());
+        assertEquals(GateProtocol.STATUS_EXITED, responses.get());
+        assertEquals(1, responses.getInt());
+        assertTrue(responses.getLong() > 0);
+        assertEquals(0, responses.getLong());
+
+        assertEquals(5, responses.getInt());
+        assertEquals(5, responses.getInt());
+        assertEquals(GateProtocol.STATUS_NOT_PARKED, responses.get());
+
+        assertEquals(5, responses.getInt());
+        assertEquals(6, responses.getInt());
+        assertEquals(GateProtocol.STATUS_BAD_REQUEST, responses.get());
+        assertFalse(responses.hasRemaining());
+        assertEquals(6, gateSocketServer.getRequestCount());
+    }
+}
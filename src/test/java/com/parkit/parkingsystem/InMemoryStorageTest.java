@@ -0,0 +1,141 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotRepository;
+import com.parkit.parkingsystem.dao.InMemoryTicketRepository;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the gate flow against the in-memory storage backend.
+ */
+class InMemoryStorageTest {
+
+    private InMemoryParkingSpotRepository parkingSpotRepository;
+    private InMemoryTicketRepository ticketRepository;
+
+    @BeforeEach
+    void setUpPerTest() {
+        parkingSpotRepository = new InMemoryParkingSpotRepository();
+        ticketRepository = new InMemoryTicketRepository();
+    }
+
+    @Test
+    void parkingACarAndExiting() {
+        //Given a car entering the parking
+        ParkingService parkingService = new ParkingService(new FixedInputReader(1, "ABCDEF"), parkingSpotRepository, ticketRepository);
+
+        //When it enters
+        parkingService.processIncomingVehicle();
+
+        //Then the lowest car spot is taken and an open ticket is saved
+        Ticket ticket = ticketRepository.getTicket("ABCDEF");
+        assertNotNull(ticket);
+        assertEquals(1, ticket.getParkingSpot().getId());
+        assertNull(ticket.getOutTime());
+        assertEquals(2, parkingSpotRepository.getNextAvailableSlot(ParkingType.CAR));
+
+        //When it exits
+        parkingService.processExitingVehicle();
+
+        //Then the ticket is closed and the spot is free again
+        Ticket exitingTicket = ticketRepository.getTicket("ABCDEF");
+        assertNotNull(exitingTicket.getOutTime());
+        assertEquals(0, exitingTicket.getPrice());
+        assertEquals(1, parkingSpotRepository.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    void parkingIsFull() {
+        //Given every bike spot taken
+        parkingSpotRepository.updateParking(new ParkingSpot(4, ParkingType.BIKE, false));
+        parkingSpotRepository.updateParking(new ParkingSpot(5, ParkingType.BIKE, false));
+
+        //Then no bike spot is returned
+        assertTrue(parkingSpotRepository.getNextAvailableSlot(ParkingType.BIKE) < 1);
+    }
+
+    @Test
+    void ticketsAreCopiedAndCountedPerVehicle() throws InterruptedException {
+        //Given tickets saved concurrently for the same vehicle
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    Ticket ticket = new Ticket();
+                    ticket.setVehicleRegNumber("ABCDEF");
+                    ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+                    ticket.setInTime(new Date());
+                    ticketRepository.saveTicket(ticket);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //Then every ticket is counted and reads return independent copies
+        assertEquals(800, ticketRepository.getNbTicket("ABCDEF"));
+        Ticket ticket = ticketRepository.getTicket("ABCDEF");
+        ticket.setPrice(42);
+        assertEquals(0, ticketRepository.getTicket("ABCDEF").getPrice());
+    }
+
+    @Test
+    void failedEntryIsRolledBack() {
+        //Given a ticket storage failing after the spot was allotted
+        InMemoryTicketRepository failingTicketRepository = new InMemoryTicketRepository() {
+            @Override
+            public int saveTicket(Ticket ticket) {
+                super.saveTicket(ticket);
+                throw new RuntimeException("Disk full");
+            }
+        };
+        ParkingService parkingService = new ParkingService(new FixedInputReader(1, "ABCDEF"), parkingSpotRepository,
+                failingTicketRepository, new UnitOfWork(null));
+
+        //When the car enters
+        parkingService.processIncomingVehicle();
+
+        //Then neither the ticket nor the spot allotment is kept
+        assertNull(failingTicketRepository.getTicket("ABCDEF"));
+        assertEquals(0, failingTicketRepository.getNbTicket("ABCDEF"));
+        assertEquals(1, parkingSpotRepository.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    /**
+     * Input reader answering with a fixed vehicle type selection and registration number.
+     */
+    private static class FixedInputReader extends InputReaderUtil {
+        private final int selection;
+        private final String vehicleRegNumber;
+
+        FixedInputReader(int selection, String vehicleRegNumber) {
+            this.selection = selection;
+            this.vehicleRegNumber = vehicleRegNumber;
+        }
+
+        @Override
+        public int readSelection() {
+            return selection;
+        }
+
+        @Override
+        public String readVehicleRegistrationNumber() {
+            return vehicleRegNumber;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.util.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentilesAreWithinTheBucketPrecision() {
+        //Given latencies from 1 to 10000 microseconds
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros);
+        }
+
+        //When reading the percentiles
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+
+        //Then they are within 7% of the exact values
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMax());
+        assertEquals(5_000, p50, 350);
+        assertEquals(9_900, p99, 700);
+        assertEquals(10_000, histogram.getPercentile(100));
+
+        //When the histogram is reset
+        histogram.reset();
+
+        //Then it is empty
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
@@ -110,9 +110,9 @@ class ParkingServiceTest {
         //Given a car entering the parking
         when (inputReaderUtil.readSelection()).thenReturn(1);
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-        when (parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when (parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
         when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
-        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(1);
 
         //When processing incoming vehicle
         parkingService.processIncomingVehicle();
@@ -129,10 +129,10 @@ class ParkingServiceTest {
         //Given a recurring user entering the parking
         when (inputReaderUtil.readSelection()).thenReturn(1);
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-        when (parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when (parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
         when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
         when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(2);
-        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(1);
 
         //When processing incoming vehicle
         parkingService.processIncomingVehicle();
@@ -172,7 +172,7 @@ class ParkingServiceTest {
     void testGetNextParkingNumberIfAvailable( ){
         //Given a car parking spot available
         when(inputReaderUtil.readSelection()).thenReturn(1);
-        when (parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when (parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
 
         //When getting next parking number
         ParkingSpot spot = parkingService.getNextParkingNumberIfAvailable();
@@ -194,7 +194,7 @@ class ParkingServiceTest {
 
         //Given no car parking spot available
         when(inputReaderUtil.readSelection()).thenReturn(1);
-        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(0);
+        when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(0);
 
         //When getting next parking number
         ParkingSpot spot = parkingService.getNextParkingNumberIfAvailable();
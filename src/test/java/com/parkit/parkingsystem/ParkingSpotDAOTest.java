@@ -0,0 +1,150 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SpotAllocationMode;
+import com.parkit.parkingsystem.dao.AllocationMetrics;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the spot reservations done in the database, against a fake JDBC driver.
+ * @see ParkingSpotDAO
+ */
+class ParkingSpotDAOTest {
+
+    @Test
+    void skipLockedClaimsTheLockedSpot() {
+        //Given
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> sql.equals(DBConstants.LOCK_NEXT_PARKING_SPOT)
+                ? FakeJdbc.rows(new Object[]{4}) : (Object) 1);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(database.newDataBaseConfig(1), SpotAllocationMode.SKIP_LOCKED);
+
+        //When
+        int spot = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+
+        //Then
+        assertEquals(4, spot);
+        assertEquals(1, parkingSpotDAO.getAllocationMetrics().getClaims());
+        assertEquals(1, database.commits.get());
+    }
+
+    @Test
+    void skipLockedReturnsNoSpotWhenTheUpdateFindsItTaken() {
+        //Given a locked spot that the update does not find available
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> sql.equals(DBConstants.LOCK_NEXT_PARKING_SPOT)
+                ? FakeJdbc.rows(new Object[]{4}) : (Object) 0);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(database.newDataBaseConfig(1), SpotAllocationMode.SKIP_LOCKED);
+
+        //When
+        int spot = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+
+        //Then
+        AllocationMetrics metrics = parkingSpotDAO.getAllocationMetrics();
+        assertEquals(0, spot);
+        assertEquals(1, metrics.getConflicts());
+        assertEquals(0, metrics.getClaims());
+        assertEquals(1, database.commits.get());
+    }
+
+    @Test
+    void skipLockedCountsAMissWhenNoSpotIsFree() {
+        //Given
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> sql.equals(DBConstants.LOCK_NEXT_PARKING_SPOT)
+                ? FakeJdbc.rows() : (Object) 1);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(database.newDataBaseConfig(1), SpotAllocationMode.SKIP_LOCKED);
+
+        //When
+        int spot = parkingSpotDAO.claimNextAvailableSlot(ParkingType.BIKE);
+
+        //Then
+        assertEquals(0, spot);
+        assertEquals(1, parkingSpotDAO.getAllocationMetrics().getMisses());
+        assertEquals(0, database.countExecuted(DBConstants.CLAIM_PARKING_SPOT));
+    }
+
+    @Test
+    void optimisticTriesTheNextSpotAfterAConflict() {
+        //Given spots 1 and 2 taken by another instance between the read and the update
+        AtomicInteger candidate = new AtomicInteger();
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> sql.equals(DBConstants.GET_NEXT_PARKING_SPOT)
+                ? FakeJdbc.rows(new Object[]{candidate.incrementAndGet()}) : (Object) (candidate.get() < 3 ? 0 : 1));
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(database.newDataBaseConfig(1), SpotAllocationMode.OPTIMISTIC);
+
+        //When
+        int spot = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+
+        //Then
+        AllocationMetrics metrics = parkingSpotDAO.getAllocationMetrics();
+        assertEquals(3, spot);
+        assertEquals(2, metrics.getConflicts());
+        assertEquals(2, metrics.getRetries());
+        assertEquals(1, metrics.getClaims());
+    }
+
+    @Test
+    void optimisticGivesUpAfterTenConflicts() {
+        //Given every update finding its spot already taken
+        AtomicInteger candidate = new AtomicInteger();
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> sql.equals(DBConstants.GET_NEXT_PARKING_SPOT)
+                ? FakeJdbc.rows(new Object[]{candidate.incrementAndGet()}) : (Object) 0);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(database.newDataBaseConfig(1), SpotAllocationMode.OPTIMISTIC);
+
+        //When
+        int spot = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+
+        //Then
+        AllocationMetrics metrics = parkingSpotDAO.getAllocationMetrics();
+        assertEquals(0, spot);
+        assertEquals(10, database.countExecuted(DBConstants.CLAIM_PARKING_SPOT));
+        assertEquals(10, metrics.getConflicts());
+        assertEquals(9, metrics.getRetries());
+        assertEquals(0, metrics.getClaims());
+        assertEquals(0, metrics.getMisses());
+    }
+
+    @Test
+    void optimisticCountsAMissWhenNoSpotIsFree() {
+        //Given
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> sql.equals(DBConstants.GET_NEXT_PARKING_SPOT)
+                ? FakeJdbc.rows() : (Object) 1);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(database.newDataBaseConfig(1), SpotAllocationMode.OPTIMISTIC);
+
+        //When
+        int spot = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+
+        //Then
+        assertEquals(0, spot);
+        assertEquals(1, parkingSpotDAO.getAllocationMetrics().getMisses());
+        assertEquals(0, database.countExecuted(DBConstants.CLAIM_PARKING_SPOT));
+    }
+
+    @Test
+    void indexClaimIsGivenBackWhenTheDatabaseRejectsTheAllotment() {
+        //Given an index-mode claim whose allotment fails in the database
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> {
+            if (sql.equals(DBConstants.GET_PARKING_SPOTS)) {
+                return FakeJdbc.rows(new Object[]{1, true, "CAR"}, new Object[]{2, true, "CAR"});
+            }
+            throw new SQLException("Communications link failure", "08S01");
+        });
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(database.newDataBaseConfig(1), SpotAllocationMode.INDEX);
+        ParkingSpot parkingSpot = new ParkingSpot(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR), ParkingType.CAR, false);
+        assertFalse(parkingSpotDAO.updateParking(parkingSpot));
+
+        //When
+        parkingSpotDAO.releaseClaim(parkingSpot);
+
+        //Then the spot is free again in the index, without a write to the database
+        assertEquals(1, parkingSpot.getId());
+        assertTrue(parkingSpotDAO.getFreeSpotIndex().isAvailable(1));
+        assertEquals(1, parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR));
+        assertEquals(1, database.countExecuted(DBConstants.UPDATE_PARKING_SPOT));
+    }
+}
@@ -0,0 +1,154 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingStatsDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.ParkingStats;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ParkingStatistics.
+ * @see ParkingStatistics
+ */
+class ParkingStatisticsTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    private final Date dayStart = Date.from(LocalDate.of(2024, 3, 1).atStartOfDay(ZoneOffset.UTC).toInstant());
+
+    @Test
+    void aggregatesEntriesAndExitsPerHour() {
+        //Given
+        ParkingStatistics statistics = new ParkingStatistics(null, ZoneOffset.UTC);
+
+        //When
+        statistics.recordEntry(ParkingType.CAR, at(8 * HOUR + 5));
+        statistics.recordEntry(ParkingType.CAR, at(8 * HOUR + 10));
+        statistics.recordEntry(ParkingType.BIKE, at(9 * HOUR));
+        statistics.recordExit(ticket(ParkingType.CAR, at(8 * HOUR + 5), at(10 * HOUR + 5), 3.0));
+
+        //Then
+        List<ParkingStats> hours = statistics.getHours(at(0), at(24 * HOUR), ParkingType.CAR);
+        assertEquals(2, hours.size());
+        assertEquals(at(8 * HOUR), hours.get(0).getStart());
+        assertEquals(2, hours.get(0).getEntries());
+        assertEquals(2, hours.get(0).getPeakOccupancy());
+        assertEquals(1, hours.get(1).getExits());
+        assertEquals(3.0, hours.get(1).getRevenue());
+        assertEquals(2 * HOUR, hours.get(1).getStayMillis());
+        assertEquals(1, statistics.getOccupancy(ParkingType.CAR));
+        assertEquals(1, statistics.getOccupancy(ParkingType.BIKE));
+    }
+
+    @Test
+    void sumsTheHoursOfADay() {
+        //Given
+        ParkingStatistics statistics = new ParkingStatistics(null, ZoneOffset.UTC);
+        statistics.recordEntry(ParkingType.CAR, at(7 * HOUR));
+        statistics.recordEntry(ParkingType.CAR, at(9 * HOUR));
+        statistics.recordExit(ticket(ParkingType.CAR, at(7 * HOUR), at(11 * HOUR), 6.0));
+        statistics.recordExit(ticket(ParkingType.CAR, at(9 * HOUR), at(12 * HOUR), 4.5));
+        statistics.recordEntry(ParkingType.CAR, at(25 * HOUR));
+
+        //When
+        ParkingStats day = statistics.getDay(LocalDate.of(2024, 3, 1), ParkingType.CAR);
+
+        //Then
+        assertEquals(2, day.getEntries());
+        assertEquals(2, day.getExits());
+        assertEquals(10.5, day.getRevenue());
+        assertEquals(3.5 * HOUR, day.getAverageStayMillis());
+        assertEquals(2, day.getPeakOccupancy());
+    }
+
+    @Test
+    void sumsRevenueInCents() {
+        //Given
+        ParkingStatistics statistics = new ParkingStatistics(null, ZoneOffset.UTC);
+
+        //When
+        for (int i = 0; i < 1000; i++) {
+            statistics.recordExit(ticket(ParkingType.CAR, at(7 * HOUR), at(8 * HOUR), 0.1));
+        }
+
+        //Then
+        assertEquals(100.0, statistics.getDay(LocalDate.of(2024, 3, 1), ParkingType.CAR).getRevenue());
+    }
+
+    @Test
+    void loadWithoutStorageKeepsTheFiguresInMemory() {
+        //Given
+        ParkingStatistics statistics = new ParkingStatistics();
+
+        //When
+        statistics.load(at(0), at(24 * HOUR));
+
+        //Then
+        assertEquals(0, statistics.getOccupancy(ParkingType.CAR));
+        assertEquals(0, statistics.flush());
+    }
+
+    @Test
+    void flushesEveryExitRecordedMeanwhile() throws Exception {
+        //Given statistics flushed continuously while exits are recorded
+        List<ParkingStats> written = new ArrayList<>();
+        ParkingStatistics statistics = new ParkingStatistics(new ParkingStatsDAO(null) {
+            @Override
+            public void addHourlyStats(List<ParkingStats> deltas) {
+                written.addAll(deltas);
+            }
+        }, ZoneOffset.UTC);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    statistics.recordExit(ticket(ParkingType.CAR, at(7 * HOUR), at(8 * HOUR), 1.5));
+                }
+            });
+        }
+        executor.shutdown();
+
+        //When
+        while (!executor.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            statistics.flush();
+        }
+        statistics.flush();
+
+        //Then the written deltas add up to every exit
+        long exits = 0;
+        long revenueCents = 0;
+        for (ParkingStats delta : written) {
+            exits += delta.getExits();
+            revenueCents += delta.getRevenueCents();
+        }
+        assertEquals(40_000, exits);
+        assertEquals(6_000_000, revenueCents);
+    }
+
+    private Date at(long millisSinceDayStart) {
+        return new Date(dayStart.getTime() + millisSinceDayStart);
+    }
+
+    private static Ticket ticket(ParkingType parkingType, Date inTime, Date outTime, double price) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(inTime);
+        ticket.setOutTime(outTime);
+        ticket.setPrice(price);
+        return ticket;
+    }
+}
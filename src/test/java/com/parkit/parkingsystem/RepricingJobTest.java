@@ -0,0 +1,141 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.CompactTicket;
+import com.parkit.parkingsystem.model.TicketBatch;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.RepricingJob;
+import com.parkit.parkingsystem.service.TariffTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the repricing job against a ticket table kept in memory.
+ */
+class RepricingJobTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long OUT_TIME = 1_700_000_000_000L;
+
+    private StoredTicketDAO ticketDAO;
+    private ForkJoinPool pool;
+    private RepricingJob repricingJob;
+    private long correctCents;
+    private long overchargedFareCents;
+    private long bikeFareCents;
+
+    @BeforeEach
+    void setUpPerTest() {
+        //Tickets of 2 h correctly priced, of 3 h overcharged, and a third visit by bike undercharged
+        correctCents = TariffTable.DEFAULT.price(OUT_TIME - 2 * HOUR, OUT_TIME, ParkingType.CAR, 1);
+        overchargedFareCents = TariffTable.DEFAULT.price(OUT_TIME - 3 * HOUR, OUT_TIME, ParkingType.CAR, 1);
+        bikeFareCents = TariffTable.DEFAULT.price(OUT_TIME - 2 * HOUR, OUT_TIME, ParkingType.BIKE, 3);
+        ticketDAO = new StoredTicketDAO();
+        ticketDAO.add(1, ParkingType.CAR, 2 * HOUR, correctCents / 100.0, 1);
+        ticketDAO.add(2, ParkingType.CAR, 3 * HOUR, overchargedFareCents / 100.0 + 1, 1);
+        ticketDAO.add(3, ParkingType.BIKE, 2 * HOUR, 0, 3);
+        pool = new ForkJoinPool(2);
+        repricingJob = new RepricingJob(ticketDAO, new FareCalculatorService(), pool, 2, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void dryRunReportsWithoutWriting() {
+        //When the job runs dry
+        RepricingJob.Report report = repricingJob.run(new Date(0), new Date(OUT_TIME + 1), true);
+
+        //Then the differences and totals are reported and nothing is written
+        assertTrue(report.isDryRun());
+        assertEquals(3, report.getRows());
+        assertEquals(2, report.getChanged());
+        assertEquals(0, report.getUpdated());
+        assertEquals(0, ticketDAO.updateCalls);
+        assertEquals(correctCents + overchargedFareCents + 100, report.getOldTotalCents());
+        assertEquals(correctCents + overchargedFareCents + bikeFareCents, report.getNewTotalCents());
+        assertEquals(2, report.getSamples().size());
+        assertEquals(2, report.getSamples().get(0).getTicketId());
+        assertEquals(overchargedFareCents + 100, report.getSamples().get(0).getOldCents());
+        assertEquals(overchargedFareCents, report.getSamples().get(0).getNewCents());
+    }
+
+    @Test
+    void priceChangedDuringTheRunIsLeftAlone() {
+        //Given the bike ticket repriced by someone else after the job read it
+        ticketDAO.concurrentPrices.put(3, 9.99);
+
+        //When the job runs
+        RepricingJob.Report report = repricingJob.run(new Date(0), new Date(OUT_TIME + 1), false);
+
+        //Then only the overcharged ticket is updated
+        assertEquals(2, report.getChanged());
+        assertEquals(1, report.getUpdated());
+        assertEquals(overchargedFareCents / 100.0, (double) ticketDAO.prices.get(2));
+        assertEquals(9.99, (double) ticketDAO.prices.get(3));
+        assertEquals(correctCents / 100.0, (double) ticketDAO.prices.get(1));
+    }
+
+    /**
+     * Ticket DAO over tickets in memory, applying the PRICE=? guard of the price updates.
+     */
+    private static final class StoredTicketDAO extends TicketDAO {
+        private final TicketBatch stored = new TicketBatch(10);
+        private final Map<Integer, Double> prices = new HashMap<>();
+        private final Map<Integer, Double> concurrentPrices = new HashMap<>();
+        private int updateCalls;
+
+        private StoredTicketDAO() {
+            super(new FakeJdbc((sql, parameters) -> 0).newDataBaseConfig(1), 0, 0);
+        }
+
+        private void add(int id, ParkingType parkingType, long stayMillis, double price, int visit) {
+            stored.add(id, parkingType, OUT_TIME - stayMillis, OUT_TIME, price, visit);
+            prices.put(id, price);
+        }
+
+        @Override
+        public long scanTicketsToReprice(Date from, Date to, TicketBatch batch, Consumer<TicketBatch> consumer) {
+            batch.clear();
+            for (int i = 0; i < stored.size(); i++) {
+                if (batch.add(stored.getId(i), stored.getParkingType(i), stored.getInTime(i), stored.getOutTime(i),
+                        stored.getPrice(i), stored.getVisit(i))) {
+                    consumer.accept(batch);
+                    batch.clear();
+                }
+            }
+            if (batch.size() > 0) {
+                consumer.accept(batch);
+            }
+            prices.putAll(concurrentPrices);
+            return stored.size();
+        }
+
+        @Override
+        public int updatePrices(TicketBatch batch, int[] indexes, long[] fareCents, int count, int jdbcBatchSize) {
+            updateCalls++;
+            prices.putAll(concurrentPrices);
+            int updated = 0;
+            for (int i = 0; i < count; i++) {
+                int index = indexes[i];
+                if (prices.get(batch.getId(index)) == batch.getPrice(index)) {
+                    prices.put(batch.getId(index), CompactTicket.toCents(fareCents[index] / 100.0) / 100.0);
+                    updated++;
+                }
+            }
+            return updated;
+        }
+    }
+}
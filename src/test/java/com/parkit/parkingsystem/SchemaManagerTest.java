@@ -0,0 +1,152 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.SchemaManager;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the schema migrations and the hot query plan check, against a fake JDBC driver.
+ * @see SchemaManager
+ */
+class SchemaManagerTest {
+
+    private final List<Integer> recordedVersions = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void appliesOnlyTheVersionsNotRecordedYet() {
+        //Given a schema at version 3
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> migrationResult(sql, parameters, true, 1, 2, 3));
+
+        //When
+        int applied = new SchemaManager(database.newDataBaseConfig(1)).migrate();
+
+        //Then
+        assertEquals(4, applied);
+        assertEquals(Arrays.asList(4, 5, 6, 7), recordedVersions);
+        assertEquals(0, countStatementsLike(database, "create index"));
+        assertEquals(1, database.countExecuted("select release_lock(?)"));
+    }
+
+    @Test
+    void migrationInterruptedAfterItsIndexIsAppliedAgain() {
+        //Given a first run that created the index of migration 1 but crashed before recording it
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> {
+            if (sql.contains("TICKET_VEHICLE_IN_TIME")) {
+                throw new SQLException("Duplicate key name 'TICKET_VEHICLE_IN_TIME'", "42000", 1061);
+            }
+            return migrationResult(sql, parameters, true);
+        });
+
+        //When
+        int applied = new SchemaManager(database.newDataBaseConfig(1)).migrate();
+
+        //Then the existing index is skipped and every version recorded
+        assertEquals(7, applied);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7), recordedVersions);
+    }
+
+    @Test
+    void migrationInterruptedAfterItsColumnIsAppliedAgain() {
+        //Given a first run that added the revenue column of migration 7 but crashed before recording it
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> {
+            if (sql.contains("add column REVENUE_CENTS")) {
+                throw new SQLException("Duplicate column name 'REVENUE_CENTS'", "42S21", 1060);
+            }
+            return migrationResult(sql, parameters, true, 1, 2, 3, 4, 5, 6);
+        });
+
+        //When
+        int applied = new SchemaManager(database.newDataBaseConfig(1)).migrate();
+
+        //Then the existing column is skipped and the revenue is still copied into it
+        assertEquals(1, applied);
+        assertEquals(Collections.singletonList(7), recordedVersions);
+        assertEquals(1, countStatementsLike(database, "update parking_stats set REVENUE_CENTS"));
+    }
+
+    @Test
+    void otherErrorsStopTheMigration() {
+        //Given
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> {
+            if (sql.contains("PARKING_TYPE_AVAILABLE")) {
+                throw new SQLException("Table 'parking' doesn't exist", "42S02", 1146);
+            }
+            return migrationResult(sql, parameters, true);
+        });
+
+        //When
+        assertThrows(RuntimeException.class, () -> new SchemaManager(database.newDataBaseConfig(1)).migrate());
+
+        //Then the failed version is not recorded and the lock is released
+        assertEquals(Collections.singletonList(1), recordedVersions);
+        assertEquals(1, database.countExecuted("select release_lock(?)"));
+    }
+
+    @Test
+    void migrationWaitsForTheSchemaLock() {
+        //Given another instance holding the lock
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> migrationResult(sql, parameters, false));
+
+        //When
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> new SchemaManager(database.newDataBaseConfig(1)).migrate());
+
+        //Then
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertTrue(recordedVersions.isEmpty());
+        assertEquals(0, countStatementsLike(database, "create index"));
+    }
+
+    @Test
+    void reportsTheHotQueriesReadingAWholeTable() {
+        //Given a plan with a full scan of the ticket table for the open ticket lookup only
+        String[] columns = {"table", "type"};
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> sql.equals("explain " + DBConstants.GET_TICKET)
+                ? FakeJdbc.namedRows(columns, new Object[]{"ticket", "ALL"}, new Object[]{"parking", "eq_ref"})
+                : FakeJdbc.namedRows(columns, new Object[]{"ticket", "ref"}));
+
+        //When
+        List<String> tableScans = new SchemaManager(database.newDataBaseConfig(1)).findTableScans();
+
+        //Then
+        assertEquals(Collections.singletonList(DBConstants.GET_TICKET), tableScans);
+    }
+
+    private Object migrationResult(String sql, List<Object> parameters, boolean lockGranted, Object... versions) {
+        if (sql.startsWith("select get_lock")) {
+            return FakeJdbc.rows(new Object[]{lockGranted ? 1 : 0});
+        }
+        if (sql.startsWith("select release_lock")) {
+            return FakeJdbc.rows(new Object[]{1});
+        }
+        if (sql.equals("select VERSION from schema_version")) {
+            Object[][] rows = new Object[versions.length][];
+            for (int i = 0; i < versions.length; i++) {
+                rows[i] = new Object[]{versions[i]};
+            }
+            return FakeJdbc.rows(rows);
+        }
+        if (sql.startsWith("insert into schema_version")) {
+            recordedVersions.add((Integer) parameters.get(0));
+        }
+        return 0;
+    }
+
+    private static int countStatementsLike(FakeJdbc database, String prefix) {
+        int count = 0;
+        for (String sql : database.getExecuted()) {
+            if (sql.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
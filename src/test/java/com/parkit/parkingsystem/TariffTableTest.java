@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.TariffConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.TariffTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TariffTable and TariffConfig.
+ * @see TariffTable
+ */
+class TariffTableTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Test
+    void pricesTimeBandsCapsAndLoyaltyTiers() {
+        //Given
+        Properties properties = new Properties();
+        properties.setProperty("free.minutes", "15");
+        properties.setProperty("rate.CAR", "200");
+        properties.setProperty("rate.BIKE", "100");
+        properties.setProperty("band.night.hours", "20-8");
+        properties.setProperty("band.night.rate.CAR", "50");
+        properties.setProperty("cap.CAR", "1500");
+        properties.setProperty("loyalty.3", "10");
+        properties.setProperty("loyalty.10", "20");
+        properties.setProperty("timezone", "UTC");
+
+        //When
+        TariffTable tariff = TariffTable.compile(properties);
+
+        //Then
+        assertEquals(0, tariff.price(0, 15 * 60 * 1000, ParkingType.CAR, 1));
+        assertEquals(400, tariff.price(10 * HOUR, 12 * HOUR, ParkingType.CAR, 1));
+        assertEquals(250, tariff.price(19 * HOUR, 21 * HOUR, ParkingType.CAR, 1));
+        assertEquals(200, tariff.price(19 * HOUR, 21 * HOUR, ParkingType.BIKE, 1));
+        assertEquals(1500 + 100, tariff.price(0, 26 * HOUR, ParkingType.CAR, 1));
+        assertEquals(360, tariff.price(10 * HOUR, 12 * HOUR, ParkingType.CAR, 3));
+        assertEquals(320, tariff.price(10 * HOUR, 12 * HOUR, ParkingType.CAR, 50));
+    }
+
+    @Test
+    void defaultTariffMatchesTheFareConstants() {
+        assertEquals(150, TariffTable.DEFAULT.price(0, HOUR, ParkingType.CAR, 1));
+        assertEquals(95, TariffTable.DEFAULT.price(0, HOUR, ParkingType.BIKE, 2));
+        assertEquals(0, TariffTable.DEFAULT.price(0, HOUR / 2, ParkingType.CAR, 1));
+        assertThrows(NullPointerException.class, () -> TariffTable.DEFAULT.price(0, HOUR, null, 1));
+    }
+
+    @Test
+    void reloadSwapsTheTariffAndKeepsItWhenTheFileIsInvalid() throws IOException {
+        //Given
+        Path file = Files.createTempFile("tariff", ".properties");
+        try {
+            write(file, "rate.CAR=150\nrate.BIKE=100\n", 1_000);
+            TariffConfig tariffConfig = new TariffConfig(file);
+            FareCalculatorService fareCalculatorService = tariffConfig.newFareCalculatorService();
+
+            //When
+            write(file, "rate.CAR=300\nrate.BIKE=100\n", 2_000);
+            boolean reloaded = tariffConfig.reload();
+            long newFare = fareCalculatorService.calculateFareCents(0, HOUR, ParkingType.CAR, false);
+            write(file, "rate.CAR=oops\n", 3_000);
+            boolean invalidReloaded = tariffConfig.reload();
+
+            //Then
+            assertTrue(reloaded);
+            assertEquals(300, newFare);
+            assertFalse(invalidReloaded);
+            assertEquals(300, fareCalculatorService.calculateFareCents(0, HOUR, ParkingType.CAR, false));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void write(Path file, String content, long modifiedTime) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedTime));
+    }
+}
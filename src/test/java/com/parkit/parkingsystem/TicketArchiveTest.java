@@ -0,0 +1,84 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketArchive;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the columnar archive of closed tickets.
+ */
+class TicketArchiveTest {
+
+    private TicketArchive archive;
+
+    @BeforeEach
+    void setUpPerTest() throws IOException {
+        Path directory = Files.createTempDirectory("archive");
+        archive = new TicketArchive(directory, ZoneOffset.UTC);
+    }
+
+    @Test
+    void publishedTicketsAreScannedByDay() throws IOException {
+        //Given tickets closed on two days, archived in one batch
+        Ticket first = newTicket(1, "ABCDEF", LocalDateTime.of(2024, 3, 1, 10, 0), 1.5);
+        Ticket second = newTicket(2, "GHIJKL", LocalDateTime.of(2024, 3, 2, 9, 30), 3.0);
+        Ticket third = newTicket(3, "ABCDEF", LocalDateTime.of(2024, 3, 2, 18, 0), 0);
+        List<Path> staged = archive.stage(Arrays.asList(first, second, third));
+
+        //When the batch is published
+        archive.publish(staged);
+
+        //Then a scan of the second day returns its tickets with every column
+        List<Ticket> scanned = new ArrayList<>();
+        archive.scanTickets(LocalDate.of(2024, 3, 2), LocalDate.of(2024, 3, 2), scanned::add);
+        assertEquals(2, scanned.size());
+        assertEquals(2, scanned.get(0).getId());
+        assertEquals("GHIJKL", scanned.get(0).getVehicleRegNumber());
+        assertEquals(3.0, scanned.get(0).getPrice());
+        assertEquals(second.getInTime(), scanned.get(0).getInTime());
+        assertEquals(second.getOutTime(), scanned.get(0).getOutTime());
+        assertEquals(ParkingType.CAR, scanned.get(1).getParkingSpot().getParkingType());
+        assertEquals("ABCDEF", scanned.get(1).getVehicleRegNumber());
+    }
+
+    @Test
+    void discardedTicketsAreNotScanned() throws IOException {
+        //Given a staged batch whose deletion from the database rolled back
+        List<Path> staged = archive.stage(Arrays.asList(newTicket(1, "ABCDEF", LocalDateTime.of(2024, 3, 1, 10, 0), 1.5)));
+
+        //When it is discarded
+        archive.discard(staged);
+
+        //Then nothing is archived
+        List<Ticket> scanned = new ArrayList<>();
+        archive.scanTickets(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), scanned::add);
+        assertTrue(scanned.isEmpty());
+    }
+
+    private static Ticket newTicket(int id, String vehicleRegNumber, LocalDateTime outTime, double price) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(price);
+        ticket.setOutTime(Date.from(outTime.toInstant(ZoneOffset.UTC)));
+        ticket.setInTime(Date.from(outTime.minusHours(2).toInstant(ZoneOffset.UTC)));
+        return ticket;
+    }
+}
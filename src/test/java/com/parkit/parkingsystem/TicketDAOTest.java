@@ -0,0 +1,47 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the ticket DAO against a fake JDBC driver.
+ * @see TicketDAO
+ */
+class TicketDAOTest {
+
+    private static final long IN_TIME = 1_700_000_000_000L;
+
+    @Test
+    void closingATicketClosedElsewhereEvictsItFromTheCache() {
+        //Given an open ticket 1 read into the cache, then closed by another instance that opened ticket 2
+        AtomicInteger openTicketId = new AtomicInteger(1);
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> {
+            if (sql.equals(DBConstants.GET_TICKET)) {
+                return FakeJdbc.rows(new Object[]{1, openTicketId.get(), 0.0,
+                        new Timestamp(IN_TIME + openTicketId.get() * 3_600_000L), null, "CAR"});
+            }
+            assertEquals(DBConstants.UPDATE_TICKET, sql);
+            return parameters.get(2).equals(openTicketId.get()) ? 1 : 0;
+        });
+        TicketDAO ticketDAO = new TicketDAO(database.newDataBaseConfig(1), 10, 0);
+        Ticket stale = ticketDAO.getTicket("ABCDEF");
+        openTicketId.set(2);
+
+        //When this instance closes the ticket it cached
+        stale.setOutTime(new Date(IN_TIME + 10_800_000L));
+        boolean updated = ticketDAO.updateTicket(stale);
+
+        //Then nothing is updated, and the open ticket is read from the database again
+        assertFalse(updated);
+        assertEquals(2, ticketDAO.getTicket("ABCDEF").getId());
+        assertEquals(2, database.countExecuted(DBConstants.GET_TICKET));
+    }
+}
@@ -0,0 +1,90 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ExportFormat;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketExporter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the CSV and binary ticket exports, against a fake JDBC driver.
+ * @see TicketExporter
+ */
+class TicketExporterTest {
+
+    private static final Timestamp IN_TIME = Timestamp.valueOf("2024-03-01 08:00:00");
+    private static final Timestamp OUT_TIME = Timestamp.valueOf("2024-03-01 10:30:00");
+
+    private FakeJdbc database;
+    private TicketExporter ticketExporter;
+
+    @BeforeEach
+    void setUpPerTest() {
+        database = new FakeJdbc((sql, parameters) -> {
+            assertEquals(DBConstants.EXPORT_TICKETS, sql);
+            return FakeJdbc.rows(
+                    new Object[]{1, 3, "CAR", "ABCDEF", 3.75, IN_TIME, OUT_TIME},
+                    new Object[]{2, 4, "BIKE", "AB,\"C\"", 1.5, IN_TIME, OUT_TIME});
+        });
+        ticketExporter = new TicketExporter(database.newDataBaseConfig(1));
+    }
+
+    @Test
+    void exportsCsvWithQuotedPlates() {
+        //Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //When
+        TicketExporter.Result result = ticketExporter.export(new Date(0), new Date(), ExportFormat.CSV, out);
+
+        //Then the plate holding a comma and quotes is quoted, with its quotes doubled
+        assertEquals(2, result.getRows());
+        assertEquals("ID,PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME\n"
+                        + "1,3,CAR,ABCDEF,3.75,2024-03-01 08:00:00,2024-03-01 10:30:00\n"
+                        + "2,4,BIKE,\"AB,\"\"C\"\"\",1.5,2024-03-01 08:00:00,2024-03-01 10:30:00\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(1, database.connectionsOpened.get());
+    }
+
+    @Test
+    void exportsBinaryRowsThenTheEndMarkerAndCount() throws IOException {
+        //Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //When
+        ticketExporter.export(new Date(0), new Date(), ExportFormat.BINARY, out);
+
+        //Then
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(0x504B5445, in.readInt());
+        assertEquals(1, in.readInt());
+        assertEquals(1, in.readInt());
+        assertEquals(3, in.readInt());
+        assertEquals(ParkingType.CAR.ordinal(), in.readByte());
+        assertEquals("ABCDEF", in.readUTF());
+        assertEquals(3.75, in.readDouble());
+        assertEquals(IN_TIME.getTime(), in.readLong());
+        assertEquals(OUT_TIME.getTime(), in.readLong());
+        assertEquals(2, in.readInt());
+        assertEquals(4, in.readInt());
+        assertEquals(ParkingType.BIKE.ordinal(), in.readByte());
+        assertEquals("AB,\"C\"", in.readUTF());
+        assertEquals(1.5, in.readDouble());
+        assertEquals(IN_TIME.getTime(), in.readLong());
+        assertEquals(OUT_TIME.getTime(), in.readLong());
+        assertEquals(-1, in.readInt());
+        assertEquals(2, in.readLong());
+        assertEquals(-1, in.read());
+    }
+}
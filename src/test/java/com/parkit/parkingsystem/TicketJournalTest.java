@@ -0,0 +1,124 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketJournal;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the write-behind ticket journal file.
+ */
+class TicketJournalTest {
+
+    private File file;
+
+    @BeforeEach
+    void setUpPerTest() throws IOException {
+        file = File.createTempFile("tickets", ".journal");
+        file.delete();
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    void unappliedWritesAreReplayedAfterReopening() throws IOException {
+        //Given two writes journaled, the first one applied
+        TicketJournal journal = new TicketJournal(file.getPath(), 64 * 1024, false, 100);
+        TicketJournal.Entry saved = journal.append(TicketJournal.Operation.SAVE, newTicket(7, null));
+        journal.append(TicketJournal.Operation.UPDATE, newTicket(7, new Date()));
+        journal.markApplied(saved.getEnd(), 1);
+        journal.close();
+
+        //When the journal is opened again
+        TicketJournal reopened = new TicketJournal(file.getPath(), 64 * 1024, false, 100);
+
+        //Then only the update is pending
+        List<TicketJournal.Entry> pending = reopened.readPending(10);
+        assertEquals(1, pending.size());
+        assertEquals(TicketJournal.Operation.UPDATE, pending.get(0).getOperation());
+        assertEquals(7, pending.get(0).getTicket().getId());
+        assertEquals("ABCDEF", pending.get(0).getTicket().getVehicleRegNumber());
+        assertNotNull(pending.get(0).getTicket().getOutTime());
+        reopened.close();
+    }
+
+    @Test
+    void tornRecordEndsTheJournal() throws IOException {
+        //Given a second record corrupted by a crash
+        TicketJournal journal = new TicketJournal(file.getPath(), 64 * 1024, false, 100);
+        journal.append(TicketJournal.Operation.SAVE, newTicket(1, null));
+        TicketJournal.Entry torn = journal.append(TicketJournal.Operation.SAVE, newTicket(2, null));
+        journal.close();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(torn.getEnd() - 1);
+            raw.write(0x55);
+        }
+
+        //When the journal is opened again
+        TicketJournal reopened = new TicketJournal(file.getPath(), 64 * 1024, false, 100);
+
+        //Then the torn record is not replayed
+        assertEquals(1, reopened.getPendingRecords());
+        assertEquals(1, reopened.readPending(10).get(0).getTicket().getId());
+        reopened.close();
+    }
+
+    @Test
+    void appendsWrapAroundBehindTheAppliedRecords() throws IOException {
+        //Given a journal with room for four records, the first three applied while the fourth is pending
+        TicketJournal journal = new TicketJournal(file.getPath(), 320, false, 100);
+        journal.append(TicketJournal.Operation.SAVE, newTicket(1, null));
+        journal.append(TicketJournal.Operation.SAVE, newTicket(2, null));
+        TicketJournal.Entry third = journal.append(TicketJournal.Operation.SAVE, newTicket(3, null));
+        journal.append(TicketJournal.Operation.SAVE, newTicket(4, null));
+        journal.markApplied(third.getEnd(), 3);
+
+        //When two more writes are appended
+        journal.append(TicketJournal.Operation.SAVE, newTicket(5, null));
+        TicketJournal.Entry sixth = journal.append(TicketJournal.Operation.SAVE, newTicket(6, null));
+
+        //Then they go to the start of the file, and only the pending fourth record stops the next one
+        assertTrue(sixth.getStart() < third.getEnd());
+        assertThrows(IOException.class, () -> journal.append(TicketJournal.Operation.SAVE, newTicket(7, null)));
+        assertIds(journal.readPending(10), 4, 5, 6);
+        journal.close();
+        TicketJournal reopened = new TicketJournal(file.getPath(), 320, false, 100);
+        assertEquals(3, reopened.getPendingRecords());
+        List<TicketJournal.Entry> pending = reopened.readPending(10);
+        assertIds(pending, 4, 5, 6);
+        reopened.markApplied(pending.get(0).getEnd(), 1);
+        assertIds(reopened.readPending(10), 5, 6);
+        reopened.close();
+    }
+
+    private static void assertIds(List<TicketJournal.Entry> entries, int... ids) {
+        assertEquals(ids.length, entries.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], entries.get(i).getTicket().getId());
+        }
+    }
+
+    private static Ticket newTicket(int id, Date outTime) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date(System.currentTimeMillis() - 3_600_000));
+        ticket.setOutTime(outTime);
+        return ticket;
+    }
+}
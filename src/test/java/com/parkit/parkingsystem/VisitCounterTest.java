@@ -0,0 +1,43 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.VisitCounter;
+import com.parkit.parkingsystem.util.BloomFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for VisitCounter and its BloomFilter.
+ * @see VisitCounter
+ */
+class VisitCounterTest {
+
+    @Test
+    void countsVisitsPerVehicle() {
+        VisitCounter visitCounter = new VisitCounter(1000);
+        visitCounter.setVisits("ABCDEF", 2);
+        visitCounter.recordVisit("ABCDEF");
+        visitCounter.recordVisit("GHIJKL");
+
+        assertEquals(3, visitCounter.getVisits("ABCDEF"));
+        assertEquals(1, visitCounter.getVisits("GHIJKL"));
+        assertEquals(0, visitCounter.getVisits("MNOPQR"));
+        assertEquals(2, visitCounter.getVehicleCount());
+    }
+
+    @Test
+    void bloomFilterNeverForgetsAVehicle() {
+        BloomFilter bloomFilter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            bloomFilter.put("AB-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(bloomFilter.mightContain("AB-" + i));
+            if (bloomFilter.mightContain("CD-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "too many false positives: " + falsePositives);
+    }
+}
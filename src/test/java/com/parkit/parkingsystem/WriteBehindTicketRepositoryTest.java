@@ -0,0 +1,100 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketJournal;
+import com.parkit.parkingsystem.dao.WriteBehindTicketRepository;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests how journaled ticket saves are applied to a database that may already hold them.
+ */
+class WriteBehindTicketRepositoryTest {
+
+    private static final long IN_TIME = 1_700_000_000_000L;
+
+    private File file;
+    private String storedVehicle;
+
+    @BeforeEach
+    void setUpPerTest() throws IOException {
+        file = File.createTempFile("tickets", ".journal");
+        file.delete();
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    void saveAlreadyAppliedIsSkipped() throws Exception {
+        //Given a journaled ticket the database already holds
+        storedVehicle = "ABCDEF";
+        WriteBehindTicketRepository repository = newRepository();
+        repository.saveTicket(newTicket("ABCDEF"));
+
+        //When the journal is flushed
+        repository.flush();
+
+        //Then the write is applied
+        assertEquals(0, repository.getBacklog());
+        repository.close();
+    }
+
+    @Test
+    void saveWhoseIdIsTakenStaysInTheJournal() throws Exception {
+        //Given a journaled ticket whose ID the database gave to another vehicle
+        storedVehicle = "GHIJKL";
+        WriteBehindTicketRepository repository = newRepository();
+        repository.saveTicket(newTicket("ABCDEF"));
+
+        //When the journal is flushed
+        RuntimeException error = assertThrows(RuntimeException.class, repository::flush);
+
+        //Then the flush fails and the write waits in the journal
+        assertTrue(error.getCause().getMessage().contains("already used by a ticket of vehicle GHIJKL"));
+        assertEquals(1, repository.getBacklog());
+        assertEquals("ABCDEF", repository.getTicket("ABCDEF").getVehicleRegNumber());
+    }
+
+    private WriteBehindTicketRepository newRepository() throws IOException {
+        FakeJdbc database = new FakeJdbc((sql, parameters) -> {
+            switch (sql) {
+                case DBConstants.RESERVE_TICKET_ID_BLOCK:
+                    return 1;
+                case DBConstants.GET_LAST_INSERT_ID:
+                    return FakeJdbc.rows(new Object[]{11});
+                case DBConstants.SAVE_TICKET_IF_ABSENT:
+                    return 0;
+                case DBConstants.GET_TICKET_BY_ID:
+                    return FakeJdbc.rows(new Object[]{1, storedVehicle, new Timestamp(IN_TIME)});
+                default:
+                    throw new AssertionError("Unexpected statement " + sql);
+            }
+        });
+        TicketDAO ticketDAO = new TicketDAO(database.newDataBaseConfig(2), 0, 0, 10);
+        return new WriteBehindTicketRepository(ticketDAO, new TicketJournal(file.getPath(), 64 * 1024, false, 100),
+                100, 3_600_000L);
+    }
+
+    private static Ticket newTicket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(IN_TIME));
+        return ticket;
+    }
+}
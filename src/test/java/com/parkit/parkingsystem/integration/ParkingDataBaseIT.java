@@ -1,5 +1,6 @@
 package com.parkit.parkingsystem.integration;
 
+import com.parkit.parkingsystem.config.SchemaManager;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
@@ -17,6 +18,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.sql.Connection;
 import java.util.Date;
 
 import static junit.framework.Assert.*;
@@ -42,6 +44,7 @@ import static org.mockito.Mockito.when;
         ticketDAO = new TicketDAO();
         ticketDAO.dataBaseConfig = dataBaseTestConfig;
         dataBasePrepareService = new DataBasePrepareService();
+        new SchemaManager(dataBaseTestConfig).migrate();
     }
 
     @BeforeEach
@@ -49,6 +52,8 @@ import static org.mockito.Mockito.when;
         when(inputReaderUtil.readSelection()).thenReturn(1);
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
         dataBasePrepareService.clearDataBaseEntries();
+        parkingSpotDAO.loadFreeSpotIndex();
+        ticketDAO = new TicketDAO(dataBaseTestConfig);
     }
 
     @AfterAll
@@ -130,6 +135,48 @@ import static org.mockito.Mockito.when;
 
     }
 
+    @Test
+    void ticketIdsStayUniqueWhenHiLoAllocationIsTurnedOnLater() throws Exception {
+        // GIVEN tickets saved with AUTO_INCREMENT while the ID sequence stayed behind
+        Connection connection = dataBaseTestConfig.getConnection();
+        try {
+            connection.prepareStatement("update ticket_id_sequence set NEXT_ID = 1").execute();
+        } finally {
+            dataBaseTestConfig.closeConnection(connection);
+        }
+        TicketDAO autoIncrementDAO = new TicketDAO(dataBaseTestConfig, 0, 0, 0);
+        int lastAutoIncrementId = 0;
+        for (int i = 0; i < 3; i++) {
+            lastAutoIncrementId = autoIncrementDAO.saveTicket(newTicket("AUTO" + i));
+            assertTrue(lastAutoIncrementId > 0);
+        }
+
+        // WHEN the hi-lo allocator is turned on, then off again
+        TicketDAO hiLoDAO = new TicketDAO(dataBaseTestConfig, 0, 0, 2);
+        int firstHiLoId = hiLoDAO.saveTicket(newTicket("HILO0"));
+        int secondHiLoId = hiLoDAO.saveTicket(newTicket("HILO1"));
+        int thirdHiLoId = hiLoDAO.saveTicket(newTicket("HILO2"));
+        int nextAutoIncrementId = autoIncrementDAO.saveTicket(newTicket("AUTO3"));
+
+        // THEN every ticket is saved with an ID of its own
+        assertTrue(firstHiLoId > lastAutoIncrementId);
+        assertTrue(secondHiLoId > firstHiLoId);
+        assertTrue(thirdHiLoId > secondHiLoId);
+        assertTrue(nextAutoIncrementId > thirdHiLoId);
+        assertEquals(7, autoIncrementDAO.getNbTicket("HILO0") + autoIncrementDAO.getNbTicket("HILO1")
+                + autoIncrementDAO.getNbTicket("HILO2") + autoIncrementDAO.getNbTicket("AUTO0")
+                + autoIncrementDAO.getNbTicket("AUTO1") + autoIncrementDAO.getNbTicket("AUTO2")
+                + autoIncrementDAO.getNbTicket("AUTO3"));
+    }
+
+    private static Ticket newTicket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date());
+        return ticket;
+    }
+
 
 
 
@@ -18,6 +18,7 @@ public class DataBasePrepareService {
 
             //clear ticket entries;
             connection.prepareStatement("truncate table ticket").execute();
+            connection.prepareStatement("delete from archived_visits").execute();
 
         }catch(Exception e){
             e.printStackTrace();